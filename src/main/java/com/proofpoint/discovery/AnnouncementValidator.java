@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.base.Joiner;
+import com.proofpoint.node.NodeInfo;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.core.Response;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.FORBIDDEN;
+
+/**
+ * Checks shared by the single and batch dynamic announcement endpoints.
+ */
+class AnnouncementValidator
+{
+    private final String environment;
+    private final Set<String> proxyTypes;
+
+    AnnouncementValidator(NodeInfo nodeInfo, DiscoveryConfig discoveryConfig)
+    {
+        environment = requireNonNull(nodeInfo, "nodeInfo is null").getEnvironment();
+        proxyTypes = requireNonNull(discoveryConfig, "discoveryConfig is null").getProxyProxiedTypes();
+    }
+
+    /**
+     * @return the error response for an announcement this server will not
+     * accept, or null if it is acceptable
+     */
+    @Nullable
+    Response validate(DynamicAnnouncement announcement)
+    {
+        if (!environment.equals(announcement.getEnvironment())) {
+            return Response.status(BAD_REQUEST)
+                    .entity(format("Environment mismatch. Expected: %s, Provided: %s", environment, announcement.getEnvironment()))
+                    .build();
+        }
+
+        if (!proxyTypes.isEmpty()) {
+            Set<String> forbiddenTypes = new HashSet<>();
+            for (DynamicServiceAnnouncement serviceAnnouncement : announcement.getServiceAnnouncements()) {
+                String type = serviceAnnouncement.getType();
+                if (proxyTypes.contains(type)) {
+                    forbiddenTypes.add(type);
+                }
+            }
+            if (!forbiddenTypes.isEmpty()) {
+                return Response.status(FORBIDDEN)
+                        .entity(format("Cannot announce proxied type%s %s", forbiddenTypes.size() == 1 ? "" : "s", Joiner.on(',').join(forbiddenTypes)))
+                        .build();
+            }
+        }
+
+        return null;
+    }
+
+    static DynamicAnnouncement withLocation(Id<Node> nodeId, DynamicAnnouncement announcement)
+    {
+        String location = firstNonNull(announcement.getLocation(), "/somewhere/" + nodeId.toString());
+
+        return DynamicAnnouncement.copyOf(announcement)
+                .setLocation(location)
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.ws.rs.core.CacheControl;
+import java.util.Set;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Chooses the {@code Cache-Control} max-age of a service listing from how
+ * often the services it covers change, so caches in front of discovery can
+ * hold stable listings for long and volatile ones only briefly.
+ * <p>
+ * The max-age is a tenth of the mean interval between changes, which keeps
+ * the chance of a cached listing having gone stale to about one in ten. It
+ * is bounded by {@code discovery.cache-max-age.min} and
+ * {@code discovery.cache-max-age.max}. Listings that include proxied types,
+ * whose changes are not tracked, get the lower bound.
+ */
+public class CacheMaxAgePolicy
+{
+    private static final double STALE_FRACTION = 0.1;
+
+    private final ServiceCounts serviceCounts;
+    private final Set<String> proxiedTypes;
+    private final int minSeconds;
+    private final int maxSeconds;
+
+    @Inject
+    public CacheMaxAgePolicy(ServiceCounts serviceCounts, DiscoveryConfig config)
+    {
+        this.serviceCounts = serviceCounts;
+        proxiedTypes = config.getProxyProxiedTypes();
+        minSeconds = (int) config.getMinCacheMaxAge().roundTo(SECONDS);
+        maxSeconds = Math.max((int) config.getMaxCacheMaxAge().roundTo(SECONDS), minSeconds);
+    }
+
+    public CacheControl forType(String type, @Nullable String pool)
+    {
+        if (proxiedTypes.contains(type)) {
+            return cacheControl(minSeconds);
+        }
+        return forChangeRate(serviceCounts.getChangeRate(type, pool));
+    }
+
+    public CacheControl forAllTypes()
+    {
+        if (!proxiedTypes.isEmpty()) {
+            return cacheControl(minSeconds);
+        }
+        return forChangeRate(serviceCounts.getChangeRate());
+    }
+
+    private CacheControl forChangeRate(double changesPerSecond)
+    {
+        double seconds = changesPerSecond > 0 ? STALE_FRACTION / changesPerSecond : Double.POSITIVE_INFINITY;
+        return cacheControl((int) Math.max(minSeconds, Math.min(maxSeconds, seconds)));
+    }
+
+    private static CacheControl cacheControl(int maxAge)
+    {
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setNoTransform(false);
+        cacheControl.setMaxAge(maxAge);
+        return cacheControl;
+    }
+}
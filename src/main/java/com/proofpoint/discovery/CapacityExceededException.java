@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+/**
+ * Thrown when a store refuses a new announcement because it has reached one
+ * of its configured limits.
+ */
+public class CapacityExceededException
+        extends RuntimeException
+{
+    /**
+     * Status code for a request refused because a store is full. It differs
+     * from the 503 sent when a lane is busy, as sending the same request
+     * again will not succeed until the store has room.
+     */
+    public static final int INSUFFICIENT_STORAGE = 507;
+
+    public CapacityExceededException(String message)
+    {
+        super(message);
+    }
+}
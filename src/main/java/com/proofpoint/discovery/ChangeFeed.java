@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequence-numbered changes to the dynamically announced services.
+ */
+public interface ChangeFeed
+{
+    /**
+     * The sequence number of the most recent change. Sequence numbers are
+     * only comparable with others from the same feed.
+     */
+    long getLastSequence();
+
+    /**
+     * Returns the changes made after the given sequence number.
+     *
+     * @return null if the changes are no longer available, in which case the
+     * caller has to start over from the current set of services
+     */
+    @Nullable
+    ServiceChanges getChangesSince(long sequence);
+
+    /**
+     * Waits until there is a change after the given sequence number or the
+     * timeout elapses, whichever comes first.
+     */
+    void awaitChangesAfter(long sequence, long timeout, TimeUnit unit)
+            throws InterruptedException;
+}
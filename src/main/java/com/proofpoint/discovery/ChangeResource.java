@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static com.proofpoint.discovery.ServiceChanges.serviceChanges;
+import static java.lang.String.format;
+import static javax.ws.rs.core.Response.Status.GONE;
+
+/**
+ * Returns the changes to the dynamically announced services since a
+ * sequence number.
+ * <p>
+ * Without a {@code since} parameter, the response has no changes and
+ * the current sequence number, to start from. A client that reads the
+ * sequence number before fetching the full set of services can then apply
+ * the changes since, which may repeat some already in the full set. When
+ * the changes since the requested sequence number are no longer available,
+ * the response is 410 Gone and the client has to resync from the full set.
+ * <p>
+ * Sequence numbers are only meaningful to the server that issued them. One
+ * issued by another server, or by this server before it restarted, is
+ * answered with 410 Gone as well.
+ */
+@Path("/v1/changes")
+public class ChangeResource
+{
+    private final ChangeFeed changeFeed;
+    private final ExecutionLane readLane;
+    private final InitializationTracker initializationTracker;
+
+    @Inject
+    public ChangeResource(ChangeFeed changeFeed, ExecutionLanes lanes, InitializationTracker initializationTracker)
+    {
+        this.changeFeed = changeFeed;
+        readLane = lanes.getReads();
+        this.initializationTracker = initializationTracker;
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public Response getChanges(@QueryParam("since") Long since)
+    {
+        return readLane.execute(() -> changes(since));
+    }
+
+    private Response changes(Long since)
+    {
+        if (initializationTracker.isPending()) {
+            throw new WebApplicationException(503);
+        }
+
+        if (since == null) {
+            return Response.ok(serviceChanges(changeFeed.getLastSequence(), ImmutableList.of())).build();
+        }
+
+        ServiceChanges changes = changeFeed.getChangesSince(since);
+        if (changes == null) {
+            return Response.status(GONE)
+                    .type(MediaType.TEXT_PLAIN_TYPE)
+                    .entity(format("Full resync required: changes since %s are no longer available", since))
+                    .build();
+        }
+        return Response.ok(changes).build();
+    }
+}
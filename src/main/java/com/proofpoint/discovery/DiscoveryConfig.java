@@ -19,9 +19,11 @@ import com.google.common.collect.ForwardingSet;
 import com.google.common.collect.ImmutableSet;
 import com.proofpoint.configuration.Config;
 import com.proofpoint.configuration.ConfigDescription;
+import com.proofpoint.units.DataSize;
 import com.proofpoint.units.Duration;
 
 import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.net.URI;
 import java.util.Arrays;
@@ -30,12 +32,23 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import static com.proofpoint.units.DataSize.Unit.MEGABYTE;
+
 public class DiscoveryConfig
 {
     private Duration maxAge = new Duration(90, TimeUnit.SECONDS);
     private StringSet proxyProxiedTypes = StringSet.of();
     private String proxyEnvironment = null;
     private UriSet proxyUris = UriSet.of();
+    private Integer maxEntries;
+    private DataSize maxSize;
+    private Integer maxEntriesPerPool;
+    private int changeLogSize = 10_000;
+    private StringSet indexedProperties = StringSet.of();
+    private int encodingParallelism = Runtime.getRuntime().availableProcessors();
+    private DataSize responseCacheMaxSize = new DataSize(64, MEGABYTE);
+    private Duration minCacheMaxAge = new Duration(1, TimeUnit.SECONDS);
+    private Duration maxCacheMaxAge = new Duration(30, TimeUnit.SECONDS);
 
     @NotNull
     public Duration getMaxAge()
@@ -90,6 +103,136 @@ public class DiscoveryConfig
         return this;
     }
 
+    @Min(1)
+    public Integer getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    @Config("discovery.store.max-entries")
+    @ConfigDescription("Maximum number of nodes with dynamic announcements; unlimited if not set")
+    public DiscoveryConfig setMaxEntries(Integer maxEntries)
+    {
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    public DataSize getMaxSize()
+    {
+        return maxSize;
+    }
+
+    @Config("discovery.store.max-size")
+    @ConfigDescription("Maximum estimated memory used by dynamic announcements; unlimited if not set")
+    public DiscoveryConfig setMaxSize(DataSize maxSize)
+    {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    @Min(1)
+    public Integer getMaxEntriesPerPool()
+    {
+        return maxEntriesPerPool;
+    }
+
+    @Config("discovery.store.max-entries-per-pool")
+    @ConfigDescription("Maximum number of nodes with dynamic announcements in a single pool; unlimited if not set")
+    public DiscoveryConfig setMaxEntriesPerPool(Integer maxEntriesPerPool)
+    {
+        this.maxEntriesPerPool = maxEntriesPerPool;
+        return this;
+    }
+
+    @Min(1)
+    public int getChangeLogSize()
+    {
+        return changeLogSize;
+    }
+
+    @Config("discovery.store.change-log-size")
+    @ConfigDescription("Number of recent changes to dynamic announcements kept for watchers to catch up from")
+    public DiscoveryConfig setChangeLogSize(int changeLogSize)
+    {
+        this.changeLogSize = changeLogSize;
+        return this;
+    }
+
+    public StringSet getIndexedProperties()
+    {
+        return indexedProperties;
+    }
+
+    @Config("discovery.store.indexed-properties")
+    @ConfigDescription("Service property keys to index for property filters")
+    public DiscoveryConfig setIndexedProperties(StringSet indexedProperties)
+    {
+        this.indexedProperties = indexedProperties;
+        return this;
+    }
+
+    @Min(1)
+    public int getEncodingParallelism()
+    {
+        return encodingParallelism;
+    }
+
+    @Config("discovery.encoding-parallelism")
+    @ConfigDescription("Number of threads encoding segments of parallel service listings")
+    public DiscoveryConfig setEncodingParallelism(int encodingParallelism)
+    {
+        this.encodingParallelism = encodingParallelism;
+        return this;
+    }
+
+    @NotNull
+    public DataSize getResponseCacheMaxSize()
+    {
+        return responseCacheMaxSize;
+    }
+
+    @Config("discovery.response-cache.max-size")
+    @ConfigDescription("Maximum total size of the cached encoded service listings, including their compressed copies")
+    public DiscoveryConfig setResponseCacheMaxSize(DataSize responseCacheMaxSize)
+    {
+        this.responseCacheMaxSize = responseCacheMaxSize;
+        return this;
+    }
+
+    @NotNull
+    public Duration getMinCacheMaxAge()
+    {
+        return minCacheMaxAge;
+    }
+
+    @Config("discovery.cache-max-age.min")
+    @ConfigDescription("Lower bound of the Cache-Control max-age of service listings, used for the most volatile types")
+    public DiscoveryConfig setMinCacheMaxAge(Duration minCacheMaxAge)
+    {
+        this.minCacheMaxAge = minCacheMaxAge;
+        return this;
+    }
+
+    @NotNull
+    public Duration getMaxCacheMaxAge()
+    {
+        return maxCacheMaxAge;
+    }
+
+    @Config("discovery.cache-max-age.max")
+    @ConfigDescription("Upper bound of the Cache-Control max-age of service listings, used for the most stable types")
+    public DiscoveryConfig setMaxCacheMaxAge(Duration maxCacheMaxAge)
+    {
+        this.maxCacheMaxAge = maxCacheMaxAge;
+        return this;
+    }
+
+    @AssertTrue(message = "discovery.cache-max-age.min must not exceed discovery.cache-max-age.max")
+    public boolean isCacheMaxAgeRangeValid()
+    {
+        return minCacheMaxAge == null || maxCacheMaxAge == null || minCacheMaxAge.compareTo(maxCacheMaxAge) <= 0;
+    }
+
     @AssertTrue(message = "discovery.proxy.environment specified if and only if any proxy types")
     public boolean isProxyTypeAndEnvironment()
     {
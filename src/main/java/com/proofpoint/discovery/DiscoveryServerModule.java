@@ -32,10 +32,12 @@ import com.proofpoint.node.NodeInfo;
 import javax.inject.Singleton;
 import java.util.List;
 
+import static com.google.inject.name.Names.named;
 import static com.proofpoint.configuration.ConfigBinder.bindConfig;
 import static com.proofpoint.discovery.client.DiscoveryBinder.discoveryBinder;
 import static com.proofpoint.http.client.HttpClientBinder.httpClientBinder;
 import static com.proofpoint.jaxrs.JaxrsBinder.jaxrsBinder;
+import static com.proofpoint.reporting.ReportBinder.reportBinder;
 
 public class DiscoveryServerModule
         extends AbstractConfigurationAwareModule
@@ -45,12 +47,28 @@ public class DiscoveryServerModule
     {
         bindConfig(binder).bind(DiscoveryConfig.class);
         jaxrsBinder(binder).bind(ServiceResource.class).withApplicationPrefix();
+        jaxrsBinder(binder).bind(ServiceStreamResource.class).withApplicationPrefix();
+        jaxrsBinder(binder).bind(ChangeResource.class).withApplicationPrefix();
+        jaxrsBinder(binder).bind(ServiceBatchResource.class).withApplicationPrefix();
+        jaxrsBinder(binder).bind(ServiceSummaryResource.class).withApplicationPrefix();
+        jaxrsBinder(binder).bind(NodeResource.class).withApplicationPrefix();
+        binder.bind(ParallelServiceEncoder.class).in(Scopes.SINGLETON);
+        binder.bind(ResponseCache.class).in(Scopes.SINGLETON);
+        binder.bind(CacheMaxAgePolicy.class).in(Scopes.SINGLETON);
         binder.bind(InitializationTracker.class).in(Scopes.SINGLETON);
 
+        // execution lanes for reads, announcements, peer replication and service streams
+        for (String lane : ImmutableList.of("reads", "announcements", "replication", "streams")) {
+            bindConfig(binder).bind(ExecutionLaneConfig.class).annotatedWith(named(lane)).prefixedWith("discovery.lane." + lane);
+        }
+        binder.bind(ExecutionLanes.class).in(Scopes.SINGLETON);
+        reportBinder(binder).export(ExecutionLanes.class).withApplicationPrefix();
+
         discoveryBinder(binder).bindHttpAnnouncement("discovery");
 
         // dynamic announcements
         jaxrsBinder(binder).bind(DynamicAnnouncementResource.class).withApplicationPrefix();
+        jaxrsBinder(binder).bind(DynamicAnnouncementBatchResource.class).withApplicationPrefix();
         binder.bind(DynamicStore.class).to(Key.get(DistributedStore.class, ForDynamicStore.class)).in(Scopes.SINGLETON);
         binder.install(new ReplicatedStoreModule("dynamic", ForDynamicStore.class, InMemoryStore.class));
 
@@ -66,6 +84,18 @@ public class DiscoveryServerModule
         binder.bind(ProxyStore.class).in(Scopes.SINGLETON);
     }
 
+    @Provides
+    public static ChangeFeed getChangeFeed(@ForDynamicStore InMemoryStore dynamicStore)
+    {
+        return dynamicStore.getChangeLog();
+    }
+
+    @Provides
+    public static ServiceCounts getServiceCounts(@ForDynamicStore InMemoryStore dynamicStore)
+    {
+        return dynamicStore.getServiceCounters();
+    }
+
     @Singleton
     @Provides
     public static ServiceSelector getServiceInventory(final ServiceInventory inventory, final NodeInfo nodeInfo)
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.node.NodeInfo;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.proofpoint.discovery.AnnouncementValidator.withLocation;
+import static com.proofpoint.discovery.CapacityExceededException.INSUFFICIENT_STORAGE;
+import static java.lang.String.format;
+import static java.util.stream.Collectors.joining;
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+/**
+ * Accepts dynamic announcements for many nodes in one request. The whole
+ * batch is validated before any of it is stored, and is then applied to the
+ * store and handed to replication together.
+ * <p>
+ * If the store refuses some of the announcements because it is full, the
+ * response is a 507 listing the IDs of those nodes under
+ * {@code rejectedNodeIds}; the announcements of the other nodes are stored.
+ */
+@Path("/v1/announcement")
+public class DynamicAnnouncementBatchResource
+{
+    private static final Validator BEAN_VALIDATOR = Validation.buildDefaultValidatorFactory().getValidator();
+
+    private final DynamicStore dynamicStore;
+    private final AnnouncementValidator validator;
+    private final ExecutionLane lane;
+
+    @Inject
+    public DynamicAnnouncementBatchResource(DynamicStore dynamicStore, NodeInfo nodeInfo, DiscoveryConfig discoveryConfig, ExecutionLanes lanes)
+    {
+        this.dynamicStore = dynamicStore;
+        validator = new AnnouncementValidator(nodeInfo, discoveryConfig);
+        lane = lanes.getAnnouncements();
+    }
+
+    @POST
+    @Consumes({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public void putAll(List<NodeAnnouncement> nodeAnnouncements, @Suspended AsyncResponse asyncResponse)
+    {
+        lane.execute(asyncResponse, () -> storeAll(nodeAnnouncements));
+    }
+
+    private Response storeAll(@Nullable List<NodeAnnouncement> nodeAnnouncements)
+    {
+        if (nodeAnnouncements == null) {
+            return Response.status(BAD_REQUEST)
+                    .entity("Announcements are required")
+                    .build();
+        }
+
+        Map<Id<Node>, DynamicAnnouncement> announcements = new LinkedHashMap<>();
+        for (NodeAnnouncement nodeAnnouncement : nodeAnnouncements) {
+            if (nodeAnnouncement == null) {
+                return Response.status(BAD_REQUEST)
+                        .entity("Announcements cannot be null")
+                        .build();
+            }
+
+            Set<ConstraintViolation<NodeAnnouncement>> violations = BEAN_VALIDATOR.validate(nodeAnnouncement);
+            if (!violations.isEmpty()) {
+                return Response.status(BAD_REQUEST)
+                        .entity(format("Invalid announcement for node %s: %s", nodeAnnouncement.getNodeId(), violations.stream()
+                                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                                .sorted()
+                                .collect(joining(", "))))
+                        .build();
+            }
+
+            Id<Node> nodeId = nodeAnnouncement.getNodeId();
+            DynamicAnnouncement announcement = nodeAnnouncement.getAnnouncement();
+
+            Response rejection = validator.validate(announcement);
+            if (rejection != null) {
+                return rejection;
+            }
+
+            if (announcements.put(nodeId, withLocation(nodeId, announcement)) != null) {
+                return Response.status(BAD_REQUEST)
+                        .entity(format("Duplicate announcement for node %s", nodeId))
+                        .build();
+            }
+        }
+
+        Set<Id<Node>> rejected = dynamicStore.putAll(announcements);
+        if (!rejected.isEmpty()) {
+            return Response.status(INSUFFICIENT_STORAGE)
+                    .type(MediaType.APPLICATION_JSON_TYPE)
+                    .entity(ImmutableMap.of("rejectedNodeIds", rejected.stream()
+                            .map(Id::toString)
+                            .collect(toImmutableList())))
+                    .build();
+        }
+
+        return Response.status(ACCEPTED).build();
+    }
+}
@@ -15,80 +15,133 @@
  */
 package com.proofpoint.discovery;
 
-import com.google.common.base.Joiner;
 import com.proofpoint.node.NodeInfo;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.stream.Collectors;
 
-import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.proofpoint.discovery.AnnouncementValidator.withLocation;
+import static com.proofpoint.discovery.CapacityExceededException.INSUFFICIENT_STORAGE;
+import static com.proofpoint.discovery.DynamicServiceAnnouncement.toServiceWith;
+import static com.proofpoint.discovery.Service.contentHash;
 import static java.lang.String.format;
 import static javax.ws.rs.core.Response.Status.ACCEPTED;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
-import static javax.ws.rs.core.Response.Status.FORBIDDEN;
+import static javax.ws.rs.core.Response.Status.PRECONDITION_FAILED;
 
 @Path("/v1/announcement/{node_id}")
 public class DynamicAnnouncementResource
 {
-    private final NodeInfo nodeInfo;
     private final DynamicStore dynamicStore;
-    private final Set<String> proxyTypes;
+    private final AnnouncementValidator validator;
+    private final ExecutionLane lane;
 
     @Inject
-    public DynamicAnnouncementResource(DynamicStore dynamicStore, NodeInfo nodeInfo, DiscoveryConfig discoveryConfig)
+    public DynamicAnnouncementResource(DynamicStore dynamicStore, NodeInfo nodeInfo, DiscoveryConfig discoveryConfig, ExecutionLanes lanes)
     {
         this.dynamicStore = dynamicStore;
-        this.nodeInfo = nodeInfo;
-        proxyTypes = discoveryConfig.getProxyProxiedTypes();
+        validator = new AnnouncementValidator(nodeInfo, discoveryConfig);
+        lane = lanes.getAnnouncements();
     }
 
     @PUT
-    @Consumes(MediaType.APPLICATION_JSON)
-    public Response put(@PathParam("node_id") Id<Node> nodeId, DynamicAnnouncement announcement)
+    @Consumes({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public void put(@PathParam("node_id") Id<Node> nodeId, DynamicAnnouncement announcement, @Suspended AsyncResponse asyncResponse)
     {
-        if (!nodeInfo.getEnvironment().equals(announcement.getEnvironment())) {
+        lane.execute(asyncResponse, () -> store(nodeId, announcement));
+    }
+
+    private Response store(Id<Node> nodeId, DynamicAnnouncement announcement)
+    {
+        Response rejection = validator.validate(announcement);
+        if (rejection != null) {
+            return rejection;
+        }
+
+        DynamicAnnouncement announcementWithLocation = withLocation(nodeId, announcement);
+
+        try {
+            dynamicStore.put(nodeId, announcementWithLocation);
+        }
+        catch (CapacityExceededException e) {
+            return Response.status(INSUFFICIENT_STORAGE)
+                    .entity(e.getMessage())
+                    .build();
+        }
+
+        return Response.status(ACCEPTED)
+                .tag(leaseTag(nodeId, announcementWithLocation))
+                .build();
+    }
+
+    /**
+     * Renews the node's announcement without resending it. The If-Match
+     * header must carry the entity tag returned by the last PUT; if the
+     * store no longer holds that announcement the client must PUT it again.
+     */
+    @POST
+    @Path("heartbeat")
+    public void heartbeat(@PathParam("node_id") Id<Node> nodeId, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, @Suspended AsyncResponse asyncResponse)
+    {
+        lane.execute(asyncResponse, () -> renew(nodeId, ifMatch));
+    }
+
+    private Response renew(Id<Node> nodeId, @Nullable String ifMatch)
+    {
+        if (ifMatch == null) {
             return Response.status(BAD_REQUEST)
-                    .entity(format("Environment mismatch. Expected: %s, Provided: %s", nodeInfo.getEnvironment(), announcement.getEnvironment()))
+                    .entity("If-Match header is required")
                     .build();
         }
 
-        if (!proxyTypes.isEmpty()) {
-            Set<String> forbiddenTypes = new HashSet<>();
-            for (DynamicServiceAnnouncement serviceAnnouncement : announcement.getServiceAnnouncements()) {
-                String type = serviceAnnouncement.getType();
-                if (proxyTypes.contains(type)) {
-                    forbiddenTypes.add(type);
-                }
-            }
-            if (!forbiddenTypes.isEmpty()) {
-                return Response.status(FORBIDDEN)
-                        .entity(format("Cannot announce proxied type%s %s", forbiddenTypes.size() == 1 ? "" : "s", Joiner.on(',').join(forbiddenTypes)))
-                        .build();
-            }
+        long contentHash;
+        try {
+            contentHash = Long.parseUnsignedLong(ifMatch.replace("\"", "").trim(), 16);
+        }
+        catch (NumberFormatException e) {
+            return Response.status(BAD_REQUEST)
+                    .entity(format("Invalid lease tag: %s", ifMatch))
+                    .build();
         }
 
-        String location = firstNonNull(announcement.getLocation(), "/somewhere/" + nodeId.toString());
+        if (!dynamicStore.renew(nodeId, contentHash)) {
+            return Response.status(PRECONDITION_FAILED).build();
+        }
 
-        DynamicAnnouncement announcementWithLocation = DynamicAnnouncement.copyOf(announcement)
-                .setLocation(location)
+        return Response.status(ACCEPTED)
+                .tag(new EntityTag(Long.toHexString(contentHash)))
                 .build();
+    }
 
-        dynamicStore.put(nodeId, announcementWithLocation);
-
-        return Response.status(ACCEPTED).build();
+    private static EntityTag leaseTag(Id<Node> nodeId, DynamicAnnouncement announcement)
+    {
+        List<Service> services = announcement.getServiceAnnouncements().stream()
+                .map(toServiceWith(nodeId, announcement.getLocation(), announcement.getPool()))
+                .collect(Collectors.toList());
+        return new EntityTag(Long.toHexString(contentHash(services)));
     }
 
     @DELETE
-    public void delete(@PathParam("node_id") Id<Node> nodeId)
+    public void delete(@PathParam("node_id") Id<Node> nodeId, @Suspended AsyncResponse asyncResponse)
     {
-        dynamicStore.delete(nodeId);
+        lane.execute(asyncResponse, () -> {
+            dynamicStore.delete(nodeId);
+            return Response.noContent().build();
+        });
     }
 }
@@ -15,6 +15,12 @@
  */
 package com.proofpoint.discovery;
 
+import javax.annotation.Nullable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public interface DynamicStore
@@ -22,7 +28,92 @@ public interface DynamicStore
     void put(Id<Node> nodeId, DynamicAnnouncement announcement);
     void delete(Id<Node> nodeId);
 
+    /**
+     * Extends the lease of a node's current announcement without resending
+     * it. Stores that do not support leases return false, which requires the
+     * client to send the full announcement.
+     *
+     * @return true if the node has an unexpired announcement with the given
+     * content hash, which has been renewed
+     */
+    default boolean renew(Id<Node> nodeId, long contentHash)
+    {
+        return false;
+    }
+
+    /**
+     * Stores the announcements of several nodes. Announcements that do not
+     * fit within the store's limits are refused, and the others are stored.
+     *
+     * @return the nodes whose announcements were refused
+     */
+    default Set<Id<Node>> putAll(Map<Id<Node>, DynamicAnnouncement> announcements)
+    {
+        Set<Id<Node>> rejected = new LinkedHashSet<>();
+        announcements.forEach((nodeId, announcement) -> {
+            try {
+                put(nodeId, announcement);
+            }
+            catch (CapacityExceededException e) {
+                rejected.add(nodeId);
+            }
+        });
+        return rejected;
+    }
+
     Stream<Service> getAll();
     Stream<Service> get(String type);
     Stream<Service> get(String type, String pool);
+
+    /**
+     * Returns the services of the type, in the pool if one is given, that
+     * match the property filter.
+     */
+    default Stream<Service> get(String type, @Nullable String pool, PropertyFilter filter)
+    {
+        return (pool == null ? get(type) : get(type, pool)).filter(filter);
+    }
+
+    default Stream<Service> getAll(PropertyFilter filter)
+    {
+        return getAll().filter(filter);
+    }
+
+    /**
+     * Returns the services at or under the location prefix that match the
+     * property filter, of the type and pool if they are given.
+     */
+    default Stream<Service> getUnderLocation(@Nullable String type, @Nullable String pool, String locationPrefix, PropertyFilter filter)
+    {
+        Stream<Service> services = type == null ? getAll(filter) : get(type, pool, filter);
+        return services.filter(Service.matchesLocation(locationPrefix));
+    }
+
+    /**
+     * Returns the services of the types matching the pattern that match the
+     * property filter.
+     */
+    default Stream<Service> getByTypePattern(TypePattern pattern, PropertyFilter filter)
+    {
+        return getAll(filter).filter(pattern);
+    }
+
+    /**
+     * Returns the services currently announced by a node. Stores that do not
+     * keep announcements by node find them by scanning all services, and
+     * return no timestamp or remaining TTL.
+     *
+     * @return null if the node has no current announcement
+     */
+    @Nullable
+    default NodeServices getNode(Id<Node> nodeId)
+    {
+        List<Service> services = getAll()
+                .filter(service -> nodeId.equals(service.getNodeId()))
+                .collect(Collectors.toList());
+        if (services.isEmpty()) {
+            return null;
+        }
+        return NodeServices.nodeServices(nodeId, null, null, services);
+    }
 }
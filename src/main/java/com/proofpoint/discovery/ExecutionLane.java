@@ -0,0 +1,206 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.proofpoint.reporting.Gauge;
+import com.proofpoint.stats.CounterStat;
+import org.glassfish.jersey.server.CloseableService;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.proofpoint.concurrent.Threads.daemonThreadsNamed;
+import static java.lang.String.format;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
+
+/**
+ * Limits the number of requests of one kind that are processed at once, so
+ * a burst of them cannot take every server thread from the others. A lane
+ * without a configured concurrency limit processes every request at once.
+ * <p>
+ * A request that arrives while the lane is at its limit waits for up to
+ * the queue timeout. Requests beyond the maximum number
+ * waiting, and those that time out, get a 503 with a {@code Retry-After}
+ * header.
+ * <p>
+ * Requests handed to the lane with an {@link AsyncResponse} wait and run on
+ * the lane's own threads, so that while they are held back they do not
+ * occupy server threads either.
+ */
+public class ExecutionLane
+{
+    private final String name;
+    @Nullable
+    private final Semaphore permits;
+    private final int maxQueued;
+    private final long queueTimeoutInNanos;
+    private final ExecutorService executor;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final CounterStat rejected = new CounterStat();
+    private final CounterStat timedOut = new CounterStat();
+
+    public ExecutionLane(String name, ExecutionLaneConfig config)
+    {
+        this.name = name;
+        Integer maxConcurrency = config.getMaxConcurrency();
+        permits = maxConcurrency == null ? null : new Semaphore(maxConcurrency, true);
+        maxQueued = config.getMaxQueued();
+        queueTimeoutInNanos = config.getQueueTimeout().roundTo(TimeUnit.NANOSECONDS);
+        executor = newCachedThreadPool(daemonThreadsNamed(name + "-lane-%s"));
+    }
+
+    void shutdown()
+    {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Processes a request once the lane has room for it. The request gives
+     * up its place in the lane as soon as it returns, before its response
+     * is written.
+     *
+     * @throws WebApplicationException with a 503 response if the lane had no
+     * room
+     */
+    public <T> T execute(Supplier<T> request)
+    {
+        acquire();
+        try {
+            return request.get();
+        }
+        finally {
+            release();
+        }
+    }
+
+    /**
+     * Processes a request on one of the lane's own threads once the lane has
+     * room for it, and resumes the response with its result.
+     */
+    public void execute(AsyncResponse asyncResponse, Supplier<Response> request)
+    {
+        executor.execute(() -> {
+            try {
+                asyncResponse.resume(execute(request));
+            }
+            catch (RuntimeException e) {
+                asyncResponse.resume(e);
+            }
+        });
+    }
+
+    /**
+     * Processes a request once the lane has room for it, and keeps its place
+     * in the lane until the request is closed. This is for service streams,
+     * which stay open for as long as the client is connected, so that the
+     * lane's limit is the number of open streams.
+     *
+     * @throws WebApplicationException with a 503 response if the lane had no
+     * room
+     */
+    public <T> T execute(Supplier<T> request, CloseableService closeableService)
+    {
+        acquire();
+        boolean releaseOnClose = false;
+        try {
+            T response = request.get();
+            releaseOnClose = closeableService.add(this::release);
+            return response;
+        }
+        finally {
+            if (!releaseOnClose) {
+                release();
+            }
+        }
+    }
+
+    private void acquire()
+    {
+        if (permits != null && !permits.tryAcquire()) {
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                rejected.add(1);
+                throw unavailable(format("Too many %s requests queued", name));
+            }
+            try {
+                if (!permits.tryAcquire(queueTimeoutInNanos, TimeUnit.NANOSECONDS)) {
+                    timedOut.add(1);
+                    throw unavailable(format("Timed out waiting to process %s request", name));
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw unavailable(format("Interrupted waiting to process %s request", name));
+            }
+            finally {
+                queued.decrementAndGet();
+            }
+        }
+        active.incrementAndGet();
+    }
+
+    private void release()
+    {
+        active.decrementAndGet();
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    private static WebApplicationException unavailable(String message)
+    {
+        return new WebApplicationException(Response.status(SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, 1)
+                .entity(message)
+                .build());
+    }
+
+    @Gauge
+    public int getQueueDepth()
+    {
+        return queued.get();
+    }
+
+    @Gauge
+    public int getActive()
+    {
+        return active.get();
+    }
+
+    @Nested
+    public CounterStat getRejected()
+    {
+        return rejected;
+    }
+
+    @Nested
+    public CounterStat getTimedOut()
+    {
+        return timedOut;
+    }
+}
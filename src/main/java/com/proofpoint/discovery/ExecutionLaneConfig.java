@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.proofpoint.configuration.Config;
+import com.proofpoint.configuration.ConfigDescription;
+import com.proofpoint.units.Duration;
+
+import javax.annotation.Nullable;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.TimeUnit;
+
+public class ExecutionLaneConfig
+{
+    private Integer maxConcurrency;
+    private int maxQueued = 20;
+    private Duration queueTimeout = new Duration(1, TimeUnit.SECONDS);
+
+    @Nullable
+    @Min(1)
+    public Integer getMaxConcurrency()
+    {
+        return maxConcurrency;
+    }
+
+    @Config("max-concurrency")
+    @ConfigDescription("Maximum number of requests of the lane processed at once; unlimited if not set")
+    public ExecutionLaneConfig setMaxConcurrency(Integer maxConcurrency)
+    {
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    @Min(0)
+    public int getMaxQueued()
+    {
+        return maxQueued;
+    }
+
+    @Config("max-queued")
+    @ConfigDescription("Maximum number of requests of the lane waiting to be processed; more are rejected")
+    public ExecutionLaneConfig setMaxQueued(int maxQueued)
+    {
+        this.maxQueued = maxQueued;
+        return this;
+    }
+
+    @NotNull
+    public Duration getQueueTimeout()
+    {
+        return queueTimeout;
+    }
+
+    @Config("queue-timeout")
+    @ConfigDescription("Maximum time a request of the lane waits to be processed before it is rejected")
+    public ExecutionLaneConfig setQueueTimeout(Duration queueTimeout)
+    {
+        this.queueTimeout = queueTimeout;
+        return this;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import org.weakref.jmx.Nested;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Separate execution lanes for client reads, announcements, peer
+ * replication and service streams. Each lane is configured under
+ * {@code discovery.lane.<name>}; lanes are unlimited unless a concurrency
+ * limit is set. Announcements and peer replication run on their lanes' own
+ * threads, so a replication burst after a partition heals, or a wave of
+ * announcements, waits there and leaves server threads for service lookups.
+ * <p>
+ * A service stream keeps its place in the streams lane for as long as the
+ * client stays connected, so the lane's concurrency is the number of open
+ * streams a server allows.
+ */
+public class ExecutionLanes
+{
+    private final ExecutionLane reads;
+    private final ExecutionLane announcements;
+    private final ExecutionLane replication;
+    private final ExecutionLane streams;
+
+    @Inject
+    public ExecutionLanes(@Named("reads") ExecutionLaneConfig readsConfig,
+            @Named("announcements") ExecutionLaneConfig announcementsConfig,
+            @Named("replication") ExecutionLaneConfig replicationConfig,
+            @Named("streams") ExecutionLaneConfig streamsConfig)
+    {
+        reads = new ExecutionLane("read", readsConfig);
+        announcements = new ExecutionLane("announcement", announcementsConfig);
+        replication = new ExecutionLane("replication", replicationConfig);
+        streams = new ExecutionLane("stream", streamsConfig);
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        reads.shutdown();
+        announcements.shutdown();
+        replication.shutdown();
+        streams.shutdown();
+    }
+
+    @Nested
+    public ExecutionLane getReads()
+    {
+        return reads;
+    }
+
+    @Nested
+    public ExecutionLane getAnnouncements()
+    {
+        return announcements;
+    }
+
+    @Nested
+    public ExecutionLane getReplication()
+    {
+        return replication;
+    }
+
+    @Nested
+    public ExecutionLane getStreams()
+    {
+        return streams;
+    }
+}
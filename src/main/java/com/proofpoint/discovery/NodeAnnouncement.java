@@ -0,0 +1,51 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
+/**
+ * A dynamic announcement for a single node, as sent to the batch announcement endpoint.
+ * Missing fields are accepted when deserializing and reported by bean validation.
+ */
+@AutoValue
+public abstract class NodeAnnouncement
+{
+    @JsonCreator
+    public static NodeAnnouncement nodeAnnouncement(
+            @JsonProperty("nodeId") @Nullable Id<Node> nodeId,
+            @JsonProperty("announcement") @Nullable DynamicAnnouncement announcement)
+    {
+        return new AutoValue_NodeAnnouncement(nodeId, announcement);
+    }
+
+    @Nullable
+    @NotNull
+    @JsonProperty
+    public abstract Id<Node> getNodeId();
+
+    @Nullable
+    @NotNull
+    @Valid
+    @JsonProperty
+    public abstract DynamicAnnouncement getAnnouncement();
+}
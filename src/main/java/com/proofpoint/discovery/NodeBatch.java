@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+@AutoValue
+public abstract class NodeBatch
+{
+    public static NodeBatch nodeBatch(String environment, List<NodeServices> nodes, List<Id<Node>> missing)
+    {
+        return new AutoValue_NodeBatch(environment, ImmutableList.copyOf(nodes), ImmutableList.copyOf(missing));
+    }
+
+    @JsonProperty
+    public abstract String getEnvironment();
+
+    @JsonProperty
+    public abstract List<NodeServices> getNodes();
+
+    /**
+     * The requested nodes that have no current announcement.
+     */
+    @JsonProperty
+    public abstract List<Id<Node>> getMissing();
+}
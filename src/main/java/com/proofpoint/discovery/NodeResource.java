@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.proofpoint.node.NodeInfo;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static com.proofpoint.discovery.NodeBatch.nodeBatch;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+
+/**
+ * Returns the services currently announced by a node, or by each of a
+ * batch of nodes given as repeated {@code id} parameters, looked up by node
+ * ID without reading the rest of the store.
+ */
+@Path("/v1/node")
+public class NodeResource
+{
+    private final DynamicStore dynamicStore;
+    private final ExecutionLane readLane;
+    private final NodeInfo node;
+    private final InitializationTracker initializationTracker;
+
+    @Inject
+    public NodeResource(DynamicStore dynamicStore, ExecutionLanes lanes, NodeInfo node, InitializationTracker initializationTracker)
+    {
+        this.dynamicStore = dynamicStore;
+        readLane = lanes.getReads();
+        this.node = node;
+        this.initializationTracker = initializationTracker;
+    }
+
+    @GET
+    @Path("{nodeId}")
+    @Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public NodeServices getNode(@PathParam("nodeId") String nodeId)
+    {
+        return readLane.execute(() -> {
+            ensureInitialized();
+            NodeServices services = dynamicStore.getNode(toNodeId(nodeId));
+            if (services == null) {
+                throw new WebApplicationException(NOT_FOUND);
+            }
+            return services;
+        });
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public NodeBatch getNodes(@QueryParam("id") List<String> ids)
+    {
+        return readLane.execute(() -> nodes(ids));
+    }
+
+    private NodeBatch nodes(List<String> ids)
+    {
+        ensureInitialized();
+        List<NodeServices> nodes = new ArrayList<>();
+        List<Id<Node>> missing = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            Id<Node> nodeId = toNodeId(id);
+            NodeServices services = dynamicStore.getNode(nodeId);
+            if (services == null) {
+                missing.add(nodeId);
+            }
+            else {
+                nodes.add(services);
+            }
+        }
+        return nodeBatch(node.getEnvironment(), nodes, missing);
+    }
+
+    private static Id<Node> toNodeId(String id)
+    {
+        try {
+            return Id.valueOf(id);
+        }
+        catch (IllegalArgumentException e) {
+            throw new WebApplicationException(Response.status(BAD_REQUEST).entity("Invalid node ID: " + id).build());
+        }
+    }
+
+    private void ensureInitialized()
+    {
+        if (initializationTracker.isPending()) {
+            throw new WebApplicationException(503);
+        }
+    }
+}
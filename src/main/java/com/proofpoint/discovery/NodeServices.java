@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * The services currently announced by one node.
+ */
+@AutoValue
+public abstract class NodeServices
+{
+    public static NodeServices nodeServices(Id<Node> nodeId, @Nullable Long timestamp, @Nullable Long remainingTtlInMs, List<Service> services)
+    {
+        return new AutoValue_NodeServices(nodeId, timestamp, remainingTtlInMs, ImmutableList.copyOf(services));
+    }
+
+    @JsonProperty
+    public abstract Id<Node> getNodeId();
+
+    /**
+     * When the announcement was last made or renewed, in milliseconds since
+     * the epoch, if the store keeps it.
+     */
+    @Nullable
+    @JsonProperty
+    public abstract Long getTimestamp();
+
+    /**
+     * How long until the announcement expires unless renewed, if the store
+     * keeps it and the announcement has a max age.
+     */
+    @Nullable
+    @JsonProperty
+    public abstract Long getRemainingTtlInMs();
+
+    @JsonProperty
+    public abstract List<Service> getServices();
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes a JSON service listing by splitting the services into segments
+ * that are encoded in parallel and written out in order. The number of
+ * segments being encoded or waiting to be written is bounded, so memory
+ * use does not grow with the number of services.
+ */
+public class ParallelServiceEncoder
+{
+    private static final int SEGMENT_SIZE = 1000;
+
+    private final ObjectWriter writer;
+    private final ForkJoinPool pool;
+    private final int maxPendingSegments;
+
+    @Inject
+    public ParallelServiceEncoder(ObjectMapper objectMapper, DiscoveryConfig config)
+    {
+        writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        pool = new ForkJoinPool(config.getEncodingParallelism(), threadsNamed("service-encoder-%s"), null, false);
+        maxPendingSegments = 2 * config.getEncodingParallelism();
+    }
+
+    private static ForkJoinWorkerThreadFactory threadsNamed(String nameFormat)
+    {
+        return pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(format(nameFormat, thread.getPoolIndex()));
+            return thread;
+        };
+    }
+
+    @PreDestroy
+    public void shutdown()
+    {
+        pool.shutdownNow();
+    }
+
+    public StreamingOutput encode(String environment, Stream<Service> services, ServiceProjection projection)
+    {
+        return output -> {
+            try {
+                write(output, environment, services.iterator(), projection);
+            }
+            finally {
+                services.close();
+            }
+        };
+    }
+
+    private void write(OutputStream output, String environment, Iterator<Service> services, ServiceProjection projection)
+            throws IOException
+    {
+        output.write("{\"environment\":".getBytes(UTF_8));
+        output.write(writer.writeValueAsBytes(environment));
+        output.write(",\"services\":[".getBytes(UTF_8));
+
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        try {
+            boolean first = true;
+            while (services.hasNext() || !pending.isEmpty()) {
+                while (services.hasNext() && pending.size() < maxPendingSegments) {
+                    List<Service> segment = new ArrayList<>(SEGMENT_SIZE);
+                    while (services.hasNext() && segment.size() < SEGMENT_SIZE) {
+                        segment.add(services.next());
+                    }
+                    pending.add(pool.submit(() -> encodeSegment(segment, projection)));
+                }
+                if (!first) {
+                    output.write(',');
+                }
+                output.write(pending.remove().get());
+                first = false;
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding services");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to encode services", e.getCause());
+        }
+        finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+
+        output.write("]}".getBytes(UTF_8));
+    }
+
+    private byte[] encodeSegment(List<Service> services, ServiceProjection projection)
+            throws IOException
+    {
+        // the segment is encoded as an array, whose brackets are left out
+        byte[] array = writer.writeValueAsBytes(new Segment(services, projection));
+        return Arrays.copyOfRange(array, 1, array.length - 1);
+    }
+
+    @JsonSerialize(using = SegmentSerializer.class)
+    private static class Segment
+    {
+        private final List<Service> services;
+        private final ServiceProjection projection;
+
+        Segment(List<Service> services, ServiceProjection projection)
+        {
+            this.services = services;
+            this.projection = projection;
+        }
+    }
+
+    static class SegmentSerializer
+            extends StdSerializer<Segment>
+    {
+        SegmentSerializer()
+        {
+            super(Segment.class);
+        }
+
+        @Override
+        public void serialize(Segment value, JsonGenerator generator, SerializerProvider provider)
+                throws IOException
+        {
+            boolean includeNulls = ServiceProjection.includesNulls(provider);
+            generator.writeStartArray();
+            for (Service service : value.services) {
+                value.projection.writeService(generator, provider, service, includeNulls);
+            }
+            generator.writeEndArray();
+        }
+    }
+}
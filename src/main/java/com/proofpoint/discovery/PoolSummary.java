@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+
+/**
+ * The number of instances of a type in one pool.
+ */
+@AutoValue
+public abstract class PoolSummary
+{
+    public static PoolSummary poolSummary(String pool, int instances, long lastChanged, long version)
+    {
+        return new AutoValue_PoolSummary(pool, instances, lastChanged, version);
+    }
+
+    @JsonProperty
+    public abstract String getPool();
+
+    @JsonProperty
+    public abstract int getInstances();
+
+    /**
+     * The time of the last change to the instances, in milliseconds since
+     * the epoch.
+     */
+    @JsonProperty
+    public abstract long getLastChanged();
+
+    /**
+     * Increases with every change to the instances.
+     */
+    @JsonProperty
+    public abstract long getVersion();
+}
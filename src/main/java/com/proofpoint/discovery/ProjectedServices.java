@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link Services} response that includes only the fields selected by a
+ * {@link ServiceProjection}. The services are iterated as the response is
+ * written and their selected fields are written straight to it, so the
+ * services can come from a stream that is never collected. With all fields
+ * selected, the response is the same as that of {@link Services}.
+ */
+@JsonSerialize(using = ProjectedServices.Serializer.class)
+public final class ProjectedServices
+{
+    private final String environment;
+    private final Iterable<Service> services;
+    private final ServiceProjection projection;
+
+    private ProjectedServices(String environment, Iterable<Service> services, ServiceProjection projection)
+    {
+        this.environment = requireNonNull(environment, "environment is null");
+        this.services = requireNonNull(services, "services is null");
+        this.projection = requireNonNull(projection, "projection is null");
+    }
+
+    public static ProjectedServices projectedServices(String environment, Iterable<Service> services, ServiceProjection projection)
+    {
+        return new ProjectedServices(environment, services, projection);
+    }
+
+    public String getEnvironment()
+    {
+        return environment;
+    }
+
+    public Iterable<Service> getServices()
+    {
+        return services;
+    }
+
+    public ServiceProjection getProjection()
+    {
+        return projection;
+    }
+
+    static class Serializer
+            extends StdSerializer<ProjectedServices>
+    {
+        Serializer()
+        {
+            super(ProjectedServices.class);
+        }
+
+        @Override
+        public void serialize(ProjectedServices value, JsonGenerator generator, SerializerProvider provider)
+                throws IOException
+        {
+            boolean includeNulls = ServiceProjection.includesNulls(provider);
+            generator.writeStartObject();
+            generator.writeStringField("environment", value.environment);
+            generator.writeArrayFieldStart("services");
+            for (Service service : value.services) {
+                value.projection.writeService(generator, provider, service, includeNulls);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Matches services whose properties have the given values, or start with
+ * the given prefixes.
+ */
+public final class PropertyFilter
+        implements Predicate<Service>
+{
+    private static final PropertyFilter ANY_PROPERTIES = new PropertyFilter(ImmutableMap.of(), ImmutableMap.of());
+
+    private final Map<String, String> values;
+    private final Map<String, String> prefixes;
+
+    private PropertyFilter(Map<String, String> values, Map<String, String> prefixes)
+    {
+        this.values = ImmutableMap.copyOf(requireNonNull(values, "values is null"));
+        this.prefixes = ImmutableMap.copyOf(requireNonNull(prefixes, "prefixes is null"));
+    }
+
+    public static PropertyFilter anyProperties()
+    {
+        return ANY_PROPERTIES;
+    }
+
+    public static PropertyFilter propertyFilter(Map<String, String> values, Map<String, String> prefixes)
+    {
+        if (values.isEmpty() && prefixes.isEmpty()) {
+            return ANY_PROPERTIES;
+        }
+        return new PropertyFilter(values, prefixes);
+    }
+
+    /**
+     * Parses filters of the form {@code key=value}.
+     *
+     * @throws IllegalArgumentException if a filter is malformed or a key is
+     * given more than once
+     */
+    public static PropertyFilter parsePropertyFilter(List<String> values, List<String> prefixes)
+    {
+        return propertyFilter(parse(values), parse(prefixes));
+    }
+
+    private static Map<String, String> parse(List<String> filters)
+    {
+        ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        for (String filter : filters) {
+            int separator = filter.indexOf('=');
+            checkArgument(separator > 0, "Property filter is not of the form key=value: %s", filter);
+            builder.put(filter.substring(0, separator), filter.substring(separator + 1));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The properties that must have the given value.
+     */
+    public Map<String, String> getValues()
+    {
+        return values;
+    }
+
+    /**
+     * The properties that must start with the given prefix.
+     */
+    public Map<String, String> getPrefixes()
+    {
+        return prefixes;
+    }
+
+    public boolean isEmpty()
+    {
+        return values.isEmpty() && prefixes.isEmpty();
+    }
+
+    @Override
+    public boolean test(Service service)
+    {
+        Map<String, String> properties = service.getProperties();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            if (!value.getValue().equals(properties.get(value.getKey()))) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, String> prefix : prefixes.entrySet()) {
+            String property = properties.get(prefix.getKey());
+            if (property == null || !property.startsWith(prefix.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PropertyFilter that = (PropertyFilter) o;
+        return values.equals(that.values) && prefixes.equals(that.prefixes);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(values, prefixes);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PropertyFilter{values=" + values + ", prefixes=" + prefixes + "}";
+    }
+}
@@ -17,6 +17,7 @@ package com.proofpoint.discovery;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Injector;
 import com.google.inject.Key;
@@ -80,20 +81,30 @@ public class ProxyStore
         }
     }
 
+    /**
+     * Replaces the services of proxied types with those from the proxied
+     * environment. The result is a view over the given services, which are
+     * not copied.
+     */
     public Iterable<Service> filterAndGetAll(Iterable<Service> services)
     {
         if (proxyTypes.isEmpty()) {
             return services;
         }
 
-        Builder<Service> builder = ImmutableList.builder();
-        for (Service service : services) {
-            if (!proxyTypes.contains(service.getType())) {
-                builder.add(service);
-            }
-        }
-        map.values().forEach(builder::addAll);
-        return builder.build();
+        return Iterables.concat(
+                Iterables.filter(services, service -> !proxyTypes.contains(service.getType())),
+                Iterables.concat(map.values()));
+    }
+
+    public boolean hasProxiedTypes()
+    {
+        return !proxyTypes.isEmpty();
+    }
+
+    public boolean isProxied(String type)
+    {
+        return proxyTypes.contains(type);
     }
 
     @Nullable
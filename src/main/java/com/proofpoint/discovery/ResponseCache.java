@@ -0,0 +1,283 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Encoded JSON service listings, each kept along with a gzip-compressed
+ * copy, for the version of the dynamic store they were made from. A
+ * listing is encoded and compressed once per version, however many
+ * clients poll for it.
+ * <p>
+ * Listings that include proxied types are not cached, as changes to them
+ * do not change the version.
+ */
+public class ResponseCache
+{
+    /**
+     * The {@code Vary} header of responses that may be served from the
+     * cache, which are negotiated by media type and content encoding. Shared
+     * caches need it on every such response, cached or not, so that one
+     * client is never served another's encoding.
+     */
+    public static final String VARY = HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING;
+
+    private static final Pattern QVALUE = Pattern.compile("0(\\.\\d{0,3})?|1(\\.0{0,3})?");
+
+    private final Cache<Key, CachedResponse> cache;
+    private final ObjectWriter writer;
+    private final Set<String> proxiedTypes;
+
+    @Inject
+    public ResponseCache(ObjectMapper objectMapper, DiscoveryConfig config)
+    {
+        cache = CacheBuilder.newBuilder()
+                .maximumWeight(config.getResponseCacheMaxSize().toBytes())
+                .weigher((Key key, CachedResponse response) -> response.getBytes().length + response.getGzippedBytes().length)
+                .build();
+        writer = objectMapper.writer();
+        proxiedTypes = config.getProxyProxiedTypes();
+    }
+
+    /**
+     * Whether a listing of the services of a type can be cached.
+     */
+    public boolean isCacheable(String type)
+    {
+        return !proxiedTypes.contains(type);
+    }
+
+    public boolean isCacheableForAllTypes()
+    {
+        return proxiedTypes.isEmpty();
+    }
+
+    /**
+     * Returns the cached listing for the query and current version, encoding
+     * and compressing the entity if there is none. The version is read
+     * before the entity is made and again after, and a listing made while
+     * the version changed is not kept.
+     *
+     * @param query the parameters that determine the listing, compared by
+     * equality
+     */
+    public CachedResponse get(List<?> query, LongSupplier version, Supplier<?> entity)
+    {
+        return get(query, version.getAsLong(), version, entity);
+    }
+
+    /**
+     * Returns the cached listing for the query and a version read by the
+     * caller, encoding and compressing the entity if there is none. The
+     * entity must be made from that version or a later one; a listing is
+     * not kept if the current version has moved on by the time it is
+     * encoded.
+     */
+    public CachedResponse get(List<?> query, long version, LongSupplier currentVersion, Supplier<?> entity)
+    {
+        Key key = new Key(query, version);
+        CachedResponse response;
+        try {
+            response = cache.get(key, () -> encode(entity.get()));
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+        if (currentVersion.getAsLong() != version) {
+            cache.asMap().remove(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * Whether the client is served JSON, the only encoding that is cached.
+     */
+    public static boolean prefersJson(HttpHeaders headers)
+    {
+        List<MediaType> acceptable = headers.getAcceptableMediaTypes();
+        return acceptable.isEmpty() || acceptable.get(0).isCompatible(MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    private CachedResponse encode(Object entity)
+    {
+        try {
+            byte[] bytes = writer.writeValueAsBytes(entity);
+            ByteArrayOutputStream gzipped = new ByteArrayOutputStream(bytes.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+                gzip.write(bytes);
+            }
+            return new CachedResponse(bytes, gzipped.toByteArray());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static class CachedResponse
+    {
+        private final byte[] bytes;
+        private final byte[] gzippedBytes;
+
+        CachedResponse(byte[] bytes, byte[] gzippedBytes)
+        {
+            this.bytes = bytes;
+            this.gzippedBytes = gzippedBytes;
+        }
+
+        public byte[] getBytes()
+        {
+            return bytes;
+        }
+
+        public byte[] getGzippedBytes()
+        {
+            return gzippedBytes;
+        }
+
+        /**
+         * Returns a JSON response of the listing, compressed if the client
+         * accepts gzip. The caller sets the {@link #VARY} header.
+         */
+        public Response.ResponseBuilder toResponse(HttpHeaders headers)
+        {
+            if (acceptsGzip(headers.getRequestHeader(HttpHeaders.ACCEPT_ENCODING))) {
+                return Response.ok(gzippedBytes, MediaType.APPLICATION_JSON_TYPE)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip");
+            }
+            return Response.ok(bytes, MediaType.APPLICATION_JSON_TYPE);
+        }
+    }
+
+    /**
+     * Whether a client sending the given {@code Accept-Encoding} headers
+     * prefers a gzip-compressed response. A coding with a q-value of zero is
+     * refused, and {@code *} stands for any coding not listed. Gzip is
+     * preferred unless identity is given a higher q-value.
+     */
+    static boolean acceptsGzip(@Nullable List<String> acceptEncodings)
+    {
+        if (acceptEncodings == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double identity = null;
+        Double any = null;
+        for (String encodings : acceptEncodings) {
+            for (String encoding : Splitter.on(',').trimResults().omitEmptyStrings().split(encodings)) {
+                List<String> parts = Splitter.on(';').trimResults().splitToList(encoding);
+                Double quality = quality(parts);
+                if (quality == null) {
+                    continue;
+                }
+                String coding = parts.get(0).toLowerCase(Locale.ENGLISH);
+                if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                    gzip = quality;
+                }
+                else if (coding.equals("identity")) {
+                    identity = quality;
+                }
+                else if (coding.equals("*")) {
+                    any = quality;
+                }
+            }
+        }
+        double gzipQuality = firstNonNull(gzip, firstNonNull(any, 0.0));
+        // an identity response is always acceptable, but only preferred if asked for
+        double identityQuality = firstNonNull(identity, firstNonNull(any, 0.0));
+        return gzipQuality > 0 && gzipQuality >= identityQuality;
+    }
+
+    /**
+     * Returns the q-value of a coding split into its parameters, 1 if none
+     * is given, or null if it is malformed.
+     */
+    @Nullable
+    private static Double quality(List<String> parts)
+    {
+        for (String parameter : parts.subList(1, parts.size())) {
+            int equals = parameter.indexOf('=');
+            if (equals < 0 || !parameter.substring(0, equals).trim().equalsIgnoreCase("q")) {
+                continue;
+            }
+            String value = parameter.substring(equals + 1).trim();
+            if (!QVALUE.matcher(value).matches()) {
+                return null;
+            }
+            return Double.parseDouble(value);
+        }
+        return 1.0;
+    }
+
+    private static class Key
+    {
+        private final List<?> query;
+        private final long version;
+
+        Key(List<?> query, long version)
+        {
+            this.query = requireNonNull(query, "query is null");
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key that = (Key) o;
+            return version == that.version && query.equals(that.query);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(query, version);
+        }
+    }
+}
@@ -18,11 +18,16 @@ package com.proofpoint.discovery;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 
 import javax.annotation.concurrent.Immutable;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Predicate;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
 @Immutable
@@ -130,6 +135,86 @@ public class Service
         return descriptor -> descriptor.getPool().equals(pool);
     }
 
+    public static Predicate<Service> matchesLocation(final String locationPrefix)
+    {
+        return descriptor -> isUnderLocation(descriptor.getLocation(), locationPrefix);
+    }
+
+    /**
+     * Whether a location is the given location or under it in the hierarchy,
+     * so that {@code /a/b/c} is under {@code /a/b} but {@code /a/bc} is not.
+     */
+    public static boolean isUnderLocation(String location, String locationPrefix)
+    {
+        if (!location.startsWith(locationPrefix)) {
+            return false;
+        }
+        return location.length() == locationPrefix.length() ||
+                locationPrefix.endsWith("/") ||
+                location.charAt(locationPrefix.length()) == '/';
+    }
+
+    /**
+     * Orders services by the number of leading location segments they share
+     * with the given location, most first.
+     */
+    public static Comparator<Service> byProximityTo(final String location)
+    {
+        return Comparator.comparingInt((Service descriptor) -> sharedSegments(descriptor.getLocation(), location)).reversed();
+    }
+
+    private static int sharedSegments(String location, String other)
+    {
+        int segments = 0;
+        int length = Math.min(location.length(), other.length());
+        for (int i = 0; i < length; i++) {
+            if (location.charAt(i) != other.charAt(i)) {
+                return segments;
+            }
+            if (location.charAt(i) == '/' && i > 0) {
+                ++segments;
+            }
+        }
+        // the shorter location ends at a segment boundary of the longer one
+        boolean boundary = location.length() == other.length() ||
+                (location.length() > length && location.charAt(length) == '/') ||
+                (other.length() > length && other.charAt(length) == '/');
+        if (boundary && length > 1 && location.charAt(length - 1) != '/') {
+            ++segments;
+        }
+        return segments;
+    }
+
+    /**
+     * Hash of everything announced in the services, including the fields
+     * that {@link #equals} ignores. Two lists with the same hash are treated
+     * as the same announcement.
+     */
+    public static long contentHash(List<Service> services)
+    {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(services.size());
+        for (Service service : services) {
+            putString(hasher, service.id.toString());
+            putString(hasher, service.nodeId == null ? "" : service.nodeId.toString());
+            putString(hasher, service.type);
+            putString(hasher, service.pool);
+            putString(hasher, service.location);
+            hasher.putInt(service.properties.size());
+            for (Map.Entry<String, String> property : service.properties.entrySet()) {
+                putString(hasher, property.getKey());
+                putString(hasher, property.getValue());
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    private static void putString(Hasher hasher, String value)
+    {
+        hasher.putInt(value.length());
+        hasher.putString(value, UTF_8);
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.inject.Inject;
+import com.proofpoint.discovery.ResponseCache.CachedResponse;
+import com.proofpoint.node.NodeInfo;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.proofpoint.discovery.PropertyFilter.anyProperties;
+import static com.proofpoint.discovery.ResponseCache.VARY;
+import static com.proofpoint.discovery.ResponseCache.prefersJson;
+import static com.proofpoint.discovery.Service.contentHash;
+import static com.proofpoint.discovery.ServiceBatch.serviceBatch;
+import static com.proofpoint.discovery.ServiceSection.serviceSection;
+import static com.proofpoint.discovery.ServiceSection.unmodifiedServiceSection;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+/**
+ * Returns the services of several types in one response. Each {@code type}
+ * parameter is either a type or a {@code type/pool} pair, and gets its own
+ * {@link ServiceSection}. A section whose ETag is passed in an
+ * {@code ifNoneMatch} parameter is returned without its services.
+ * <p>
+ * Each section is looked up, sorted and hashed once per version of the
+ * {@link ChangeFeed}, however many batches it is part of. JSON responses are
+ * served from the {@link ResponseCache}, like the listings of
+ * {@link ServiceResource}, keyed by the sections and which of them the
+ * client already has.
+ */
+@Path("/v1/batch/service")
+public class ServiceBatchResource
+{
+    private static final Comparator<Service> BY_ID = Comparator.comparing(service -> service.getId().get());
+    private static final int MAX_CACHED_SECTIONS = 10_000;
+
+    private final ServiceLookup lookup;
+    private final ChangeFeed changeFeed;
+    private final ResponseCache responseCache;
+    private final ExecutionLane readLane;
+    private final NodeInfo node;
+    private final InitializationTracker initializationTracker;
+    private final Cache<String, CachedSection> sectionCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_SECTIONS)
+            .build();
+
+    @Inject
+    public ServiceBatchResource(DynamicStore dynamicStore, ConfigStore configStore, ProxyStore proxyStore, ChangeFeed changeFeed, ResponseCache responseCache,
+            ExecutionLanes lanes, NodeInfo node, InitializationTracker initializationTracker)
+    {
+        this.lookup = new ServiceLookup(dynamicStore, configStore, proxyStore);
+        this.changeFeed = changeFeed;
+        this.responseCache = responseCache;
+        readLane = lanes.getReads();
+        this.node = node;
+        this.initializationTracker = initializationTracker;
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public Response getServices(@QueryParam("type") List<String> types, @QueryParam("ifNoneMatch") List<String> etags, @Context HttpHeaders headers)
+    {
+        return readLane.execute(() -> batch(types, etags, headers));
+    }
+
+    private Response batch(List<String> types, List<String> etags, HttpHeaders headers)
+    {
+        if (initializationTracker.isPending()) {
+            throw new WebApplicationException(503);
+        }
+        if (types.isEmpty()) {
+            throw new WebApplicationException(Response.status(BAD_REQUEST).entity("At least one type must be specified").build());
+        }
+
+        List<String> sections = ImmutableList.copyOf(new LinkedHashSet<>(types));
+        Set<String> knownEtags = ImmutableSet.copyOf(etags);
+        long version = changeFeed.getLastSequence();
+        List<ServiceSection> current = sections.stream()
+                .map(section -> getSection(section, version))
+                .collect(toImmutableList());
+        // the client's ETags only matter through which sections they leave out
+        List<Boolean> unmodified = current.stream()
+                .map(section -> knownEtags.contains(section.getEtag()))
+                .collect(toImmutableList());
+        Supplier<ServiceBatch> batch = () -> {
+            ImmutableList.Builder<ServiceSection> builder = ImmutableList.builder();
+            for (int i = 0; i < current.size(); i++) {
+                ServiceSection section = current.get(i);
+                builder.add(unmodified.get(i) ? unmodifiedServiceSection(section.getType(), section.getPool(), section.getEtag()) : section);
+            }
+            return serviceBatch(node.getEnvironment(), builder.build());
+        };
+
+        if (prefersJson(headers) && sections.stream().allMatch(section -> responseCache.isCacheable(typeOf(section)))) {
+            CachedResponse cached = responseCache.get(Arrays.asList(sections, unmodified), version, changeFeed::getLastSequence, batch);
+            return cached.toResponse(headers)
+                    .header(HttpHeaders.VARY, VARY)
+                    .build();
+        }
+        return Response.ok(batch.get())
+                .header(HttpHeaders.VARY, VARY)
+                .build();
+    }
+
+    private static String typeOf(String section)
+    {
+        int slash = section.indexOf('/');
+        return slash < 0 ? section : section.substring(0, slash);
+    }
+
+    /**
+     * Returns the section with all its services as of the given version,
+     * from the section cache if it was looked up at that version before.
+     */
+    private ServiceSection getSection(String section, long version)
+    {
+        CachedSection cached = sectionCache.getIfPresent(section);
+        if (cached != null && cached.version == version) {
+            return cached.section;
+        }
+        ServiceSection result = lookupSection(section);
+        // a section looked up while the version changed may be newer than the version it would be kept under
+        if (responseCache.isCacheable(result.getType()) && changeFeed.getLastSequence() == version) {
+            sectionCache.put(section, new CachedSection(version, result));
+        }
+        return result;
+    }
+
+    private ServiceSection lookupSection(String section)
+    {
+        int slash = section.indexOf('/');
+        String type = typeOf(section);
+        String pool = slash < 0 ? null : section.substring(slash + 1);
+        if (type.isEmpty() || "".equals(pool)) {
+            throw new WebApplicationException(Response.status(BAD_REQUEST).entity("Type is not of the form type or type/pool: " + section).build());
+        }
+
+        // sorted so that the ETag does not depend on the order of the index
+        List<Service> services = lookup.get(type, pool, anyProperties())
+                .sorted(BY_ID)
+                .collect(toImmutableList());
+        return serviceSection(type, pool, Long.toHexString(contentHash(services)), services);
+    }
+
+    private static final class CachedSection
+    {
+        private final long version;
+        private final ServiceSection section;
+
+        CachedSection(long version, ServiceSection section)
+        {
+            this.version = version;
+            this.section = section;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A change to a single dynamically announced service. A removal carries the
+ * service as it was before it was removed, and an update also keeps the
+ * service as it was before, so that a client watching a subset of the
+ * services can be told when a service leaves it.
+ */
+@AutoValue
+public abstract class ServiceChange
+{
+    public enum Kind
+    {
+        ADDED, UPDATED, REMOVED
+    }
+
+    public static ServiceChange serviceChange(long sequence, Kind kind, Service service)
+    {
+        return serviceChange(sequence, kind, service, null);
+    }
+
+    public static ServiceChange serviceChange(long sequence, Kind kind, Service service, @Nullable Service previousService)
+    {
+        requireNonNull(kind, "kind is null");
+        requireNonNull(service, "service is null");
+        return new AutoValue_ServiceChange(sequence, kind, service, previousService);
+    }
+
+    /**
+     * Returns the change as seen by a client that only watches the services
+     * matching a filter, or null if the client is not affected by it. An
+     * update that takes a service out of the filter is seen as its removal,
+     * and one that brings a service into it as its addition.
+     */
+    @Nullable
+    public ServiceChange filtered(Predicate<Service> filter)
+    {
+        boolean matches = filter.test(getService());
+        if (getKind() != Kind.UPDATED || getPreviousService() == null) {
+            return matches ? this : null;
+        }
+        boolean matched = filter.test(getPreviousService());
+        if (matches) {
+            return matched ? this : serviceChange(getSequence(), Kind.ADDED, getService());
+        }
+        return matched ? serviceChange(getSequence(), Kind.REMOVED, getPreviousService()) : null;
+    }
+
+    @JsonProperty
+    public abstract long getSequence();
+
+    @JsonProperty
+    public abstract Kind getKind();
+
+    @JsonProperty
+    public abstract Service getService();
+
+    /**
+     * The service as it was before an update, or null for other kinds of
+     * change.
+     */
+    @Nullable
+    @JsonIgnore
+    public abstract Service getPreviousService();
+
+    @JsonProperty
+    public Id<Node> getNodeId()
+    {
+        return getService().getNodeId();
+    }
+
+    @JsonProperty
+    public String getType()
+    {
+        return getService().getType();
+    }
+
+    @JsonProperty
+    public String getPool()
+    {
+        return getService().getPool();
+    }
+}
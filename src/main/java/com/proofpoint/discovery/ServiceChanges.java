@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The service changes made after some sequence number, up to and including
+ * {@link #getSequence()}.
+ */
+@AutoValue
+public abstract class ServiceChanges
+{
+    public static ServiceChanges serviceChanges(long sequence, List<ServiceChange> changes)
+    {
+        requireNonNull(changes, "changes is null");
+        return new AutoValue_ServiceChanges(sequence, ImmutableList.copyOf(changes));
+    }
+
+    @JsonProperty
+    public abstract long getSequence();
+
+    @JsonProperty
+    public abstract List<ServiceChange> getChanges();
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+/**
+ * Instance counts and change rates of the dynamically announced services by
+ * type and pool.
+ */
+public interface ServiceCounts
+{
+    /**
+     * Returns a summary of each type with at least one instance, ordered by
+     * type.
+     */
+    List<TypeSummary> getTypeSummaries();
+
+    /**
+     * Returns the recent rate of additions and removals of services of a
+     * type, or of a pool of it, in changes per second.
+     */
+    double getChangeRate(String type, @Nullable String pool);
+
+    /**
+     * Returns the recent rate of additions and removals of services of all
+     * types, in changes per second.
+     */
+    double getChangeRate();
+}
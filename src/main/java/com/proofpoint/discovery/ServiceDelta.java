@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The services that changed since a version a client holds. When the
+ * changes since that version are no longer available, {@link #isFull()} is
+ * true and the delta holds the full list of services instead.
+ */
+@AutoValue
+public abstract class ServiceDelta
+{
+    public static ServiceDelta fullServiceDelta(String environment, long version, Stream<Service> services)
+    {
+        requireNonNull(services, "services is null");
+        return new AutoValue_ServiceDelta(environment, version, true, services.collect(toImmutableList()), ImmutableList.of());
+    }
+
+    public static ServiceDelta serviceDelta(String environment, long version, Iterable<Service> services, Iterable<Id<Service>> removed)
+    {
+        requireNonNull(services, "services is null");
+        requireNonNull(removed, "removed is null");
+        return new AutoValue_ServiceDelta(environment, version, false, ImmutableList.copyOf(services), ImmutableList.copyOf(removed));
+    }
+
+    @JsonProperty
+    public abstract String getEnvironment();
+
+    @JsonProperty
+    public abstract long getVersion();
+
+    @JsonProperty
+    public abstract boolean isFull();
+
+    /**
+     * The services added or updated since the client's version, or all
+     * services if {@link #isFull()}.
+     */
+    @JsonProperty
+    public abstract Collection<Service> getServices();
+
+    /**
+     * The IDs of the services removed since the client's version.
+     */
+    @JsonProperty
+    public abstract List<Id<Service>> getRemoved();
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import javax.annotation.Nullable;
+import java.util.stream.Stream;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.proofpoint.discovery.Service.matchesLocation;
+
+/**
+ * Looks up the services of a type, or a type and pool, from the proxy,
+ * config and dynamic stores, as shared by the service query endpoints.
+ */
+final class ServiceLookup
+{
+    private final DynamicStore dynamicStore;
+    private final ConfigStore configStore;
+    private final ProxyStore proxyStore;
+
+    ServiceLookup(DynamicStore dynamicStore, ConfigStore configStore, ProxyStore proxyStore)
+    {
+        this.dynamicStore = dynamicStore;
+        this.configStore = configStore;
+        this.proxyStore = proxyStore;
+    }
+
+    Stream<Service> get(String type, @Nullable String pool, PropertyFilter filter)
+    {
+        return get(type, pool, null, filter);
+    }
+
+    /**
+     * Returns the services of the type, and the pool if one is given, that
+     * match the filter and are at or under the location prefix, if one is
+     * given.
+     */
+    Stream<Service> get(String type, @Nullable String pool, @Nullable String locationPrefix, PropertyFilter filter)
+    {
+        Stream<Service> dynamicServices;
+        if (locationPrefix == null) {
+            dynamicServices = dynamicStore.get(type, pool, filter);
+        }
+        else {
+            dynamicServices = dynamicStore.getUnderLocation(type, pool, locationPrefix, filter);
+        }
+
+        Stream<Service> services;
+        if (pool == null) {
+            services = firstNonNull(proxyStore.get(type),
+                    Stream.concat(configStore.get(type), dynamicServices));
+        }
+        else {
+            services = firstNonNull(proxyStore.get(type, pool),
+                    Stream.concat(configStore.get(type, pool), dynamicServices));
+        }
+        return filtered(services, locationPrefix, filter);
+    }
+
+    static Stream<Service> filtered(Stream<Service> services, @Nullable String locationPrefix, PropertyFilter filter)
+    {
+        if (locationPrefix != null) {
+            services = services.filter(matchesLocation(locationPrefix));
+        }
+        return filtered(services, filter);
+    }
+
+    static Stream<Service> filtered(Stream<Service> services, PropertyFilter filter)
+    {
+        if (filter.isEmpty()) {
+            return services;
+        }
+        return services.filter(filter);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static java.lang.String.format;
+
+/**
+ * The fields of each service to include in a response, parsed from a
+ * comma-separated list of field names. {@code properties} includes all
+ * properties and {@code properties.<key>} includes a single one.
+ */
+public final class ServiceProjection
+{
+    private static final String PROPERTY_PREFIX = "properties.";
+    private static final ServiceProjection ALL_FIELDS = new ServiceProjection(EnumSet.allOf(Field.class), null);
+
+    private enum Field
+    {
+        ID("id"), NODE_ID("nodeId"), TYPE("type"), POOL("pool"), LOCATION("location"), PROPERTIES("properties");
+
+        private final String fieldName;
+
+        Field(String fieldName)
+        {
+            this.fieldName = fieldName;
+        }
+    }
+
+    private final Set<Field> fields;
+    @Nullable
+    private final Set<String> propertyKeys;
+
+    private ServiceProjection(Set<Field> fields, @Nullable Set<String> propertyKeys)
+    {
+        this.fields = Sets.immutableEnumSet(fields);
+        this.propertyKeys = propertyKeys == null ? null : ImmutableSet.copyOf(propertyKeys);
+    }
+
+    public static ServiceProjection allFields()
+    {
+        return ALL_FIELDS;
+    }
+
+    /**
+     * @throws IllegalArgumentException if a field name is not known, or no
+     * field is listed
+     */
+    public static ServiceProjection parseServiceProjection(String fields)
+    {
+        Set<Field> selected = EnumSet.noneOf(Field.class);
+        ImmutableSet.Builder<String> propertyKeys = ImmutableSet.builder();
+        boolean allProperties = false;
+        for (String name : Splitter.on(',').trimResults().omitEmptyStrings().split(fields)) {
+            if (name.startsWith(PROPERTY_PREFIX) && name.length() > PROPERTY_PREFIX.length()) {
+                selected.add(Field.PROPERTIES);
+                propertyKeys.add(name.substring(PROPERTY_PREFIX.length()));
+                continue;
+            }
+            Field field = fieldNamed(name);
+            selected.add(field);
+            allProperties |= field == Field.PROPERTIES;
+        }
+        if (selected.isEmpty()) {
+            throw new IllegalArgumentException("No service fields selected");
+        }
+        if (selected.size() == Field.values().length && allProperties) {
+            return ALL_FIELDS;
+        }
+        return new ServiceProjection(selected, allProperties ? null : propertyKeys.build());
+    }
+
+    private static Field fieldNamed(String name)
+    {
+        for (Field field : Field.values()) {
+            if (field.fieldName.equals(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException(format("Unknown service field: %s", name));
+    }
+
+    public boolean isAllFields()
+    {
+        return this == ALL_FIELDS;
+    }
+
+    /**
+     * Writes the selected fields of a service as a JSON object, as the
+     * object mapper would write them.
+     */
+    void writeService(JsonGenerator generator, SerializerProvider provider, Service service, boolean includeNulls)
+            throws IOException
+    {
+        generator.writeStartObject();
+        if (fields.contains(Field.ID)) {
+            provider.defaultSerializeField(Field.ID.fieldName, service.getId(), generator);
+        }
+        if (fields.contains(Field.NODE_ID)) {
+            if (service.getNodeId() != null) {
+                provider.defaultSerializeField(Field.NODE_ID.fieldName, service.getNodeId(), generator);
+            }
+            else if (includeNulls) {
+                generator.writeNullField(Field.NODE_ID.fieldName);
+            }
+        }
+        if (fields.contains(Field.TYPE)) {
+            generator.writeStringField(Field.TYPE.fieldName, service.getType());
+        }
+        if (fields.contains(Field.POOL)) {
+            generator.writeStringField(Field.POOL.fieldName, service.getPool());
+        }
+        if (fields.contains(Field.LOCATION)) {
+            generator.writeStringField(Field.LOCATION.fieldName, service.getLocation());
+        }
+        if (fields.contains(Field.PROPERTIES)) {
+            generator.writeObjectFieldStart(Field.PROPERTIES.fieldName);
+            for (Map.Entry<String, String> property : service.getProperties().entrySet()) {
+                if (propertyKeys == null || propertyKeys.contains(property.getKey())) {
+                    generator.writeStringField(property.getKey(), property.getValue());
+                }
+            }
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Whether the object mapper writes null fields of services.
+     */
+    static boolean includesNulls(SerializerProvider provider)
+    {
+        JsonInclude.Include inclusion = provider.getConfig().getDefaultPropertyInclusion(Service.class).getValueInclusion();
+        return inclusion == JsonInclude.Include.ALWAYS || inclusion == JsonInclude.Include.USE_DEFAULTS;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        ServiceProjection that = (ServiceProjection) o;
+        return fields.equals(that.fields) && Objects.equals(propertyKeys, that.propertyKeys);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(fields, propertyKeys);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ServiceProjection{fields=" + fields + ", propertyKeys=" + propertyKeys + "}";
+    }
+}
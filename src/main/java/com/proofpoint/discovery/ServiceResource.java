@@ -15,67 +15,375 @@
  */
 package com.proofpoint.discovery;
 
+import com.google.common.collect.Streams;
 import com.google.inject.Inject;
+import com.proofpoint.discovery.ResponseCache.CachedResponse;
 import com.proofpoint.node.NodeInfo;
 
+import javax.annotation.Nullable;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
-import java.util.stream.Collectors;
+import javax.ws.rs.core.Response;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
-import static com.google.common.base.MoreObjects.firstNonNull;
-import static com.proofpoint.discovery.Services.services;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.proofpoint.discovery.ProjectedServices.projectedServices;
+import static com.proofpoint.discovery.PropertyFilter.parsePropertyFilter;
+import static com.proofpoint.discovery.ResponseCache.VARY;
+import static com.proofpoint.discovery.ResponseCache.prefersJson;
+import static com.proofpoint.discovery.Service.byProximityTo;
+import static com.proofpoint.discovery.Service.matchesLocation;
+import static com.proofpoint.discovery.Service.matchesPool;
+import static com.proofpoint.discovery.Service.matchesType;
+import static com.proofpoint.discovery.ServiceDelta.fullServiceDelta;
+import static com.proofpoint.discovery.ServiceDelta.serviceDelta;
+import static com.proofpoint.discovery.ServiceProjection.allFields;
+import static com.proofpoint.discovery.ServiceProjection.parseServiceProjection;
+import static com.proofpoint.discovery.ServiceSubset.selectSubset;
+import static com.proofpoint.discovery.TypePattern.typePattern;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 
+/**
+ * Returns the services of a type, a type and pool, or the whole environment.
+ * <p>
+ * A client that passes the {@code since} version of a previous response gets
+ * a {@link ServiceDelta} with only the services added, updated and removed
+ * since then. Passing a version of 0 gets the full list along with the
+ * current version. Services of proxied types are not tracked by version, so
+ * queries that include them always get the full list.
+ * <p>
+ * A client of a type or pool with many services can instead pass its
+ * {@code clientId} and a {@code subsetSize} to get a stable subset of that
+ * size, selected by {@link ServiceSubset}.
+ * <p>
+ * Services can be filtered by property with {@code property=key=value} and
+ * {@code propertyPrefix=key=prefix} parameters, which may be repeated.
+ * <p>
+ * The query of all services takes a {@code typePattern} parameter, such as
+ * {@code payments-*}, to limit it to a family of types.
+ * <p>
+ * A {@code locationPrefix} parameter limits services to those at or under a
+ * location, and a {@code near} parameter orders them by how many leading
+ * location segments they share with the given location.
+ * <p>
+ * A {@code fields} parameter limits each service in a full or subset
+ * response to the listed fields; see {@link ServiceProjection}.
+ * <p>
+ * A full listing of all services with {@code parallel=true} is encoded as
+ * JSON by {@link ParallelServiceEncoder}, for very large environments.
+ * <p>
+ * Full JSON listings are served from the {@link ResponseCache}, compressed
+ * if the client accepts gzip.
+ * <p>
+ * Responses carry a {@code Cache-Control} max-age chosen by
+ * {@link CacheMaxAgePolicy} from how often the services they cover change.
+ * <p>
+ * Lookups run in the read lane of {@link ExecutionLanes}, apart from
+ * announcements and replication.
+ */
 @Path("/v1/service")
 public class ServiceResource
 {
     private final DynamicStore dynamicStore;
     private final ConfigStore configStore;
     private final ProxyStore proxyStore;
+    private final ServiceLookup lookup;
+    private final ChangeFeed changeFeed;
+    private final ParallelServiceEncoder parallelEncoder;
+    private final ResponseCache responseCache;
+    private final CacheMaxAgePolicy maxAgePolicy;
+    private final ExecutionLane readLane;
     private final NodeInfo node;
     private final InitializationTracker initializationTracker;
 
     @Inject
-    public ServiceResource(DynamicStore dynamicStore, ConfigStore configStore, ProxyStore proxyStore, NodeInfo node, InitializationTracker initializationTracker)
+    public ServiceResource(DynamicStore dynamicStore, ConfigStore configStore, ProxyStore proxyStore, ChangeFeed changeFeed,
+            ParallelServiceEncoder parallelEncoder, ResponseCache responseCache, CacheMaxAgePolicy maxAgePolicy, ExecutionLanes lanes,
+            NodeInfo node, InitializationTracker initializationTracker)
     {
         this.dynamicStore = dynamicStore;
         this.configStore = configStore;
         this.proxyStore = proxyStore;
+        this.lookup = new ServiceLookup(dynamicStore, configStore, proxyStore);
+        this.changeFeed = changeFeed;
+        this.parallelEncoder = parallelEncoder;
+        this.responseCache = responseCache;
+        this.maxAgePolicy = maxAgePolicy;
+        readLane = lanes.getReads();
         this.node = node;
         this.initializationTracker = initializationTracker;
     }
 
     @GET
     @Path("{type}/{pool}")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Services getServices(@PathParam("type") String type, @PathParam("pool") String pool)
+    @Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public Response getServices(@PathParam("type") String type,
+            @PathParam("pool") String pool,
+            @QueryParam("since") Long since,
+            @QueryParam("clientId") String clientId,
+            @QueryParam("subsetSize") Integer subsetSize,
+            @QueryParam("property") List<String> properties,
+            @QueryParam("propertyPrefix") List<String> propertyPrefixes,
+            @QueryParam("locationPrefix") String locationPrefix,
+            @QueryParam("near") String near,
+            @QueryParam("fields") String fields,
+            @Context HttpHeaders headers)
     {
-        ensureInitialized();
-        return services(node.getEnvironment(), firstNonNull(proxyStore.get(type, pool),
-                Stream.concat(configStore.get(type, pool), dynamicStore.get(type, pool))));
+        return readLane.execute(() -> {
+            ensureInitialized();
+            PropertyFilter filter = toPropertyFilter(properties, propertyPrefixes);
+            ServiceProjection projection = toProjection(fields);
+            List<?> cacheQuery = responseCache.isCacheable(type) ? Arrays.asList(type, pool, filter, locationPrefix, projection) : null;
+            return respond(since, clientId, subsetSize, near, projection, () -> !proxyStore.isProxied(type),
+                    withLocation(matchesType(type).and(matchesPool(pool)).and(filter), locationPrefix),
+                    () -> lookup.get(type, pool, locationPrefix, filter), cacheQuery, headers)
+                    .cacheControl(maxAgePolicy.forType(type, pool))
+                    .header(HttpHeaders.VARY, VARY)
+                    .build();
+        });
     }
 
     @GET
     @Path("{type}")
-    @Produces(MediaType.APPLICATION_JSON)
-    public Services getTypeServices(@PathParam("type") String type)
+    @Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public Response getTypeServices(@PathParam("type") String type,
+            @QueryParam("since") Long since,
+            @QueryParam("clientId") String clientId,
+            @QueryParam("subsetSize") Integer subsetSize,
+            @QueryParam("property") List<String> properties,
+            @QueryParam("propertyPrefix") List<String> propertyPrefixes,
+            @QueryParam("locationPrefix") String locationPrefix,
+            @QueryParam("near") String near,
+            @QueryParam("fields") String fields,
+            @Context HttpHeaders headers)
     {
-        ensureInitialized();
-        return services(node.getEnvironment(), firstNonNull(proxyStore.get(type),
-                Stream.concat(configStore.get(type), dynamicStore.get(type))));
+        return readLane.execute(() -> {
+            ensureInitialized();
+            PropertyFilter filter = toPropertyFilter(properties, propertyPrefixes);
+            ServiceProjection projection = toProjection(fields);
+            List<?> cacheQuery = responseCache.isCacheable(type) ? Arrays.asList(type, null, filter, locationPrefix, projection) : null;
+            return respond(since, clientId, subsetSize, near, projection, () -> !proxyStore.isProxied(type),
+                    withLocation(matchesType(type).and(filter), locationPrefix),
+                    () -> lookup.get(type, null, locationPrefix, filter), cacheQuery, headers)
+                    .cacheControl(maxAgePolicy.forType(type, null))
+                    .header(HttpHeaders.VARY, VARY)
+                    .build();
+        });
     }
 
     @GET
-    @Produces(MediaType.APPLICATION_JSON)
-    public Services getAllServices()
+    @Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public Response getAllServices(@QueryParam("since") Long since,
+            @QueryParam("typePattern") String typePattern,
+            @QueryParam("property") List<String> properties,
+            @QueryParam("propertyPrefix") List<String> propertyPrefixes,
+            @QueryParam("locationPrefix") String locationPrefix,
+            @QueryParam("near") String near,
+            @QueryParam("fields") String fields,
+            @QueryParam("parallel") boolean parallel,
+            @Context HttpHeaders headers)
+    {
+        return readLane.execute(() -> {
+            ensureInitialized();
+            PropertyFilter filter = toPropertyFilter(properties, propertyPrefixes);
+            TypePattern pattern = toTypePattern(typePattern);
+            ServiceProjection projection = toProjection(fields);
+            Predicate<Service> matches = withLocation(pattern == null ? filter : pattern.and(filter), locationPrefix);
+            Supplier<Stream<Service>> allServices = () -> {
+                Stream<Service> dynamicServices;
+                if (pattern != null) {
+                    dynamicServices = dynamicStore.getByTypePattern(pattern, filter);
+                }
+                else if (locationPrefix != null) {
+                    dynamicServices = dynamicStore.getUnderLocation(null, null, locationPrefix, filter);
+                }
+                else {
+                    dynamicServices = dynamicStore.getAll(filter);
+                }
+                Stream<Service> services = Stream.concat(filtered(configStore.getAll(), pattern, locationPrefix, filter), dynamicServices);
+                return filtered(Streams.stream(proxyStore.filterAndGetAll(services::iterator)), pattern, locationPrefix, filter);
+            };
+
+            CacheControl cacheControl = maxAgePolicy.forAllTypes();
+            if (parallel) {
+                if (since != null || near != null) {
+                    throw badRequest("parallel cannot be requested with since or near");
+                }
+                return Response.ok(parallelEncoder.encode(node.getEnvironment(), allServices.get(), projection), MediaType.APPLICATION_JSON_TYPE)
+                        .cacheControl(cacheControl)
+                        .header(HttpHeaders.VARY, VARY)
+                        .build();
+            }
+            // the type pattern is kept by its text, as it is compared by equality
+            List<?> cacheQuery = responseCache.isCacheableForAllTypes() ? Arrays.asList(null, typePattern, filter, locationPrefix, projection) : null;
+            return respond(since, null, null, near, projection, () -> !proxyStore.hasProxiedTypes(), matches, allServices, cacheQuery, headers)
+                    .cacheControl(cacheControl)
+                    .header(HttpHeaders.VARY, VARY)
+                    .build();
+        });
+    }
+
+    private Response.ResponseBuilder respond(@Nullable Long since,
+            @Nullable String clientId,
+            @Nullable Integer subsetSize,
+            @Nullable String near,
+            ServiceProjection projection,
+            BooleanSupplier tracked,
+            Predicate<Service> matches,
+            Supplier<Stream<Service>> services,
+            @Nullable List<?> cacheQuery,
+            HttpHeaders headers)
+    {
+        if ((clientId == null) != (subsetSize == null)) {
+            throw badRequest("clientId and subsetSize must be specified together");
+        }
+        if (subsetSize != null && subsetSize < 1) {
+            throw badRequest("subsetSize must be at least 1");
+        }
+        if (clientId != null && since != null) {
+            throw badRequest("A subset cannot be requested with since");
+        }
+        if (!projection.isAllFields() && since != null) {
+            throw badRequest("fields cannot be requested with since");
+        }
+        if (near != null && since != null) {
+            throw badRequest("near cannot be requested with since");
+        }
+
+        if (since != null) {
+            return Response.ok(getDelta(since, tracked, matches, services));
+        }
+        if (clientId != null) {
+            return ok(projection, byProximity(selectSubset(services.get(), clientId, subsetSize).stream(), near));
+        }
+        if (near != null) {
+            return ok(projection, byProximity(services.get(), near));
+        }
+        if (cacheQuery != null && prefersJson(headers)) {
+            CachedResponse cached = responseCache.get(cacheQuery, changeFeed::getLastSequence,
+                    () -> projectedServices(node.getEnvironment(), services.get()::iterator, projection));
+            return cached.toResponse(headers);
+        }
+        // the services are written as the stream is consumed, without being collected
+        Stream<Service> stream = services.get();
+        return ok(projection, stream::iterator);
+    }
+
+    private Response.ResponseBuilder ok(ServiceProjection projection, Iterable<Service> services)
+    {
+        return Response.ok(projectedServices(node.getEnvironment(), services, projection));
+    }
+
+    private ServiceDelta getDelta(long since, BooleanSupplier tracked, Predicate<Service> filter, Supplier<Stream<Service>> allServices)
+    {
+        ServiceChanges changes = tracked.getAsBoolean() ? changeFeed.getChangesSince(since) : null;
+        if (changes == null) {
+            // the version is read first, so changes that race with the listing are repeated rather than lost
+            long version = changeFeed.getLastSequence();
+            return fullServiceDelta(node.getEnvironment(), version, allServices.get());
+        }
+
+        Map<Id<Service>, ServiceChange> latest = new LinkedHashMap<>();
+        for (ServiceChange change : changes.getChanges()) {
+            ServiceChange filtered = change.filtered(filter);
+            if (filtered != null) {
+                latest.remove(filtered.getService().getId());
+                latest.put(filtered.getService().getId(), filtered);
+            }
+        }
+        List<Service> services = new ArrayList<>();
+        List<Id<Service>> removed = new ArrayList<>();
+        for (ServiceChange change : latest.values()) {
+            if (change.getKind() == ServiceChange.Kind.REMOVED) {
+                removed.add(change.getService().getId());
+            }
+            else {
+                services.add(change.getService());
+            }
+        }
+        return serviceDelta(node.getEnvironment(), changes.getSequence(), services, removed);
+    }
+
+    private static PropertyFilter toPropertyFilter(List<String> properties, List<String> propertyPrefixes)
+    {
+        try {
+            return parsePropertyFilter(properties, propertyPrefixes);
+        }
+        catch (IllegalArgumentException e) {
+            throw badRequest(e.getMessage());
+        }
+    }
+
+    @Nullable
+    private static TypePattern toTypePattern(@Nullable String typePattern)
+    {
+        if (typePattern == null) {
+            return null;
+        }
+        try {
+            return typePattern(typePattern);
+        }
+        catch (IllegalArgumentException e) {
+            throw badRequest(e.getMessage());
+        }
+    }
+
+    private static Stream<Service> filtered(Stream<Service> services, @Nullable TypePattern pattern, @Nullable String locationPrefix, PropertyFilter filter)
+    {
+        if (pattern != null) {
+            services = services.filter(pattern);
+        }
+        return ServiceLookup.filtered(services, locationPrefix, filter);
+    }
+
+    private static Predicate<Service> withLocation(Predicate<Service> matches, @Nullable String locationPrefix)
+    {
+        if (locationPrefix == null) {
+            return matches;
+        }
+        return matches.and(matchesLocation(locationPrefix));
+    }
+
+    private static List<Service> byProximity(Stream<Service> services, @Nullable String near)
+    {
+        if (near != null) {
+            services = services.sorted(byProximityTo(near));
+        }
+        return services.collect(toImmutableList());
+    }
+
+    private static ServiceProjection toProjection(@Nullable String fields)
+    {
+        if (fields == null) {
+            return allFields();
+        }
+        try {
+            return parseServiceProjection(fields);
+        }
+        catch (IllegalArgumentException e) {
+            throw badRequest(e.getMessage());
+        }
+    }
+
+    private static WebApplicationException badRequest(String message)
     {
-        ensureInitialized();
-        Iterable<Service> services = Stream.concat(configStore.getAll(), dynamicStore.getAll()).collect(Collectors.toList());
-        return services(node.getEnvironment(), proxyStore.filterAndGetAll(services));
+        return new WebApplicationException(Response.status(BAD_REQUEST).entity(message).build());
     }
 
     private void ensureInitialized()
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+/**
+ * The services of one type, or one type and pool, in a {@link ServiceBatch}.
+ */
+@AutoValue
+public abstract class ServiceSection
+{
+    public static ServiceSection serviceSection(String type, @Nullable String pool, String etag, List<Service> services)
+    {
+        return new AutoValue_ServiceSection(type, pool, etag, ImmutableList.copyOf(services));
+    }
+
+    public static ServiceSection unmodifiedServiceSection(String type, @Nullable String pool, String etag)
+    {
+        return new AutoValue_ServiceSection(type, pool, etag, null);
+    }
+
+    @JsonProperty
+    public abstract String getType();
+
+    @Nullable
+    @JsonProperty
+    @JsonInclude(NON_NULL)
+    public abstract String getPool();
+
+    /**
+     * Identifies the content of the section, so a client can avoid getting
+     * it again while it is unchanged.
+     */
+    @JsonProperty
+    public abstract String getEtag();
+
+    /**
+     * The services of the section, or null if they match the ETag the
+     * client passed.
+     */
+    @Nullable
+    @JsonProperty
+    @JsonInclude(NON_NULL)
+    public abstract List<Service> getServices();
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.primitives.Longs;
+import com.proofpoint.json.JsonCodec;
+import com.proofpoint.node.NodeInfo;
+import org.glassfish.jersey.server.CloseableService;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.proofpoint.discovery.Service.matchesPool;
+import static com.proofpoint.discovery.Service.matchesType;
+import static com.proofpoint.discovery.Services.services;
+import static com.proofpoint.json.JsonCodec.jsonCodec;
+import static java.lang.String.format;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Locale.ENGLISH;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+/**
+ * Streams changes to the services as server-sent events.
+ * <p>
+ * A stream starts with a {@code snapshot} event holding the current services,
+ * followed by an {@code added}, {@code updated} or {@code removed} event for
+ * each change to a matching service. Event IDs are change sequence numbers;
+ * a client that reconnects with a {@code Last-Event-ID} header gets the
+ * changes it missed instead of a new snapshot, as long as they are still in
+ * the change log. Changes may be replayed, so clients should apply them as
+ * upserts and removals by service ID.
+ * <p>
+ * A stream reads from the shared change log at its own pace rather than
+ * having changes queued for it. A client that falls further behind than the
+ * change log holds is sent a {@code resync} event and disconnected.
+ * <p>
+ * Each open stream holds a server thread, so streams run in the streams
+ * lane of {@link ExecutionLanes}, whose limit, if set, caps how many are open at
+ * once. Services of proxied types are not in the change log, so streams
+ * that would include them are rejected.
+ */
+@Path("/v1/stream/service")
+public class ServiceStreamResource
+{
+    static final String EVENT_STREAM = "text/event-stream";
+    static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final long KEEP_ALIVE_SECONDS = 15;
+
+    private static final JsonCodec<Services> SERVICES_CODEC = jsonCodec(Services.class);
+    private static final JsonCodec<ServiceChange> CHANGE_CODEC = jsonCodec(ServiceChange.class);
+
+    private final DynamicStore dynamicStore;
+    private final ConfigStore configStore;
+    private final ProxyStore proxyStore;
+    private final ChangeFeed changeFeed;
+    private final ExecutionLane streamLane;
+    private final NodeInfo node;
+    private final InitializationTracker initializationTracker;
+
+    @Inject
+    public ServiceStreamResource(DynamicStore dynamicStore, ConfigStore configStore, ProxyStore proxyStore, ChangeFeed changeFeed, ExecutionLanes lanes,
+            NodeInfo node, InitializationTracker initializationTracker)
+    {
+        this.dynamicStore = dynamicStore;
+        this.configStore = configStore;
+        this.proxyStore = proxyStore;
+        this.changeFeed = changeFeed;
+        streamLane = lanes.getStreams();
+        this.node = node;
+        this.initializationTracker = initializationTracker;
+    }
+
+    @GET
+    @Path("{type}/{pool}")
+    @Produces(EVENT_STREAM)
+    public StreamingOutput streamServices(@PathParam("type") String type,
+            @PathParam("pool") String pool,
+            @HeaderParam(LAST_EVENT_ID) String lastEventId,
+            @Context CloseableService closeableService)
+    {
+        return streamLane.execute(() -> {
+            ensureInitialized();
+            ensureNotProxied(type);
+            return stream(lastEventId, matchesType(type).and(matchesPool(pool)), () -> services(node.getEnvironment(),
+                    Stream.concat(configStore.get(type, pool), dynamicStore.get(type, pool))));
+        }, closeableService);
+    }
+
+    @GET
+    @Path("{type}")
+    @Produces(EVENT_STREAM)
+    public StreamingOutput streamTypeServices(@PathParam("type") String type,
+            @HeaderParam(LAST_EVENT_ID) String lastEventId,
+            @Context CloseableService closeableService)
+    {
+        return streamLane.execute(() -> {
+            ensureInitialized();
+            ensureNotProxied(type);
+            return stream(lastEventId, matchesType(type), () -> services(node.getEnvironment(),
+                    Stream.concat(configStore.get(type), dynamicStore.get(type))));
+        }, closeableService);
+    }
+
+    @GET
+    @Produces(EVENT_STREAM)
+    public StreamingOutput streamAllServices(@HeaderParam(LAST_EVENT_ID) String lastEventId, @Context CloseableService closeableService)
+    {
+        return streamLane.execute(() -> {
+            ensureInitialized();
+            if (proxyStore.hasProxiedTypes()) {
+                throw badRequest("Services cannot be streamed from a server that proxies types");
+            }
+            return stream(lastEventId, service -> true, () -> services(node.getEnvironment(), Stream.concat(configStore.getAll(), dynamicStore.getAll())));
+        }, closeableService);
+    }
+
+    private StreamingOutput stream(@Nullable String lastEventId, Predicate<Service> filter, Supplier<Services> snapshot)
+    {
+        Long resumeFrom = lastEventId == null ? null : Longs.tryParse(lastEventId.trim());
+        return output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8));
+
+            ServiceChanges changes = resumeFrom == null ? null : changeFeed.getChangesSince(resumeFrom);
+            long sequence;
+            if (changes == null) {
+                // the snapshot is taken after reading the sequence, so changes that race with it are replayed rather than lost
+                sequence = changeFeed.getLastSequence();
+                writeEvent(writer, "snapshot", sequence, SERVICES_CODEC.toJson(snapshot.get()));
+            }
+            else {
+                sequence = writeChanges(writer, changes, filter);
+            }
+            writer.flush();
+
+            try {
+                while (true) {
+                    changeFeed.awaitChangesAfter(sequence, KEEP_ALIVE_SECONDS, SECONDS);
+                    changes = changeFeed.getChangesSince(sequence);
+                    if (changes == null) {
+                        writeEvent(writer, "resync", null, "{}");
+                        writer.flush();
+                        return;
+                    }
+                    if (changes.getSequence() == sequence) {
+                        writer.write(": keep-alive\n\n");
+                    }
+                    else {
+                        sequence = writeChanges(writer, changes, filter);
+                    }
+                    writer.flush();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+
+    private static long writeChanges(Writer writer, ServiceChanges changes, Predicate<Service> filter)
+            throws IOException
+    {
+        List<ServiceChange> matching = changes.getChanges().stream()
+                .map(change -> change.filtered(filter))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        for (int i = 0; i < matching.size(); i++) {
+            ServiceChange change = matching.get(i);
+            // only the last event carries an ID, so a client cut off part way resumes from before the batch
+            Long id = i == matching.size() - 1 ? changes.getSequence() : null;
+            writeEvent(writer, change.getKind().name().toLowerCase(ENGLISH), id, CHANGE_CODEC.toJson(change));
+        }
+        return changes.getSequence();
+    }
+
+    private static void writeEvent(Writer writer, String event, @Nullable Long id, String data)
+            throws IOException
+    {
+        writer.write("event: ");
+        writer.write(event);
+        writer.write('\n');
+        if (id != null) {
+            writer.write("id: ");
+            writer.write(Long.toString(id));
+            writer.write('\n');
+        }
+        for (String line : data.split("\n")) {
+            writer.write("data: ");
+            writer.write(line);
+            writer.write('\n');
+        }
+        writer.write('\n');
+    }
+
+    private void ensureInitialized()
+    {
+        if (initializationTracker.isPending()) {
+            throw new WebApplicationException(503);
+        }
+    }
+
+    private void ensureNotProxied(String type)
+    {
+        if (proxyStore.isProxied(type)) {
+            throw badRequest(format("Services of proxied type %s cannot be streamed", type));
+        }
+    }
+
+    private static WebApplicationException badRequest(String message)
+    {
+        return new WebApplicationException(Response.status(BAD_REQUEST).entity(message).build());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Selects a stable subset of services for a client by rendezvous hashing.
+ * Each service is scored by a hash of the client ID and the service ID and
+ * the highest scoring services are selected. A client keeps its subset as
+ * long as the services in it remain, a service joining or leaving changes at
+ * most one member of any client's subset, and each service is selected by
+ * about the same share of clients.
+ */
+final class ServiceSubset
+{
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private ServiceSubset()
+    {
+    }
+
+    static List<Service> selectSubset(Stream<Service> services, String clientId, int size)
+    {
+        long clientHash = HASH_FUNCTION.hashString(clientId, UTF_8).asLong();
+
+        // min-heap of the best scores so far, so the lowest is the one to evict
+        PriorityQueue<ScoredService> selected = new PriorityQueue<>(size + 1, Comparator.comparingLong(ScoredService::getScore));
+        services.forEach(service -> {
+            selected.add(new ScoredService(score(clientHash, service), service));
+            if (selected.size() > size) {
+                selected.poll();
+            }
+        });
+
+        List<Service> subset = new ArrayList<>(selected.size());
+        for (ScoredService scored : selected) {
+            subset.add(scored.getService());
+        }
+        return subset;
+    }
+
+    private static long score(long clientHash, Service service)
+    {
+        UUID id = service.getId().get();
+        return HASH_FUNCTION.newHasher()
+                .putLong(clientHash)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .hash()
+                .asLong();
+    }
+
+    private static final class ScoredService
+    {
+        private final long score;
+        private final Service service;
+
+        ScoredService(long score, Service service)
+        {
+            this.score = score;
+            this.service = service;
+        }
+
+        long getScore()
+        {
+            return score;
+        }
+
+        Service getService()
+        {
+            return service;
+        }
+    }
+}
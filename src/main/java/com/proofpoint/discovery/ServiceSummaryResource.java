@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.proofpoint.node.NodeInfo;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+
+import static com.proofpoint.discovery.ServiceSummary.serviceSummary;
+
+/**
+ * Returns the number of dynamically announced instances of each type and
+ * pool. The counts are kept up to date as announcements change, so the
+ * cost of a request does not depend on the number of instances.
+ */
+@Path("/v1/summary/service")
+public class ServiceSummaryResource
+{
+    private final ServiceCounts serviceCounts;
+    private final ExecutionLane readLane;
+    private final NodeInfo node;
+    private final InitializationTracker initializationTracker;
+
+    @Inject
+    public ServiceSummaryResource(ServiceCounts serviceCounts, ExecutionLanes lanes, NodeInfo node, InitializationTracker initializationTracker)
+    {
+        this.serviceCounts = serviceCounts;
+        readLane = lanes.getReads();
+        this.node = node;
+        this.initializationTracker = initializationTracker;
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, "application/x-jackson-smile"})
+    public ServiceSummary getSummary()
+    {
+        return readLane.execute(() -> {
+            if (initializationTracker.isPending()) {
+                throw new WebApplicationException(503);
+            }
+            return serviceSummary(node.getEnvironment(), serviceCounts.getTypeSummaries());
+        });
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Matches services whose type matches a pattern in which {@code *} stands
+ * for any sequence of characters, such as {@code payments-*}.
+ */
+public final class TypePattern
+        implements Predicate<Service>
+{
+    private final String pattern;
+    private final String prefix;
+    private final Pattern regex;
+
+    private TypePattern(String pattern)
+    {
+        this.pattern = pattern;
+        int wildcard = pattern.indexOf('*');
+        prefix = wildcard < 0 ? pattern : pattern.substring(0, wildcard);
+
+        String[] literals = pattern.split("\\*", -1);
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < literals.length; i++) {
+            if (i > 0) {
+                regex.append(".*");
+            }
+            if (!literals[i].isEmpty()) {
+                regex.append(Pattern.quote(literals[i]));
+            }
+        }
+        this.regex = Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pattern is empty
+     */
+    public static TypePattern typePattern(String pattern)
+    {
+        requireNonNull(pattern, "pattern is null");
+        checkArgument(!pattern.isEmpty(), "Type pattern is empty");
+        return new TypePattern(pattern);
+    }
+
+    /**
+     * The literal text before the first wildcard, which every matching type
+     * starts with.
+     */
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+    public boolean matches(String type)
+    {
+        return type.startsWith(prefix) && regex.matcher(type).matches();
+    }
+
+    @Override
+    public boolean test(Service service)
+    {
+        return matches(service.getType());
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return pattern.equals(((TypePattern) o).pattern);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return pattern.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return pattern;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The number of instances of a type, in total and by pool. The last-changed
+ * time and version of the type are those of its most recently changed pool.
+ */
+@AutoValue
+public abstract class TypeSummary
+{
+    public static TypeSummary typeSummary(String type, List<PoolSummary> pools)
+    {
+        checkArgument(!pools.isEmpty(), "pools is empty");
+        int instances = 0;
+        long lastChanged = Long.MIN_VALUE;
+        long version = Long.MIN_VALUE;
+        for (PoolSummary pool : pools) {
+            instances += pool.getInstances();
+            lastChanged = Math.max(lastChanged, pool.getLastChanged());
+            version = Math.max(version, pool.getVersion());
+        }
+        return new AutoValue_TypeSummary(type, instances, lastChanged, version, ImmutableList.copyOf(pools));
+    }
+
+    @JsonProperty
+    public abstract String getType();
+
+    @JsonProperty
+    public abstract int getInstances();
+
+    @JsonProperty
+    public abstract long getLastChanged();
+
+    @JsonProperty
+    public abstract long getVersion();
+
+    @JsonProperty
+    public abstract List<PoolSummary> getPools();
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.common.collect.ImmutableList;
+import com.proofpoint.log.Logger;
+import com.proofpoint.reporting.Gauge;
+import com.proofpoint.stats.CounterStat;
+import org.weakref.jmx.Nested;
+
+import java.util.Collection;
+import java.util.List;
+
+import static com.proofpoint.discovery.store.EntryUpdate.entryUpdate;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Delivers store updates to a set of listeners from a background thread.
+ * <p>
+ * Updates are queued in a bounded buffer and drained in batches, so the work
+ * done by the listeners does not add latency to the put path. When the buffer
+ * is full, the oldest updates are dropped.
+ */
+class AsyncUpdateListener
+        implements UpdateListener
+{
+    private static final Logger log = Logger.get(AsyncUpdateListener.class);
+
+    private final List<UpdateListener> listeners;
+    private final BatchProcessor<EntryUpdate> processor;
+
+    AsyncUpdateListener(String name, Collection<UpdateListener> listeners, int maxBatchSize, int queueSize)
+    {
+        requireNonNull(name, "name is null");
+        this.listeners = ImmutableList.copyOf(requireNonNull(listeners, "listeners is null"));
+        processor = new BatchProcessor<>("update-listener-" + name, this::dispatch, maxBatchSize, queueSize);
+    }
+
+    void start()
+    {
+        processor.start();
+    }
+
+    void stop()
+    {
+        processor.stop();
+    }
+
+    @Override
+    public void notifyUpdate(Entry oldEntry, Entry newEntry)
+    {
+        processor.put(entryUpdate(oldEntry, newEntry));
+    }
+
+    @Override
+    public void notifyUpdates(Collection<EntryUpdate> updates)
+    {
+        processor.putAll(updates);
+    }
+
+    @Override
+    public void removeIdle(long nowInMs)
+    {
+        for (UpdateListener listener : listeners) {
+            listener.removeIdle(nowInMs);
+        }
+    }
+
+    private void dispatch(Collection<EntryUpdate> updates)
+    {
+        for (UpdateListener listener : listeners) {
+            try {
+                listener.notifyUpdates(updates);
+            }
+            catch (RuntimeException e) {
+                log.warn(e, "Error notifying %s of store updates", listener);
+            }
+        }
+    }
+
+    @Nested
+    public CounterStat getProcessedUpdates()
+    {
+        return processor.getProcessedEntries();
+    }
+
+    @Nested
+    public CounterStat getDroppedUpdates()
+    {
+        return processor.getDroppedEntries();
+    }
+
+    @Gauge
+    public long getQueueSize()
+    {
+        return processor.getQueueSize();
+    }
+}
@@ -95,7 +95,6 @@ public class BatchProcessor<T>
                     // TODO: expose timestamp of last execution via jmx
                 }
             });
-            log.info("Adding discovery peer %s", name);
         }
     }
 
@@ -129,7 +128,6 @@ public class BatchProcessor<T>
         if (future != null) {
             future.cancel(true);
             executor.shutdownNow();
-            log.info("Removing discovery peer %s", name);
 
             future = null;
         }
@@ -140,6 +138,26 @@ public class BatchProcessor<T>
         Preconditions.checkState(!future.isCancelled(), "Processor is not running");
         requireNonNull(entry, "entry is null");
 
+        enqueue(entry);
+    }
+
+    /**
+     * Queues the entries back to back, so that they are sent together when
+     * they fit within a single batch.
+     */
+    public void putAll(Collection<T> entries)
+    {
+        Preconditions.checkState(!future.isCancelled(), "Processor is not running");
+        requireNonNull(entries, "entries is null");
+
+        for (T entry : entries) {
+            requireNonNull(entry, "entry is null");
+            enqueue(entry);
+        }
+    }
+
+    private void enqueue(T entry)
+    {
         while (!queue.offer(entry)) {
             // throw away oldest and try again
             if (queue.poll() != null) {
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.common.collect.ImmutableList;
+import com.proofpoint.discovery.ChangeFeed;
+import com.proofpoint.discovery.Service;
+import com.proofpoint.discovery.ServiceChange;
+import com.proofpoint.discovery.ServiceChange.Kind;
+import com.proofpoint.discovery.ServiceChanges;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.discovery.ServiceChange.serviceChange;
+import static com.proofpoint.discovery.ServiceChanges.serviceChanges;
+import static com.proofpoint.discovery.store.EntryUpdate.isContentChanged;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A bounded log of the changes to the entries of an {@link InMemoryStore},
+ * numbered by sequence. Renewals that leave an entry's services unchanged are
+ * not logged. Only the most recent changes are kept; a reader that falls
+ * further behind has to start over from the current set of services.
+ * <p>
+ * Sequence numbers start from a random epoch in their high bits, so a
+ * sequence number issued by another server, or by this one before a restart,
+ * falls outside the range of this log and is treated as too old rather than
+ * mistaken for a recent one. They stay within the 53 bits a JSON client can
+ * represent exactly.
+ * <p>
+ * A change is logged in two steps. The store takes a sequence number with
+ * {@link #prepare} while it holds the entry's key, so changes to one key are
+ * numbered in the order they were made, and calls {@link #publish} once the
+ * change is visible to readers of the store. The last sequence number only
+ * advances over published changes, so a reader that reads it before reading
+ * the store sees every change up to it. A change whose store update failed
+ * is published with {@link #abort}, so it does not hold up the ones after it.
+ * <p>
+ * A writer that is a whole log behind is waited for only briefly. After
+ * that its change is skipped, and readers whose changes would include it
+ * are sent to start over.
+ */
+public class ChangeLog
+        implements ChangeFeed
+{
+    private static final int SEQUENCE_BITS = 32;
+    private static final int EPOCH_BITS = 21;
+    private static final long MAX_PUBLISH_WAIT_NANOS = MILLISECONDS.toNanos(100);
+
+    private final AtomicReferenceArray<EntryChange> changes;
+    private final long firstSequence;
+    private final AtomicLong nextSequence;
+    private final AtomicLong lastSequence;
+    private final AtomicLong skippedThrough;
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    public ChangeLog(int capacity)
+    {
+        this(capacity, ThreadLocalRandom.current().nextLong(1, 1L << EPOCH_BITS) << SEQUENCE_BITS);
+    }
+
+    ChangeLog(int capacity, long firstSequence)
+    {
+        checkArgument(capacity > 0, "capacity must be positive");
+        changes = new AtomicReferenceArray<>(capacity);
+        this.firstSequence = firstSequence;
+        nextSequence = new AtomicLong(firstSequence);
+        lastSequence = new AtomicLong(firstSequence);
+        skippedThrough = new AtomicLong(firstSequence);
+    }
+
+    /**
+     * Records a change to an entry. A null entry stands for one that is
+     * absent or has been deleted.
+     */
+    void append(@Nullable Entry oldEntry, @Nullable Entry newEntry)
+    {
+        publish(prepare(oldEntry, newEntry));
+    }
+
+    /**
+     * Numbers a change to an entry, to be published once it is visible to
+     * readers. A null entry stands for one that is absent or has been
+     * deleted.
+     *
+     * @return null if the entry's services are unchanged
+     */
+    @Nullable
+    EntryChange prepare(@Nullable Entry oldEntry, @Nullable Entry newEntry)
+    {
+        if (oldEntry == null ? newEntry == null : newEntry != null && !isContentChanged(oldEntry, newEntry)) {
+            return null;
+        }
+        return new EntryChange(nextSequence.incrementAndGet(), oldEntry, newEntry);
+    }
+
+    /**
+     * Publishes a prepared change, advancing the last sequence number over it
+     * and any later changes already published. A null change is ignored.
+     */
+    void publish(@Nullable EntryChange change)
+    {
+        if (change == null) {
+            return;
+        }
+        // the slot still holds a change that has not been published if a writer
+        // with an earlier sequence number is a whole log behind
+        long deadline = System.nanoTime() + MAX_PUBLISH_WAIT_NANOS;
+        while (change.sequence - lastSequence.get() > changes.length()) {
+            if (System.nanoTime() - deadline > 0) {
+                skipThrough(change.sequence - changes.length());
+                break;
+            }
+            Thread.yield();
+        }
+
+        // a change that was skipped while its writer was behind must not overwrite a later one in its slot
+        int index = index(change.sequence);
+        EntryChange current;
+        do {
+            current = changes.get(index);
+            if (current != null && current.sequence > change.sequence) {
+                return;
+            }
+        }
+        while (!changes.compareAndSet(index, current, change));
+
+        advance();
+    }
+
+    /**
+     * Publishes a prepared change whose store update did not happen, so that
+     * it is logged as changing nothing. A null change is ignored.
+     */
+    void abort(@Nullable EntryChange change)
+    {
+        if (change != null) {
+            publish(new EntryChange(change.sequence, null, null));
+        }
+    }
+
+    private void skipThrough(long sequence)
+    {
+        long skipped;
+        do {
+            skipped = skippedThrough.get();
+        }
+        while (skipped < sequence && !skippedThrough.compareAndSet(skipped, sequence));
+        advance();
+    }
+
+    private void advance()
+    {
+        // each publisher advances over every published change it finds, so a change
+        // published out of order is advanced over by the publisher of the one before it
+        boolean advanced = false;
+        long last = lastSequence.get();
+        while (last < skippedThrough.get() || isPublished(last + 1)) {
+            if (lastSequence.compareAndSet(last, last + 1)) {
+                advanced = true;
+            }
+            last = lastSequence.get();
+        }
+
+        if (advanced && waiters.get() > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public long getLastSequence()
+    {
+        return lastSequence.get();
+    }
+
+    @Override
+    @Nullable
+    public ServiceChanges getChangesSince(long sequence)
+    {
+        long last = lastSequence.get();
+        // a sequence number from another log is in a different epoch, so it is out of range
+        if (sequence > last || sequence < Math.max(firstSequence, last - changes.length())) {
+            return null;
+        }
+        List<EntryChange> entryChanges = new ArrayList<>((int) (last - sequence));
+        for (long i = sequence + 1; i <= last; i++) {
+            EntryChange entryChange = changes.get(index(i));
+            if (entryChange == null || entryChange.sequence != i) {
+                // skipped, or overwritten by a later change while it was being read
+                return null;
+            }
+            entryChanges.add(entryChange);
+        }
+
+        ImmutableList.Builder<ServiceChange> builder = ImmutableList.builder();
+        for (EntryChange entryChange : entryChanges) {
+            entryChange.addServiceChanges(builder);
+        }
+        return serviceChanges(last, builder.build());
+    }
+
+    @Override
+    public void awaitChangesAfter(long sequence, long timeout, TimeUnit unit)
+            throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            // registered before checking the sequence, so a publisher that advances it after the check notifies
+            waiters.incrementAndGet();
+            try {
+                while (lastSequence.get() <= sequence) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return;
+                    }
+                    NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+            finally {
+                waiters.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean isPublished(long sequence)
+    {
+        EntryChange change = changes.get(index(sequence));
+        return change != null && change.sequence == sequence;
+    }
+
+    private int index(long sequence)
+    {
+        return (int) (sequence % changes.length());
+    }
+
+    static final class EntryChange
+    {
+        private final long sequence;
+        private final List<Service> oldServices;
+        private final List<Service> newServices;
+
+        EntryChange(long sequence, @Nullable Entry oldEntry, @Nullable Entry newEntry)
+        {
+            this.sequence = sequence;
+            oldServices = servicesOf(oldEntry);
+            newServices = servicesOf(newEntry);
+        }
+
+        void addServiceChanges(ImmutableList.Builder<ServiceChange> builder)
+        {
+            for (Service service : newServices) {
+                Service previous = findById(oldServices, service);
+                if (previous == null) {
+                    builder.add(serviceChange(sequence, Kind.ADDED, service));
+                }
+                else if (!sameContent(previous, service)) {
+                    builder.add(serviceChange(sequence, Kind.UPDATED, service, previous));
+                }
+            }
+            for (Service service : oldServices) {
+                if (findById(newServices, service) == null) {
+                    builder.add(serviceChange(sequence, Kind.REMOVED, service));
+                }
+            }
+        }
+
+        private static List<Service> servicesOf(@Nullable Entry entry)
+        {
+            if (entry == null || entry.getValue() == null) {
+                return Collections.emptyList();
+            }
+            return entry.getValue();
+        }
+
+        @Nullable
+        private static Service findById(List<Service> services, Service service)
+        {
+            for (Service candidate : services) {
+                if (candidate.getId().equals(service.getId())) {
+                    return candidate;
+                }
+            }
+            return null;
+        }
+
+        private static boolean sameContent(Service a, Service b)
+        {
+            return Objects.equals(a.getNodeId(), b.getNodeId()) &&
+                    Objects.equals(a.getType(), b.getType()) &&
+                    Objects.equals(a.getPool(), b.getPool()) &&
+                    Objects.equals(a.getLocation(), b.getLocation()) &&
+                    Objects.equals(a.getProperties(), b.getProperties());
+        }
+    }
+}
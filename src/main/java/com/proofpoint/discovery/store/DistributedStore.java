@@ -15,21 +15,33 @@
  */
 package com.proofpoint.discovery.store;
 
+import com.google.common.collect.ImmutableSet;
 import com.proofpoint.discovery.DiscoveryConfig;
 import com.proofpoint.discovery.DynamicAnnouncement;
 import com.proofpoint.discovery.DynamicStore;
 import com.proofpoint.discovery.Id;
 import com.proofpoint.discovery.Node;
+import com.proofpoint.discovery.NodeServices;
+import com.proofpoint.discovery.PropertyFilter;
 import com.proofpoint.discovery.Service;
+import com.proofpoint.discovery.TypePattern;
 import com.proofpoint.reporting.Gauge;
+import com.proofpoint.stats.CounterStat;
 import com.proofpoint.units.Duration;
 import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -38,11 +50,15 @@ import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.proofpoint.concurrent.Threads.daemonThreadsNamed;
 import static com.proofpoint.discovery.DynamicServiceAnnouncement.toServiceWith;
+import static com.proofpoint.discovery.NodeServices.nodeServices;
+import static com.proofpoint.discovery.Service.matchesLocation;
 import static com.proofpoint.discovery.Service.matchesPool;
 import static com.proofpoint.discovery.Service.matchesType;
 import static com.proofpoint.discovery.store.Entry.entry;
+import static com.proofpoint.discovery.store.Touch.touch;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 
@@ -58,6 +74,7 @@ public class DistributedStore
     private final Supplier<Instant> timeSupplier;
     private final Duration tombstoneMaxAge;
     private final Duration garbageCollectionInterval;
+    private final Duration expirationInterval;
     private final Duration maxAge;
 
     private final ScheduledExecutorService garbageCollector;
@@ -80,6 +97,7 @@ public class DistributedStore
         requireNonNull(config, "config is null");
         tombstoneMaxAge = config.getTombstoneMaxAge();
         garbageCollectionInterval = config.getGarbageCollectionInterval();
+        expirationInterval = config.getExpirationInterval();
 
         maxAge = requireNonNull(discoveryConfig, "discoveryConfig is null").getMaxAge();
 
@@ -91,6 +109,7 @@ public class DistributedStore
     public void start()
     {
         garbageCollector.scheduleAtFixedRate(this::removeExpiredEntries, 0, garbageCollectionInterval.toMillis(), TimeUnit.MILLISECONDS);
+        garbageCollector.scheduleWithFixedDelay(this::expireEntries, expirationInterval.toMillis(), expirationInterval.toMillis(), TimeUnit.MILLISECONDS);
     }
 
     @Managed
@@ -107,14 +126,27 @@ public class DistributedStore
 
     @Managed
     public void removeExpiredEntries()
+    {
+        expireEntries();
+        long now = timeSupplier.get().toEpochMilli();
+        localStore.removeExpiredTombstones(now, tombstoneMaxAge.toMillis());
+        localStore.removeIdle(now);
+
+        lastGcTimestamp.set(System.currentTimeMillis());
+    }
+
+    /**
+     * Deletes the expired entries, so that their expiry shows up in the
+     * change log soon after it happens.
+     */
+    @Managed
+    public void expireEntries()
     {
         for (Entry entry : localStore.getAll()) {
             if (isExpired(entry)) {
                 localStore.delete(entry.getKey(), entry.getTimestamp());
             }
         }
-
-        lastGcTimestamp.set(System.currentTimeMillis());
     }
 
     @Gauge
@@ -122,19 +154,48 @@ public class DistributedStore
     {
         long count = 0;
         for (Entry entry : localStore.getAll()) {
-            if (!isExpired(entry) && entry.getValue() != null) {
+            if (!isExpired(entry)) {
                 ++count;
             }
         }
         return count;
     }
 
+    @Gauge
+    public long getTombstoneCount()
+    {
+        return localStore.getTombstoneCount();
+    }
+
+    @Gauge
+    public double getEntryUtilization()
+    {
+        return localStore.getEntryUtilization();
+    }
+
+    @Gauge
+    public double getSizeUtilization()
+    {
+        return localStore.getSizeUtilization();
+    }
+
+    @Gauge
+    public double getPoolUtilization()
+    {
+        return localStore.getPoolUtilization();
+    }
+
+    @Nested
+    public CounterStat getRejectedEntries()
+    {
+        return localStore.getRejectedEntries();
+    }
+
     private boolean isExpired(Entry entry)
     {
         long ageInMs = timeSupplier.get().toEpochMilli() - entry.getTimestamp();
 
-        return (entry.getValue() == null && ageInMs > tombstoneMaxAge.toMillis()) ||  // TODO: this is repeated in StoreResource
-                (entry.getMaxAgeInMs() != null && ageInMs > entry.getMaxAgeInMs());
+        return entry.getMaxAgeInMs() != null && ageInMs > entry.getMaxAgeInMs();
     }
 
     @PreDestroy
@@ -149,15 +210,99 @@ public class DistributedStore
         requireNonNull(nodeId, "nodeId is null");
         requireNonNull(announcement, "announcement is null");
 
+        Entry entry = toEntry(nodeId, announcement, timeSupplier.get().toEpochMilli());
+
+        Touch touch = renewUnchanged(entry);
+        if (touch != null) {
+            remoteStore.touch(touch);
+            return;
+        }
+
+        localStore.put(entry);
+        remoteStore.put(entry);
+    }
+
+    @Override
+    public Set<Id<Node>> putAll(Map<Id<Node>, DynamicAnnouncement> announcements)
+    {
+        requireNonNull(announcements, "announcements is null");
+
         long now = timeSupplier.get().toEpochMilli();
 
+        Map<ByteBuffer, Id<Node>> nodeIds = new HashMap<>();
+        List<Entry> entries = new ArrayList<>(announcements.size());
+        announcements.forEach((nodeId, announcement) -> {
+            Entry entry = toEntry(nodeId, announcement, now);
+            Touch touch = renewUnchanged(entry);
+            if (touch != null) {
+                remoteStore.touch(touch);
+            }
+            else {
+                nodeIds.put(ByteBuffer.wrap(entry.getKey()), nodeId);
+                entries.add(entry);
+            }
+        });
+        if (entries.isEmpty()) {
+            return ImmutableSet.of();
+        }
+
+        MergeResult result = localStore.putAll(entries);
+        if (result.getRejected() == 0) {
+            remoteStore.putAll(entries);
+            return ImmutableSet.of();
+        }
+
+        // only replicate what this store did not refuse
+        Set<ByteBuffer> rejectedKeys = result.getRejectedKeys();
+        remoteStore.putAll(entries.stream()
+                .filter(entry -> !rejectedKeys.contains(ByteBuffer.wrap(entry.getKey())))
+                .collect(Collectors.toList()));
+        return rejectedKeys.stream()
+                .map(nodeIds::get)
+                .collect(toImmutableSet());
+    }
+
+    @Override
+    public boolean renew(Id<Node> nodeId, long contentHash)
+    {
+        requireNonNull(nodeId, "nodeId is null");
+
+        Touch touch = touch(nodeId.getBytes(), timeSupplier.get().toEpochMilli(), maxAge.toMillis(), contentHash);
+        if (!localStore.touch(touch)) {
+            return false;
+        }
+        remoteStore.touch(touch);
+        return true;
+    }
+
+    /**
+     * If the local entry has the same content as the given one, extends the
+     * local entry in place instead of replacing it.
+     *
+     * @return the touch to send to peers, or null if the entry has to be
+     * stored and replicated in full
+     */
+    @Nullable
+    private Touch renewUnchanged(Entry entry)
+    {
+        Entry existing = localStore.get(entry.getKey());
+        if (existing == null || existing.getContentHash() != entry.getContentHash()) {
+            return null;
+        }
+
+        Touch touch = touch(entry.getKey(), entry.getTimestamp(), entry.getMaxAgeInMs(), entry.getContentHash());
+        if (!localStore.touch(touch)) {
+            return null;
+        }
+        return touch;
+    }
+
+    private Entry toEntry(Id<Node> nodeId, DynamicAnnouncement announcement, long now)
+    {
         List<Service> services = announcement.getServiceAnnouncements().stream()
                 .map(toServiceWith(nodeId, announcement.getLocation(), announcement.getPool()))
                 .collect(Collectors.toList());
-        Entry entry = entry(nodeId.getBytes(), services, now, maxAge.toMillis());
-
-        localStore.put(entry);
-        remoteStore.put(entry);
+        return entry(nodeId.getBytes(), services, now, maxAge.toMillis());
     }
 
     @Override
@@ -176,22 +321,89 @@ public class DistributedStore
     @Override
     public Stream<Service> get(String type)
     {
-        return getAll()
+        return localStore.getByType(type).stream()
+                .filter(expired().negate())
+                .flatMap(entry -> entry.getValue().stream())
                 .filter(matchesType(type));
     }
 
     @Override
     public Stream<Service> get(String type, String pool)
     {
-        return getAll()
+        return localStore.getByTypeAndPool(type, pool).stream()
+                .filter(expired().negate())
+                .flatMap(entry -> entry.getValue().stream())
                 .filter(matchesType(type).and(matchesPool(pool)));
     }
 
+    @Override
+    public Stream<Service> get(String type, @Nullable String pool, PropertyFilter filter)
+    {
+        Predicate<Service> matches = matchesType(type).and(filter);
+        if (pool != null) {
+            matches = matches.and(matchesPool(pool));
+        }
+        return localStore.query(type, pool, filter).stream()
+                .filter(expired().negate())
+                .flatMap(entry -> entry.getValue().stream())
+                .filter(matches);
+    }
+
+    @Override
+    public Stream<Service> getAll(PropertyFilter filter)
+    {
+        if (filter.isEmpty()) {
+            return getAll();
+        }
+        return localStore.query(null, null, filter).stream()
+                .filter(expired().negate())
+                .flatMap(entry -> entry.getValue().stream())
+                .filter(filter);
+    }
+
+    @Override
+    @Nullable
+    public NodeServices getNode(Id<Node> nodeId)
+    {
+        Entry entry = localStore.get(nodeId.getBytes());
+        if (entry == null || isExpired(entry)) {
+            return null;
+        }
+        Long remainingTtl = null;
+        if (entry.getMaxAgeInMs() != null) {
+            remainingTtl = Math.max(0, entry.getTimestamp() + entry.getMaxAgeInMs() - timeSupplier.get().toEpochMilli());
+        }
+        return nodeServices(nodeId, entry.getTimestamp(), remainingTtl, entry.getValue());
+    }
+
+    @Override
+    public Stream<Service> getByTypePattern(TypePattern pattern, PropertyFilter filter)
+    {
+        return localStore.getTypes(pattern).stream()
+                .flatMap(type -> get(type, null, filter));
+    }
+
+    @Override
+    public Stream<Service> getUnderLocation(@Nullable String type, @Nullable String pool, String locationPrefix, PropertyFilter filter)
+    {
+        Predicate<Service> matches = matchesLocation(locationPrefix).and(filter);
+        if (type != null) {
+            matches = matches.and(matchesType(type));
+        }
+        if (pool != null) {
+            matches = matches.and(matchesPool(pool));
+        }
+        return localStore.query(type, pool, locationPrefix, filter).stream()
+                .filter(expired().negate())
+                .flatMap(entry -> entry.getValue().stream())
+                .filter(matches);
+    }
+
     @Override
     public Stream<Service> getAll()
     {
         return localStore.getAll().stream()
-                .filter(expired().negate().and(tombstone().negate()))
+                .filter(expired().negate())
                 .flatMap(entry -> entry.getValue().stream());
     }
 
@@ -199,9 +411,4 @@ public class DistributedStore
     {
         return this::isExpired;
     }
-
-    private static Predicate<Entry> tombstone()
-    {
-        return entry -> entry.getValue() == null;
-    }
 }
@@ -16,6 +16,7 @@
 package com.proofpoint.discovery.store;
 
 import com.proofpoint.reporting.Key;
+import com.proofpoint.stats.CounterStat;
 import com.proofpoint.stats.SparseTimeStat;
 
 public interface DynamicRenewals
@@ -23,4 +24,6 @@ public interface DynamicRenewals
     SparseTimeStat expiredFor(@Key("serviceType") String serviceType);
 
     SparseTimeStat renewedAfter(@Key("serviceType") String serviceType);
+
+    CounterStat renewals(@Key("serviceType") String serviceType);
 }
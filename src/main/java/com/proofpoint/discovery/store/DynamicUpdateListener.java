@@ -15,56 +15,144 @@
  */
 package com.proofpoint.discovery.store;
 
-import com.google.common.collect.ImmutableSet;
 import com.proofpoint.discovery.Service;
-import com.proofpoint.json.JsonCodec;
+import com.proofpoint.stats.CounterStat;
+import com.proofpoint.stats.SparseTimeStat;
 
 import javax.inject.Inject;
-import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.function.Supplier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import static com.google.common.collect.Iterables.transform;
-import static com.google.common.collect.Sets.intersection;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class DynamicUpdateListener
     implements UpdateListener
 {
-    private static final JsonCodec<List<Service>> CODEC = JsonCodec.listJsonCodec(Service.class);
+    // a type's stat handles are dropped once none of its services has renewed for this long
+    static final long IDLE_TIME_IN_MS = 600_000;
 
-    private final Supplier<Instant> timeSupplier;
     private final DynamicRenewals dynamicRenewals;
 
+    // stat handles are resolved once per type rather than through the report collection proxy on every renewal
+    private final ConcurrentMap<String, TypeStats> typeStats = new ConcurrentHashMap<>();
+
     @Inject
-    public DynamicUpdateListener(Supplier<Instant> timeSupplier, DynamicRenewals dynamicRenewals)
+    public DynamicUpdateListener(DynamicRenewals dynamicRenewals)
     {
-        this.timeSupplier = requireNonNull(timeSupplier, "timeSupplier is null");
         this.dynamicRenewals = requireNonNull(dynamicRenewals, "dynamicRenewals is null");
     }
 
     @Override
     public void notifyUpdate(Entry oldEntry, Entry newEntry)
     {
-        if (newEntry.getValue() != null && oldEntry.getValue() != null) {
-            long renewedAfterMillis = timeSupplier.get().toEpochMilli() - oldEntry.getTimestamp();
-            if (renewedAfterMillis > oldEntry.getMaxAgeInMs()) {
-                for (String type : intersection(getTypes(oldEntry), getTypes(newEntry))) {
-                    dynamicRenewals.expiredFor(type).add(renewedAfterMillis - oldEntry.getMaxAgeInMs(), MILLISECONDS);
-                }
+        recordRenewal(oldEntry, newEntry);
+    }
+
+    @Override
+    public void notifyUpdates(Collection<EntryUpdate> updates)
+    {
+        for (EntryUpdate update : updates) {
+            recordRenewal(update.getOldEntry(), update.getNewEntry());
+        }
+    }
+
+    /**
+     * Drops the stat handles of types that have not been renewed within the
+     * idle time, so that types that come and go are not held forever. A
+     * type that is renewed again resolves its handles anew.
+     */
+    @Override
+    public void removeIdle(long nowInMs)
+    {
+        typeStats.values().removeIf(stats -> nowInMs - stats.lastRenewalInMs > IDLE_TIME_IN_MS);
+    }
+
+    private void recordRenewal(Entry oldEntry, Entry newEntry)
+    {
+        List<Service> oldServices = oldEntry.getValue();
+        List<Service> newServices = newEntry.getValue();
+        if (oldServices == null || newServices == null) {
+            return;
+        }
+
+        // measured between the entries rather than when the update is dispatched, which may be some time later
+        long renewedAfterMillis = newEntry.getTimestamp() - oldEntry.getTimestamp();
+        boolean expired = renewedAfterMillis > oldEntry.getMaxAgeInMs();
+
+        for (int i = 0; i < oldServices.size(); i++) {
+            String type = oldServices.get(i).getType();
+            if (containsType(oldServices, i, type) || !containsType(newServices, newServices.size(), type)) {
+                continue;
+            }
+
+            TypeStats stats = typeStats.computeIfAbsent(type, TypeStats::new);
+            stats.lastRenewalInMs = newEntry.getTimestamp();
+            if (expired) {
+                stats.expiredFor().add(renewedAfterMillis - oldEntry.getMaxAgeInMs(), MILLISECONDS);
             }
             else {
-                for (String type : intersection(getTypes(oldEntry), getTypes(newEntry))) {
-                    dynamicRenewals.renewedAfter(type).add(renewedAfterMillis, MILLISECONDS);
-                }
+                stats.renewedAfter().add(renewedAfterMillis, MILLISECONDS);
             }
+            stats.renewals().add(1);
         }
     }
 
-    private static Set<String> getTypes(Entry newEntry)
+    /**
+     * Whether any of the first {@code limit} services has the given type.
+     */
+    private static boolean containsType(List<Service> services, int limit, String type)
     {
-        return ImmutableSet.copyOf(transform(newEntry.getValue(), Service::getType));
+        for (int i = 0; i < limit; i++) {
+            if (services.get(i).getType().equals(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The stat handles of one type, each resolved on first use. Two threads
+     * may both resolve a handle, which is harmless, as the report collection
+     * returns the same stat for the same type.
+     */
+    private final class TypeStats
+    {
+        private final String type;
+        private volatile SparseTimeStat expiredFor;
+        private volatile SparseTimeStat renewedAfter;
+        private volatile CounterStat renewals;
+        private volatile long lastRenewalInMs;
+
+        TypeStats(String type)
+        {
+            this.type = type;
+        }
+
+        SparseTimeStat expiredFor()
+        {
+            if (expiredFor == null) {
+                expiredFor = dynamicRenewals.expiredFor(type);
+            }
+            return expiredFor;
+        }
+
+        SparseTimeStat renewedAfter()
+        {
+            if (renewedAfter == null) {
+                renewedAfter = dynamicRenewals.renewedAfter(type);
+            }
+            return renewedAfter;
+        }
+
+        CounterStat renewals()
+        {
+            if (renewals == null) {
+                renewals = dynamicRenewals.renewals(type);
+            }
+            return renewals;
+        }
     }
 }
@@ -16,6 +16,7 @@
 package com.proofpoint.discovery.store;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.auto.value.AutoValue;
 import com.proofpoint.discovery.Service;
@@ -31,6 +32,9 @@ public abstract class Entry
 {
     private static final JsonCodec<List<Service>> SERVICE_LIST_CODEC = JsonCodec.listJsonCodec(Service.class);
 
+    private volatile long contentHash;
+    private volatile boolean contentHashComputed;
+
     @JsonCreator
     public static Entry entry(@JsonProperty("key") byte[] key,
             @Nullable @JsonProperty("value") byte[] value,
@@ -74,4 +78,36 @@ public abstract class Entry
     @Nullable
     @JsonProperty
     public abstract Long getMaxAgeInMs();
+
+    /**
+     * Content hash of the value, computed on first use and kept. The store
+     * hashes an entry before merging it, so that the hash is not computed
+     * while it holds the entry's key.
+     *
+     * @see Service#contentHash(List)
+     */
+    @JsonIgnore
+    public long getContentHash()
+    {
+        if (!contentHashComputed) {
+            List<Service> value = getValue();
+            contentHash = value == null ? 0 : Service.contentHash(value);
+            contentHashComputed = true;
+        }
+        return contentHash;
+    }
+
+    /**
+     * Returns a copy of this entry with a new timestamp and max age that
+     * shares this entry's value and content hash.
+     */
+    Entry withTimestamp(long timestamp, @Nullable Long maxAgeInMs)
+    {
+        Entry entry = entry(getKey(), getValue(), timestamp, maxAgeInMs);
+        if (contentHashComputed) {
+            entry.contentHash = contentHash;
+            entry.contentHashComputed = true;
+        }
+        return entry;
+    }
 }
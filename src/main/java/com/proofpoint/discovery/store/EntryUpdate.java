@@ -0,0 +1,52 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.auto.value.AutoValue;
+
+@AutoValue
+abstract class EntryUpdate
+{
+    static EntryUpdate entryUpdate(Entry oldEntry, Entry newEntry)
+    {
+        return new AutoValue_EntryUpdate(oldEntry, newEntry);
+    }
+
+    abstract Entry getOldEntry();
+
+    abstract Entry getNewEntry();
+
+    /**
+     * Whether the update changed the announced services, as opposed to only
+     * extending the entry's timestamp. Listeners that maintain derived state
+     * can skip updates that did not change the content.
+     */
+    boolean isContentChanged()
+    {
+        return isContentChanged(getOldEntry(), getNewEntry());
+    }
+
+    static boolean isContentChanged(Entry oldEntry, Entry newEntry)
+    {
+        if (oldEntry.getValue() == newEntry.getValue()) {
+            return false;
+        }
+        if (oldEntry.getValue() == null || newEntry.getValue() == null) {
+            return true;
+        }
+        return oldEntry.getContentHash() != newEntry.getContentHash();
+    }
+}
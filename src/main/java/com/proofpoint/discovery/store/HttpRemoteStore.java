@@ -17,6 +17,7 @@ package com.proofpoint.discovery.store;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.primitives.Longs;
 import com.google.common.reflect.TypeToken;
 import com.proofpoint.discovery.client.ServiceDescriptor;
 import com.proofpoint.discovery.client.ServiceSelector;
@@ -44,27 +45,37 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.proofpoint.http.client.SmileBodyGenerator.smileBodyGenerator;
 import static com.proofpoint.json.JsonCodec.jsonCodec;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
 class HttpRemoteStore
         implements RemoteStore
 {
     private static final Logger log = Logger.get(HttpRemoteStore.class);
     private static final Pattern HTTP_PATTERN = Pattern.compile("^http(?:s)?://");
+    private static final JsonCodec<Collection<Entry>> ENTRIES_CODEC = jsonCodec(new TypeToken<Collection<Entry>>()
+    {
+    });
+    private static final JsonCodec<Collection<Touch>> TOUCHES_CODEC = jsonCodec(new TypeToken<Collection<Touch>>()
+    {
+    });
 
     private final int maxBatchSize;
     private final int queueSize;
     private final Duration updateInterval;
 
     private final ConcurrentMap<String, BatchProcessor<Entry>> processors = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, BatchProcessor<Touch>> touchProcessors = new ConcurrentHashMap<>();
     private final String name;
     private final ServiceSelector selector;
     private final HttpClient httpClient;
@@ -155,6 +166,12 @@ class HttpRemoteStore
                 iterator.remove();
                 entry.getValue().stop();
                 reportExporter.unexportObject(entry.getValue());
+                BatchProcessor<Touch> touchProcessor = touchProcessors.remove(entry.getKey());
+                if (touchProcessor != null) {
+                    touchProcessor.stop();
+                    reportExporter.unexportObject(touchProcessor);
+                }
+                log.info("Removing discovery peer %s", entry.getKey());
             }
         }
 
@@ -165,19 +182,41 @@ class HttpRemoteStore
 
         for (ServiceDescriptor descriptor : newDescriptors) {
             String hostPort = getHostPort(descriptor);
+            // TODO: build URI from resource class
+            String uri = descriptor.getProperties().get("http") + "/v1/store/" + name;
+
+            BatchProcessor<Touch> touchProcessor = new BatchProcessor<>(hostPort + "-touch",
+                    new MyBatchHandler<>(URI.create(uri + "/touch"), TOUCHES_CODEC, httpClient, executor, retry(touchProcessors, hostPort)),
+                    maxBatchSize,
+                    queueSize);
+            touchProcessor.start();
+            touchProcessors.put(hostPort, touchProcessor);
+            reportExporter.export(touchProcessor, true, "TouchProcessor." + name, ImmutableMap.of("target", hostPort));
+
             BatchProcessor<Entry> processor = new BatchProcessor<>(hostPort,
-                    new MyBatchHandler(name, descriptor, httpClient),
+                    new MyBatchHandler<>(URI.create(uri), ENTRIES_CODEC, httpClient, executor, retry(processors, hostPort)),
                     maxBatchSize,
                     queueSize);
 
             processor.start();
             processors.put(hostPort, processor);
             reportExporter.export(processor, true, "BatchProcessor." + name, ImmutableMap.of("target", hostPort));
+            log.info("Adding discovery peer %s", hostPort);
         }
 
         lastRemoteServerRefreshTimestamp.set(System.currentTimeMillis());
     }
 
+    private static <T> Consumer<Collection<T>> retry(Map<String, BatchProcessor<T>> processors, String hostPort)
+    {
+        return entries -> {
+            BatchProcessor<T> processor = processors.get(hostPort);
+            if (processor != null) {
+                processor.putAll(entries);
+            }
+        };
+    }
+
     @Managed
     public long getLastRemoteServerRefreshTimestamp()
     {
@@ -202,54 +241,86 @@ class HttpRemoteStore
         }
     }
 
-    private static class MyBatchHandler
-            implements BatchProcessor.BatchHandler<Entry>
+    @Override
+    public void putAll(Collection<Entry> entries)
     {
-        private static final JsonCodec<Collection<Entry>> ENTRIES_CODEC = jsonCodec(new TypeToken<Collection<Entry>>()
-        {
-        });
+        for (BatchProcessor<Entry> processor : processors.values()) {
+            processor.putAll(entries);
+        }
+    }
+
+    @Override
+    public void touch(Touch touch)
+    {
+        for (BatchProcessor<Touch> processor : touchProcessors.values()) {
+            processor.put(touch);
+        }
+    }
+
+    private static class MyBatchHandler<T>
+            implements BatchProcessor.BatchHandler<T>
+    {
+        private static final int SERVICE_UNAVAILABLE = 503;
+        private static final String RETRY_AFTER = "Retry-After";
+        private static final long MAX_RETRY_AFTER_SECONDS = 30;
 
         private final URI uri;
+        private final JsonCodec<Collection<T>> codec;
         private final HttpClient httpClient;
+        private final ScheduledExecutorService executor;
+        private final Consumer<Collection<T>> retry;
 
-        MyBatchHandler(String name, ServiceDescriptor descriptor, HttpClient httpClient)
+        MyBatchHandler(URI uri, JsonCodec<Collection<T>> codec, HttpClient httpClient, ScheduledExecutorService executor, Consumer<Collection<T>> retry)
         {
+            this.uri = uri;
+            this.codec = codec;
             this.httpClient = httpClient;
-
-            // TODO: build URI from resource class
-            uri = URI.create(descriptor.getProperties().get("http") + "/v1/store/" + name);
+            this.executor = executor;
+            this.retry = retry;
         }
 
         @Override
-        public void processBatch(final Collection<Entry> entries)
+        public void processBatch(final Collection<T> entries)
                 throws Exception
         {
             final Request request = Request.Builder.preparePost()
                     .setUri(uri)
                     .setHeader("Content-Type", "application/x-jackson-smile")
-                    .setBodySource(smileBodyGenerator(ENTRIES_CODEC, entries))
+                    .setBodySource(smileBodyGenerator(codec, entries))
                     .build();
 
             try {
-                httpClient.execute(request, new ResponseHandler<Void, Exception>()
+                Long retryAfterSeconds = httpClient.execute(request, new ResponseHandler<Long, Exception>()
                 {
                     @Override
-                    public Void handleException(Request request, Exception exception)
+                    public Long handleException(Request request, Exception exception)
                             throws Exception
                     {
                         throw exception;
                     }
 
                     @Override
-                    public Void handle(Request request, Response response)
+                    public Long handle(Request request, Response response)
                             throws Exception
                     {
+                        if (response.getStatusCode() == SERVICE_UNAVAILABLE) {
+                            Long retryAfter = Longs.tryParse(firstNonNull(response.getHeader(RETRY_AFTER), ""));
+                            if (retryAfter != null) {
+                                return Math.min(Math.max(retryAfter, 0), MAX_RETRY_AFTER_SECONDS);
+                            }
+                        }
                         if (response.getStatusCode() >= 300) {
                             throw new Exception("Remote server returned " + response.getStatusCode() + " status code");
                         }
                         return null;
                     }
                 });
+
+                // a peer that is busy with other requests asks for the batch again later; it is queued
+                // again after the delay so the processor can go on to other batches meanwhile
+                if (retryAfterSeconds != null) {
+                    executor.schedule(() -> retry.accept(entries), retryAfterSeconds, SECONDS);
+                }
             }
             catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -15,32 +15,107 @@
  */
 package com.proofpoint.discovery.store;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Striped;
+import com.proofpoint.discovery.CapacityExceededException;
 import com.proofpoint.discovery.DiscoveryConfig;
+import com.proofpoint.discovery.PropertyFilter;
+import com.proofpoint.discovery.Service;
+import com.proofpoint.discovery.TypePattern;
+import com.proofpoint.discovery.store.ChangeLog.EntryChange;
+import com.proofpoint.stats.CounterStat;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
 
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.proofpoint.discovery.PropertyFilter.anyProperties;
+import static com.proofpoint.discovery.Service.isUnderLocation;
 import static com.proofpoint.discovery.store.Entry.entry;
+import static com.proofpoint.discovery.store.EntryUpdate.entryUpdate;
+import static com.proofpoint.discovery.store.MergeResult.mergeResult;
+import static java.lang.String.format;
+import static java.util.Comparator.comparingLong;
 import static java.util.Objects.requireNonNull;
 
 public class InMemoryStore
 {
+    private static final long ENTRY_OVERHEAD = 200;
+    private static final long SERVICE_OVERHEAD = 150;
+    private static final long PROPERTY_OVERHEAD = 50;
+    private static final long STRING_OVERHEAD = 40;
+    private static final int INDEX_LOCK_STRIPES = 256;
+
     private final ConcurrentMap<ByteBuffer, Entry> map = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ByteBuffer, Tombstone> tombstones = new ConcurrentHashMap<>();
+    // ordered by timestamp, as replicated tombstones do not arrive in timestamp order
+    private final Queue<Tombstone> tombstoneExpiryQueue = new PriorityBlockingQueue<>(11, comparingLong(Tombstone::getTimestamp));
+    private final ConcurrentMap<String, Integer> poolEntryCounts = new ConcurrentHashMap<>();
+    // type -> pool -> keys of the entries with a service of that type in that pool
+    private final ConcurrentMap<String, ConcurrentMap<String, Set<ByteBuffer>>> typeIndex = new ConcurrentHashMap<>();
+    // the types in the type index, ordered so that types with a common prefix are adjacent
+    private final NavigableSet<String> types = new ConcurrentSkipListSet<>();
+    // indexed property key -> value -> keys of the entries with a service with that property value
+    private final Map<String, NavigableMap<String, Set<ByteBuffer>>> propertyIndex;
+    // location -> keys of the entries with a service at that location, ordered so that a
+    // location and those under it are adjacent
+    private final NavigableMap<String, Set<ByteBuffer>> locationIndex = new ConcurrentSkipListMap<>();
+    // writers of the location and property indexes lock the indexed value, as one may empty a key set another is adding to
+    private final Striped<Lock> indexLocks = Striped.lock(INDEX_LOCK_STRIPES);
+    private final AtomicLong estimatedSize = new AtomicLong();
+    private final CounterStat rejectedEntries = new CounterStat();
     private final long maxAgeInMs;
+    private final int maxEntries;
+    private final long maxSizeInBytes;
+    private final int maxEntriesPerPool;
+    private final ChangeLog changeLog;
+    private final ServiceCounters serviceCounters;
     private UpdateListener updateListener = null;
 
     @Inject
-    public InMemoryStore(DiscoveryConfig config)
+    public InMemoryStore(DiscoveryConfig config, Supplier<Instant> timeSupplier)
     {
+        serviceCounters = new ServiceCounters(timeSupplier);
         maxAgeInMs = config.getMaxAge().toMillis();
+        maxEntries = firstNonNull(config.getMaxEntries(), Integer.MAX_VALUE);
+        maxSizeInBytes = config.getMaxSize() == null ? Long.MAX_VALUE : config.getMaxSize().toBytes();
+        maxEntriesPerPool = firstNonNull(config.getMaxEntriesPerPool(), Integer.MAX_VALUE);
+        changeLog = new ChangeLog(config.getChangeLogSize());
+        propertyIndex = createPropertyIndex(config.getIndexedProperties());
     }
 
     InMemoryStore()
     {
+        serviceCounters = new ServiceCounters(new RealTimeSupplier());
         maxAgeInMs = Long.MAX_VALUE;
+        maxEntries = Integer.MAX_VALUE;
+        maxSizeInBytes = Long.MAX_VALUE;
+        maxEntriesPerPool = Integer.MAX_VALUE;
+        changeLog = new ChangeLog(1000);
+        propertyIndex = ImmutableMap.of();
     }
 
     public void setUpdateListener(UpdateListener updateListener)
@@ -48,35 +123,422 @@ public class InMemoryStore
         this.updateListener = updateListener;
     }
 
+    /**
+     * Returns the log of changes to the services in this store, which is
+     * appended to as entries are added, replaced, deleted and expired.
+     */
+    public ChangeLog getChangeLog()
+    {
+        return changeLog;
+    }
+
+    /**
+     * Returns the counts of the services in this store by type and pool.
+     * Expired entries are counted until they are deleted.
+     */
+    public ServiceCounters getServiceCounters()
+    {
+        return serviceCounters;
+    }
+
+    /**
+     * Drops the service counters and update listener state kept for types
+     * and pools that have been idle as of the given time.
+     */
+    public void removeIdle(long nowInMs)
+    {
+        serviceCounters.removeIdle(nowInMs);
+        if (updateListener != null) {
+            updateListener.removeIdle(nowInMs);
+        }
+    }
+
+    /**
+     * @throws CapacityExceededException if the entry would take the store
+     * past one of its limits
+     */
     public boolean put(Entry entry)
     {
-        if (maxAgeInMs != Long.MAX_VALUE && entry.getMaxAgeInMs() == null) {
-            entry = entry(entry.getKey(),
-                    entry.getValue(),
-                    entry.getTimestamp(),
-                    maxAgeInMs);
+        String[] rejection = new String[1];
+        boolean stored = merge(ByteBuffer.wrap(entry.getKey()), withDefaultMaxAge(entry), null, rejection);
+        if (rejection[0] != null) {
+            rejectedEntries.add(1);
+            throw new CapacityExceededException(rejection[0]);
         }
+        return stored;
+    }
 
-        ByteBuffer key = ByteBuffer.wrap(entry.getKey());
+    /**
+     * Merges a batch of entries, such as one received from a peer, into the store.
+     * <p>
+     * The batch is first collapsed to the newest entry per key, so each key is
+     * merged into the map once. Replacements are delivered to the update listener
+     * as a single batch notification after the whole batch has been applied.
+     * Entries that do not fit within the store's limits are rejected; the
+     * rest of the batch is still applied.
+     */
+    public MergeResult putAll(Collection<Entry> entries)
+    {
+        requireNonNull(entries, "entries is null");
+
+        Map<ByteBuffer, Entry> newest = new HashMap<>();
+        int losers = 0;
+        for (Entry entry : entries) {
+            ByteBuffer key = ByteBuffer.wrap(entry.getKey());
+            Entry previous = newest.putIfAbsent(key, entry);
+            if (previous != null) {
+                ++losers;
+                if (resolve(previous, entry) == entry) {
+                    newest.put(key, entry);
+                }
+            }
+        }
+
+        List<EntryUpdate> updates = new ArrayList<>();
+        String[] rejection = new String[1];
+        int winners = 0;
+        Set<ByteBuffer> rejected = new HashSet<>();
+        for (Map.Entry<ByteBuffer, Entry> entry : newest.entrySet()) {
+            rejection[0] = null;
+            if (merge(entry.getKey(), withDefaultMaxAge(entry.getValue()), updates, rejection)) {
+                ++winners;
+            }
+            else if (rejection[0] != null) {
+                rejected.add(entry.getKey());
+            }
+            else {
+                ++losers;
+            }
+        }
+
+        if (!updates.isEmpty() && updateListener != null) {
+            updateListener.notifyUpdates(updates);
+        }
+        if (!rejected.isEmpty()) {
+            rejectedEntries.add(rejected.size());
+        }
+
+        return mergeResult(winners, losers, rejected);
+    }
+
+    /**
+     * Extends the timestamp of an existing, unexpired entry whose value has
+     * the touch's content hash. The entry keeps its existing value.
+     *
+     * @return true if the entry was extended
+     */
+    public boolean touch(Touch touch)
+    {
+        return applyTouch(touch, null);
+    }
+
+    /**
+     * Applies a batch of touches, such as one received from a peer.
+     *
+     * @return the number of touches that extended an entry
+     */
+    public int touchAll(Collection<Touch> touches)
+    {
+        requireNonNull(touches, "touches is null");
+
+        List<EntryUpdate> updates = new ArrayList<>();
+        int applied = 0;
+        for (Touch touch : touches) {
+            if (applyTouch(touch, updates)) {
+                ++applied;
+            }
+        }
+
+        if (!updates.isEmpty() && updateListener != null) {
+            updateListener.notifyUpdates(updates);
+        }
+        return applied;
+    }
+
+    private boolean applyTouch(Touch touch, @Nullable List<EntryUpdate> updates)
+    {
+        Entry[] replaced = new Entry[1];
+        Entry current = map.computeIfPresent(ByteBuffer.wrap(touch.getKey()), (ignored, old) -> {
+            if (!(touch.getTimestamp() > old.getTimestamp()) ||
+                    touch.getContentHash() != old.getContentHash() ||
+                    isExpired(old, touch.getTimestamp())) {
+                return old;
+            }
+            replaced[0] = old;
+            Long maxAge = touch.getMaxAgeInMs();
+            if (maxAge == null && maxAgeInMs != Long.MAX_VALUE) {
+                maxAge = maxAgeInMs;
+            }
+            return old.withTimestamp(touch.getTimestamp(), maxAge);
+        });
+
+        if (replaced[0] == null) {
+            return false;
+        }
+        notifyUpdate(replaced[0], current, updates);
+        return true;
+    }
+
+    private boolean merge(ByteBuffer key, Entry entry, @Nullable List<EntryUpdate> updates, String[] rejection)
+    {
+        if (entry.getValue() == null) {
+            return mergeTombstone(key, entry, updates);
+        }
+
+        // hashed before taking the key, so the comparison below only reads memoized hashes:
+        // every stored entry was hashed here on its way in, or shares the hash of one that was
+        entry.getContentHash();
+
+        Entry[] replaced = new Entry[1];
+        Entry[] stored = new Entry[1];
+        EntryChange[] change = new EntryChange[1];
+        try {
+            map.compute(key, (ignored, old) -> {
+                if (old == null) {
+                    Tombstone tombstone = tombstones.get(key);
+                    if (tombstone != null && tombstone.getTimestamp() >= entry.getTimestamp()) {
+                        return null;
+                    }
+                    rejection[0] = checkCapacity(null, entry);
+                    if (rejection[0] != null) {
+                        return null;
+                    }
+                    if (tombstone != null) {
+                        tombstones.remove(key, tombstone);
+                    }
+                    added(entry);
+                    change[0] = changeLog.prepare(null, entry);
+                    stored[0] = entry;
+                    return entry;
+                }
+                if (resolve(old, entry) == old) {
+                    return old;
+                }
+                replaced[0] = old;
+                if (old.getContentHash() == entry.getContentHash()) {
+                    // same content: keep the existing value so it is not seen as a change
+                    stored[0] = old.withTimestamp(entry.getTimestamp(), entry.getMaxAgeInMs());
+                    if (isExpired(old, entry.getTimestamp())) {
+                        // readers may have dropped the expired entry already
+                        change[0] = changeLog.prepare(null, stored[0]);
+                    }
+                }
+                else {
+                    rejection[0] = checkCapacity(old, entry);
+                    if (rejection[0] != null) {
+                        replaced[0] = null;
+                        return old;
+                    }
+                    replaced(old, entry);
+                    change[0] = changeLog.prepare(old, entry);
+                    stored[0] = entry;
+                }
+                return stored[0];
+            });
+        }
+        catch (RuntimeException | Error e) {
+            // the sequence number is taken, so it is logged as changing nothing rather than holding up later changes
+            changeLog.abort(change[0]);
+            throw e;
+        }
+        // published once the new value is visible, so readers never see a sequence ahead of the map
+        changeLog.publish(change[0]);
+
+        if (stored[0] == null) {
+            return false;
+        }
+
+        if (replaced[0] != null) {
+            notifyUpdate(replaced[0], stored[0], updates);
+        }
+        return true;
+    }
+
+    private boolean mergeTombstone(ByteBuffer key, Entry entry, @Nullable List<EntryUpdate> updates)
+    {
+        Entry[] replaced = new Entry[1];
+        boolean[] won = new boolean[1];
+        EntryChange[] change = new EntryChange[1];
+        try {
+            map.compute(key, (ignored, old) -> {
+                if (old != null) {
+                    if (!isNewer(entry, old.getTimestamp())) {
+                        return old;
+                    }
+                    replaced[0] = old;
+                    removed(old);
+                    change[0] = changeLog.prepare(old, null);
+                }
+                else {
+                    Tombstone existing = tombstones.get(key);
+                    if (existing != null && existing.getTimestamp() >= entry.getTimestamp()) {
+                        return null;
+                    }
+                }
+
+                Tombstone tombstone = new Tombstone(key, entry.getTimestamp());
+                tombstones.put(key, tombstone);
+                tombstoneExpiryQueue.add(tombstone);
+                won[0] = true;
+                return null;
+            });
+        }
+        catch (RuntimeException | Error e) {
+            changeLog.abort(change[0]);
+            throw e;
+        }
+        changeLog.publish(change[0]);
+
+        if (replaced[0] != null) {
+            notifyUpdate(replaced[0], entry, updates);
+        }
+        return won[0];
+    }
 
-        while (true) {
-            Entry old = map.putIfAbsent(key, entry);
-            if (old == null) {
-                return true;
+    private void notifyUpdate(Entry oldEntry, Entry newEntry, @Nullable List<EntryUpdate> updates)
+    {
+        if (updates != null) {
+            updates.add(entryUpdate(oldEntry, newEntry));
+        }
+        else if (updateListener != null) {
+            updateListener.notifyUpdate(oldEntry, newEntry);
+        }
+    }
+
+    /**
+     * Checks whether storing an entry in place of another, or of nothing,
+     * keeps the store within its limits.
+     */
+    @Nullable
+    private String checkCapacity(@Nullable Entry old, Entry entry)
+    {
+        if (old == null && map.size() >= maxEntries) {
+            return format("Store has reached its limit of %s entries", maxEntries);
+        }
+        long growth = estimateSize(entry) - (old == null ? 0 : estimateSize(old));
+        if (growth > 0 && estimatedSize.get() + growth > maxSizeInBytes) {
+            return format("Store has reached its limit of %s bytes", maxSizeInBytes);
+        }
+        Set<String> oldPools = old == null ? ImmutableSet.of() : poolsOf(old);
+        for (String pool : poolsOf(entry)) {
+            if (!oldPools.contains(pool) && poolEntryCounts.getOrDefault(pool, 0) >= maxEntriesPerPool) {
+                return format("Pool %s has reached its limit of %s entries", pool, maxEntriesPerPool);
             }
+        }
+        return null;
+    }
 
-            entry = resolve(old, entry);
-            if (entry == old) {
-                return false;
+    private void added(Entry entry)
+    {
+        serviceCounters.added(entry.getValue());
+        index(entry);
+    }
+
+    private void removed(Entry entry)
+    {
+        serviceCounters.removed(entry.getValue());
+        unindex(entry);
+    }
+
+    private void replaced(Entry old, Entry entry)
+    {
+        // counted as one change per changed service, rather than as the removal and addition of every service
+        serviceCounters.replaced(old.getValue(), entry.getValue());
+        unindex(old);
+        index(entry);
+    }
+
+    private void index(Entry entry)
+    {
+        estimatedSize.addAndGet(estimateSize(entry));
+        for (String pool : poolsOf(entry)) {
+            poolEntryCounts.merge(pool, 1, Integer::sum);
+        }
+        ByteBuffer key = ByteBuffer.wrap(entry.getKey());
+        for (Service service : entry.getValue()) {
+            typeIndex.compute(service.getType(), (type, pools) -> {
+                if (pools == null) {
+                    pools = new ConcurrentHashMap<>();
+                    types.add(type);
+                }
+                pools.computeIfAbsent(service.getPool(), ignored -> ConcurrentHashMap.newKeySet()).add(key);
+                return pools;
+            });
+            addToIndex(locationIndex, service.getLocation(), key);
+            for (Map.Entry<String, NavigableMap<String, Set<ByteBuffer>>> index : propertyIndex.entrySet()) {
+                String value = service.getProperties().get(index.getKey());
+                if (value != null) {
+                    addToIndex(index.getValue(), value, key);
+                }
             }
+        }
+    }
 
-            if (map.replace(key, old, entry)) {
-                if (updateListener != null) {
-                    updateListener.notifyUpdate(old, entry);
+    private void unindex(Entry entry)
+    {
+        estimatedSize.addAndGet(-estimateSize(entry));
+        for (String pool : poolsOf(entry)) {
+            poolEntryCounts.merge(pool, -1, (count, delta) -> count + delta == 0 ? null : count + delta);
+        }
+        ByteBuffer key = ByteBuffer.wrap(entry.getKey());
+        for (Service service : entry.getValue()) {
+            typeIndex.computeIfPresent(service.getType(), (type, pools) -> {
+                pools.computeIfPresent(service.getPool(), (ignored, keys) -> {
+                    keys.remove(key);
+                    return keys.isEmpty() ? null : keys;
+                });
+                if (pools.isEmpty()) {
+                    types.remove(type);
+                    return null;
                 }
-                return true;
+                return pools;
+            });
+            removeFromIndex(locationIndex, service.getLocation(), key);
+            for (Map.Entry<String, NavigableMap<String, Set<ByteBuffer>>> index : propertyIndex.entrySet()) {
+                String value = service.getProperties().get(index.getKey());
+                if (value != null) {
+                    removeFromIndex(index.getValue(), value, key);
+                }
+            }
+        }
+    }
+
+    private void addToIndex(NavigableMap<String, Set<ByteBuffer>> index, String value, ByteBuffer key)
+    {
+        Lock lock = indexLocks.get(value);
+        lock.lock();
+        try {
+            index.computeIfAbsent(value, ignored -> ConcurrentHashMap.newKeySet()).add(key);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeFromIndex(NavigableMap<String, Set<ByteBuffer>> index, String value, ByteBuffer key)
+    {
+        Lock lock = indexLocks.get(value);
+        lock.lock();
+        try {
+            Set<ByteBuffer> keys = index.get(value);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                index.remove(value);
             }
         }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry withDefaultMaxAge(Entry entry)
+    {
+        if (maxAgeInMs != Long.MAX_VALUE && entry.getMaxAgeInMs() == null) {
+            return entry(entry.getKey(),
+                    entry.getValue(),
+                    entry.getTimestamp(),
+                    maxAgeInMs);
+        }
+        return entry;
     }
 
     public Entry get(byte[] key)
@@ -90,27 +552,236 @@ public class InMemoryStore
     {
         requireNonNull(key, "key is null");
 
-        ByteBuffer wrappedKey = ByteBuffer.wrap(key);
+        boolean[] removed = new boolean[1];
+        EntryChange[] change = new EntryChange[1];
+        try {
+            map.computeIfPresent(ByteBuffer.wrap(key), (ignored, old) -> {
+                if (isNewer(old, timestamp)) {
+                    return old;
+                }
+                removed[0] = true;
+                removed(old);
+                change[0] = changeLog.prepare(old, null);
+                return null;
+            });
+        }
+        catch (RuntimeException | Error e) {
+            changeLog.abort(change[0]);
+            throw e;
+        }
+        changeLog.publish(change[0]);
+        return removed[0];
+    }
+
+    /**
+     * Returns the live entries with a service of the given type.
+     */
+    public List<Entry> getByType(String type)
+    {
+        requireNonNull(type, "type is null");
+        return query(type, null, anyProperties());
+    }
+
+    /**
+     * Returns the live entries with a service of the given type in the given pool.
+     */
+    public List<Entry> getByTypeAndPool(String type, String pool)
+    {
+        requireNonNull(type, "type is null");
+        requireNonNull(pool, "pool is null");
+        return query(type, pool, anyProperties());
+    }
 
-        boolean done = false;
-        while (!done) {
-            Entry old = map.get(wrappedKey);
+    /**
+     * Returns the live entries that may have a service matching the type,
+     * pool and property filter, where each of them is optional. Of the type,
+     * pool and indexed properties, the one with the fewest entries is used to
+     * find the candidates, which the caller still has to filter.
+     */
+    public List<Entry> query(@Nullable String type, @Nullable String pool, PropertyFilter filter)
+    {
+        return query(type, pool, null, filter);
+    }
 
-            if (old == null || isNewer(old, timestamp)) {
-                return false;
+    /**
+     * Like {@link #query(String, String, PropertyFilter)}, also using the
+     * location index to find the entries that may have a service at or under
+     * the location prefix, if one is given.
+     */
+    public List<Entry> query(@Nullable String type, @Nullable String pool, @Nullable String locationPrefix, PropertyFilter filter)
+    {
+        requireNonNull(filter, "filter is null");
+
+        List<Set<ByteBuffer>> candidates = null;
+        if (type != null) {
+            Map<String, Set<ByteBuffer>> pools = typeIndex.getOrDefault(type, ImmutableMap.of());
+            if (pool == null) {
+                candidates = ImmutableList.copyOf(pools.values());
             }
             else {
-                done = map.remove(wrappedKey, old);
+                candidates = listOf(pools.get(pool));
             }
         }
-        return true;
+        for (Map.Entry<String, String> value : filter.getValues().entrySet()) {
+            NavigableMap<String, Set<ByteBuffer>> keysByValue = propertyIndex.get(value.getKey());
+            if (keysByValue != null) {
+                candidates = smaller(candidates, listOf(keysByValue.get(value.getValue())));
+            }
+        }
+        for (Map.Entry<String, String> prefix : filter.getPrefixes().entrySet()) {
+            NavigableMap<String, Set<ByteBuffer>> keysByValue = propertyIndex.get(prefix.getKey());
+            if (keysByValue != null) {
+                List<Set<ByteBuffer>> keys = new ArrayList<>();
+                for (Map.Entry<String, Set<ByteBuffer>> value : keysByValue.tailMap(prefix.getValue(), true).entrySet()) {
+                    if (!value.getKey().startsWith(prefix.getValue())) {
+                        break;
+                    }
+                    keys.add(value.getValue());
+                }
+                candidates = smaller(candidates, keys);
+            }
+        }
+
+        if (locationPrefix != null) {
+            List<Set<ByteBuffer>> keys = new ArrayList<>();
+            for (Map.Entry<String, Set<ByteBuffer>> location : locationIndex.tailMap(locationPrefix, true).entrySet()) {
+                if (!location.getKey().startsWith(locationPrefix)) {
+                    break;
+                }
+                if (isUnderLocation(location.getKey(), locationPrefix)) {
+                    keys.add(location.getValue());
+                }
+            }
+            candidates = smaller(candidates, keys);
+        }
+
+        if (candidates == null) {
+            return new ArrayList<>(map.values());
+        }
+        if (candidates.size() == 1) {
+            return getEntries(candidates.get(0));
+        }
+        Set<ByteBuffer> keys = new HashSet<>();
+        for (Set<ByteBuffer> candidate : candidates) {
+            keys.addAll(candidate);
+        }
+        return getEntries(keys);
     }
 
+    /**
+     * Returns the types of the services in the store that match the pattern,
+     * found by a range scan over the types starting with its literal prefix.
+     */
+    public List<String> getTypes(TypePattern pattern)
+    {
+        requireNonNull(pattern, "pattern is null");
+
+        List<String> matching = new ArrayList<>();
+        for (String type : types.tailSet(pattern.getPrefix(), true)) {
+            if (!type.startsWith(pattern.getPrefix())) {
+                break;
+            }
+            if (pattern.matches(type)) {
+                matching.add(type);
+            }
+        }
+        return matching;
+    }
+
+    private List<Entry> getEntries(Set<ByteBuffer> keys)
+    {
+        List<Entry> entries = new ArrayList<>(keys.size());
+        for (ByteBuffer key : keys) {
+            // the entry may have been removed since the index was read
+            Entry entry = map.get(key);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the live entries. Tombstones are not included.
+     */
     public Collection<Entry> getAll()
     {
         return map.values();
     }
 
+    /**
+     * Returns the tombstones as entries with no value, for replication to peers.
+     */
+    public List<Entry> getTombstones()
+    {
+        List<Entry> entries = new ArrayList<>(tombstones.size());
+        for (Tombstone tombstone : tombstones.values()) {
+            entries.add(entry(tombstone.getKey().array(), (List<Service>) null, tombstone.getTimestamp(), null));
+        }
+        return entries;
+    }
+
+    public int getTombstoneCount()
+    {
+        return tombstones.size();
+    }
+
+    public CounterStat getRejectedEntries()
+    {
+        return rejectedEntries;
+    }
+
+    /**
+     * Fraction of the entry limit in use.
+     */
+    public double getEntryUtilization()
+    {
+        return (double) map.size() / maxEntries;
+    }
+
+    /**
+     * Fraction of the estimated size limit in use.
+     */
+    public double getSizeUtilization()
+    {
+        return (double) estimatedSize.get() / maxSizeInBytes;
+    }
+
+    /**
+     * Fraction of the per-pool entry limit in use by the fullest pool.
+     */
+    public double getPoolUtilization()
+    {
+        int largest = 0;
+        for (int count : poolEntryCounts.values()) {
+            largest = Math.max(largest, count);
+        }
+        return (double) largest / maxEntriesPerPool;
+    }
+
+    /**
+     * Removes tombstones older than the tombstone max age. Tombstones are
+     * bounded by the store's max age as well, as the entries they replaced
+     * would have expired by then.
+     *
+     * @return the number of tombstones removed
+     */
+    public int removeExpiredTombstones(long nowInMs, long tombstoneMaxAgeInMs)
+    {
+        long expiredBefore = nowInMs - Math.min(tombstoneMaxAgeInMs, maxAgeInMs);
+        int removed = 0;
+        for (Tombstone head = tombstoneExpiryQueue.peek();
+                head != null && head.getTimestamp() < expiredBefore;
+                head = tombstoneExpiryQueue.peek()) {
+            // a tombstone added since the peek can only be polled ahead of the head if it is older, so it has expired too
+            Tombstone tombstone = tombstoneExpiryQueue.poll();
+            if (tombstone != null && tombstones.remove(tombstone.getKey(), tombstone)) {
+                ++removed;
+            }
+        }
+        return removed;
+    }
+
     private static Entry resolve(Entry a, Entry b)
     {
         if (isNewer(b, a.getTimestamp())) {
@@ -124,4 +795,103 @@ public class InMemoryStore
     private static boolean isNewer(Entry entry, long timestamp) {
         return (entry.getTimestamp() > timestamp);
     }
+
+    private static boolean isExpired(Entry entry, long nowInMs)
+    {
+        return entry.getMaxAgeInMs() != null && nowInMs - entry.getTimestamp() > entry.getMaxAgeInMs();
+    }
+
+    private static List<Set<ByteBuffer>> listOf(@Nullable Set<ByteBuffer> keys)
+    {
+        return keys == null ? ImmutableList.of() : ImmutableList.of(keys);
+    }
+
+    private static List<Set<ByteBuffer>> smaller(@Nullable List<Set<ByteBuffer>> a, List<Set<ByteBuffer>> b)
+    {
+        if (a == null) {
+            return b;
+        }
+        return countKeys(b) < countKeys(a) ? b : a;
+    }
+
+    private static long countKeys(List<Set<ByteBuffer>> keys)
+    {
+        long size = 0;
+        for (Set<ByteBuffer> set : keys) {
+            size += set.size();
+        }
+        return size;
+    }
+
+    private static Map<String, NavigableMap<String, Set<ByteBuffer>>> createPropertyIndex(Set<String> indexedProperties)
+    {
+        ImmutableMap.Builder<String, NavigableMap<String, Set<ByteBuffer>>> builder = ImmutableMap.builder();
+        for (String property : indexedProperties) {
+            builder.put(property, new ConcurrentSkipListMap<>());
+        }
+        return builder.build();
+    }
+
+    /**
+     * The pools of an entry's services. The services of an announcement are
+     * all in the announcement's pool, but entries from peers are counted
+     * against every pool they name.
+     */
+    private static Set<String> poolsOf(Entry entry)
+    {
+        List<Service> services = entry.getValue();
+        if (services == null || services.isEmpty()) {
+            return ImmutableSet.of();
+        }
+        String pool = services.get(0).getPool();
+        for (Service service : services) {
+            if (!service.getPool().equals(pool)) {
+                return services.stream().map(Service::getPool).collect(toImmutableSet());
+            }
+        }
+        return ImmutableSet.of(pool);
+    }
+
+    /**
+     * Rough estimate of the heap retained by a live entry, counting the
+     * strings it holds plus a fixed overhead per object.
+     */
+    private static long estimateSize(Entry entry)
+    {
+        long size = ENTRY_OVERHEAD + entry.getKey().length;
+        for (Service service : entry.getValue()) {
+            size += SERVICE_OVERHEAD + sizeOf(service.getType()) + sizeOf(service.getPool()) + sizeOf(service.getLocation());
+            for (Map.Entry<String, String> property : service.getProperties().entrySet()) {
+                size += PROPERTY_OVERHEAD + sizeOf(property.getKey()) + sizeOf(property.getValue());
+            }
+        }
+        return size;
+    }
+
+    private static long sizeOf(@Nullable String string)
+    {
+        return string == null ? 0 : STRING_OVERHEAD + 2L * string.length();
+    }
+
+    private static final class Tombstone
+    {
+        private final ByteBuffer key;
+        private final long timestamp;
+
+        Tombstone(ByteBuffer key, long timestamp)
+        {
+            this.key = key;
+            this.timestamp = timestamp;
+        }
+
+        ByteBuffer getKey()
+        {
+            return key;
+        }
+
+        long getTimestamp()
+        {
+            return timestamp;
+        }
+    }
 }
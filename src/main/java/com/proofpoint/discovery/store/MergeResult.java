@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableSet;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+
+/**
+ * Outcome of merging a batch of entries into an {@link InMemoryStore}.
+ */
+@AutoValue
+public abstract class MergeResult
+{
+    static MergeResult mergeResult(int winners, int losers)
+    {
+        return mergeResult(winners, losers, ImmutableSet.of());
+    }
+
+    static MergeResult mergeResult(int winners, int losers, Set<ByteBuffer> rejectedKeys)
+    {
+        return new AutoValue_MergeResult(winners, losers, ImmutableSet.copyOf(rejectedKeys));
+    }
+
+    /**
+     * Number of entries that were stored.
+     */
+    public abstract int getWinners();
+
+    /**
+     * Number of entries that lost conflict resolution, either against the
+     * store or against a newer entry for the same key in the same batch.
+     */
+    public abstract int getLosers();
+
+    /**
+     * Keys of the entries that were refused because they did not fit within
+     * the store's limits.
+     */
+    public abstract ImmutableSet<ByteBuffer> getRejectedKeys();
+
+    /**
+     * Number of entries that were refused because they did not fit within
+     * the store's limits.
+     */
+    public int getRejected()
+    {
+        return getRejectedKeys().size();
+    }
+}
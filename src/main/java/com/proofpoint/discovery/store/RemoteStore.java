@@ -15,7 +15,22 @@
  */
 package com.proofpoint.discovery.store;
 
+import java.util.Collection;
+
 public interface RemoteStore
 {
     void put(Entry entry);
+
+    default void putAll(Collection<Entry> entries)
+    {
+        entries.forEach(this::put);
+    }
+
+    /**
+     * Sends a timestamp extension. Remote stores that do not support touches
+     * may ignore it; the entry then catches up through replication.
+     */
+    default void touch(Touch touch)
+    {
+    }
 }
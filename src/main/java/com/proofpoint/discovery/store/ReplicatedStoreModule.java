@@ -22,6 +22,7 @@ import com.google.inject.Key;
 import com.google.inject.Module;
 import com.google.inject.Scopes;
 import com.google.inject.TypeLiteral;
+import com.google.inject.multibindings.Multibinder;
 import com.proofpoint.discovery.DiscoveryConfig;
 import com.proofpoint.discovery.InitializationTracker;
 import com.proofpoint.discovery.client.ServiceSelector;
@@ -38,9 +39,11 @@ import javax.inject.Inject;
 import javax.inject.Provider;
 import java.lang.annotation.Annotation;
 import java.time.Instant;
+import java.util.Set;
 import java.util.function.Supplier;
 
 import static com.google.inject.multibindings.MapBinder.newMapBinder;
+import static com.google.inject.multibindings.Multibinder.newSetBinder;
 import static com.google.inject.name.Names.named;
 import static com.proofpoint.concurrent.Threads.daemonThreadsNamed;
 import static com.proofpoint.configuration.ConfigBinder.bindConfig;
@@ -84,17 +87,19 @@ public class ReplicatedStoreModule
         Key<InMemoryStore> localStoreKey = Key.get(InMemoryStore.class, annotation);
         Key<StoreConfig> storeConfigKey = Key.get(StoreConfig.class, annotation);
         Key<RemoteStore> remoteStoreKey = Key.get(RemoteStore.class, annotation);
-        Key<UpdateListener> updateListenerKey = null;
+        Key<Set<UpdateListener>> updateListenersKey = Key.get(new TypeLiteral<Set<UpdateListener>>() {}, annotation);
 
+        // update listeners may miss updates, as the oldest are dropped when they fall behind, so they must not maintain derived state
+        Multibinder<UpdateListener> updateListenerBinder = newSetBinder(binder, UpdateListener.class, annotation);
         if (localStoreClass == InMemoryStore.class) {
-            updateListenerKey = Key.get(UpdateListener.class, annotation);
-            binder.bind(updateListenerKey).to(DynamicUpdateListener.class).in(Scopes.SINGLETON);
+            binder.bind(DynamicUpdateListener.class).in(Scopes.SINGLETON);
+            updateListenerBinder.addBinding().to(DynamicUpdateListener.class);
             reportBinder(binder).bindReportCollection(DynamicRenewals.class).withApplicationPrefix();
         }
 
         bindConfig(binder).bind(StoreConfig.class).annotatedWith(annotation).prefixedWith(name);
         httpClientBinder(binder).bindHttpClient(name, annotation);
-        binder.bind(DistributedStore.class).annotatedWith(annotation).toProvider(new DistributedStoreProvider(name, localStoreKey, storeConfigKey, remoteStoreKey, updateListenerKey)).in(Scopes.SINGLETON);
+        binder.bind(DistributedStore.class).annotatedWith(annotation).toProvider(new DistributedStoreProvider(name, localStoreKey, storeConfigKey, remoteStoreKey, updateListenersKey)).in(Scopes.SINGLETON);
         binder.bind(Replicator.class).annotatedWith(annotation).toProvider(new ReplicatorProvider(name, localStoreKey, httpClientKey, storeConfigKey)).in(Scopes.SINGLETON);
         binder.bind(HttpRemoteStore.class).annotatedWith(annotation).toProvider(new RemoteHttpStoreProvider(name, httpClientKey, storeConfigKey)).in(Scopes.SINGLETON);
         binder.bind(InMemoryStore.class).annotatedWith(annotation).to(localStoreClass).in(Scopes.SINGLETON);
@@ -285,23 +290,25 @@ public class ReplicatedStoreModule
         private final Key<? extends InMemoryStore> localStoreKey;
         private final Key<StoreConfig> storeConfigKey;
         private final Key<? extends RemoteStore> remoteStoreKey;
-        private final Key<UpdateListener> updateListenerKey;
+        private final Key<Set<UpdateListener>> updateListenersKey;
 
         private Injector injector;
         private Supplier<Instant> timeSupplier;
+        private ReportExporter reportExporter;
+        private AsyncUpdateListener updateListener;
         private DistributedStore store;
 
         DistributedStoreProvider(String name,
                 Key<? extends InMemoryStore> localStoreKey,
                 Key<StoreConfig> storeConfigKey,
                 Key<? extends RemoteStore> remoteStoreKey,
-                Key<UpdateListener> updateListenerKey)
+                Key<Set<UpdateListener>> updateListenersKey)
         {
             this.name = name;
             this.localStoreKey = localStoreKey;
             this.storeConfigKey = storeConfigKey;
             this.remoteStoreKey = remoteStoreKey;
-            this.updateListenerKey = updateListenerKey;
+            this.updateListenersKey = updateListenersKey;
         }
 
         @Override
@@ -313,8 +320,12 @@ public class ReplicatedStoreModule
                 RemoteStore remoteStore = injector.getInstance(remoteStoreKey);
                 DiscoveryConfig discoveryConfig = injector.getInstance(DiscoveryConfig.class);
 
-                if (updateListenerKey != null) {
-                    UpdateListener updateListener = injector.getInstance(updateListenerKey);
+                Set<UpdateListener> updateListeners = injector.getInstance(updateListenersKey);
+                if (!updateListeners.isEmpty()) {
+                    updateListener = new AsyncUpdateListener(name, updateListeners,
+                            storeConfig.getUpdateListenerMaxBatchSize(), storeConfig.getUpdateListenerQueueSize());
+                    updateListener.start();
+                    reportExporter.export(updateListener, true, "UpdateListener." + name, ImmutableMap.of());
                     localStore.setUpdateListener(updateListener);
                 }
 
@@ -331,6 +342,9 @@ public class ReplicatedStoreModule
             if (store != null) {
                 store.shutdown();
             }
+            if (updateListener != null) {
+                updateListener.stop();
+            }
         }
 
         @Inject
@@ -344,5 +358,11 @@ public class ReplicatedStoreModule
         {
             this.timeSupplier = timeSupplier;
         }
+
+        @Inject
+        public synchronized void setReportExporter(ReportExporter reportExporter)
+        {
+            this.reportExporter = reportExporter;
+        }
     }
 }
@@ -157,7 +157,7 @@ public class Replicator
                             httpServiceBalancerStats.requestTime(uri1, Status.SUCCESS).add(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
                             try {
                                 List<Entry> entries = mapper.readValue(response.getInputStream(), new TypeReference<List<Entry>>() {});
-                                entries.forEach(localStore::put);
+                                localStore.putAll(entries);
                             }
                             catch (EOFException | NullPointerException ignored) {
                             }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.common.collect.ImmutableList;
+import com.proofpoint.discovery.Id;
+import com.proofpoint.discovery.PoolSummary;
+import com.proofpoint.discovery.Service;
+import com.proofpoint.discovery.ServiceCounts;
+import com.proofpoint.discovery.TypeSummary;
+
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.proofpoint.discovery.PoolSummary.poolSummary;
+import static com.proofpoint.discovery.TypeSummary.typeSummary;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Counts of the services in a store by type and pool, adjusted as entries
+ * are added, replaced and removed. Times are taken from the store's clock.
+ * <p>
+ * Each pool also keeps an exponentially decaying rate of its changes, which
+ * falls off with a time constant of {@value #RATE_TIME_CONSTANT_IN_MS} ms.
+ * The counter of a pool with no instances is kept until {@link #removeIdle}
+ * finds its rate has decayed to almost nothing.
+ */
+public class ServiceCounters
+        implements ServiceCounts
+{
+    static final long RATE_TIME_CONSTANT_IN_MS = 600_000;
+    // changes per ms; a single change decays below this after about 46 minutes
+    private static final double IDLE_RATE = 0.01 / RATE_TIME_CONSTANT_IN_MS;
+
+    // type -> pool -> counter; counters are replaced rather than modified, so readers see consistent values.
+    // A counter is kept after its last instance is removed, so replacing that instance doesn't reset the rate.
+    private final ConcurrentMap<String, ConcurrentMap<String, Counter>> counters = new ConcurrentHashMap<>();
+    private final Supplier<Instant> timeSupplier;
+    // seeded with the time, so versions keep increasing across a restart
+    private final AtomicLong lastVersion;
+
+    ServiceCounters(Supplier<Instant> timeSupplier)
+    {
+        this.timeSupplier = requireNonNull(timeSupplier, "timeSupplier is null");
+        lastVersion = new AtomicLong(now());
+    }
+
+    void added(List<Service> services)
+    {
+        for (Service service : services) {
+            adjust(service.getType(), service.getPool(), 1);
+        }
+    }
+
+    void removed(List<Service> services)
+    {
+        for (Service service : services) {
+            adjust(service.getType(), service.getPool(), -1);
+        }
+    }
+
+    /**
+     * Counts the replacement of an entry's services. Each service that was
+     * added, removed or changed counts as one change; a service that moved
+     * to another type or pool counts as a change in both.
+     */
+    void replaced(List<Service> oldServices, List<Service> newServices)
+    {
+        Map<Id<Service>, Service> remaining = new HashMap<>();
+        for (Service service : oldServices) {
+            remaining.put(service.getId(), service);
+        }
+        for (Service service : newServices) {
+            Service old = remaining.remove(service.getId());
+            if (old == null) {
+                adjust(service.getType(), service.getPool(), 1);
+            }
+            else if (!old.getType().equals(service.getType()) || !old.getPool().equals(service.getPool())) {
+                adjust(old.getType(), old.getPool(), -1);
+                adjust(service.getType(), service.getPool(), 1);
+            }
+            else if (!Objects.equals(old.getLocation(), service.getLocation()) || !old.getProperties().equals(service.getProperties())) {
+                adjust(service.getType(), service.getPool(), 0);
+            }
+        }
+        for (Service service : remaining.values()) {
+            adjust(service.getType(), service.getPool(), -1);
+        }
+    }
+
+    private void adjust(String type, String pool, int delta)
+    {
+        counters.compute(type, (ignored, pools) -> {
+            if (pools == null) {
+                pools = new ConcurrentHashMap<>();
+            }
+            pools.compute(pool, (ignored2, counter) -> {
+                long now = now();
+                if (counter == null) {
+                    return new Counter(Math.max(delta, 0), now, lastVersion.incrementAndGet(), 1.0 / RATE_TIME_CONSTANT_IN_MS);
+                }
+                return new Counter(Math.max(counter.instances + delta, 0), now, lastVersion.incrementAndGet(),
+                        counter.rateAt(now) + 1.0 / RATE_TIME_CONSTANT_IN_MS);
+            });
+            return pools;
+        });
+    }
+
+    /**
+     * Removes the counters of pools that have no instances and whose change
+     * rate has decayed below the idle rate, so that types and pools that
+     * come and go are not kept forever.
+     */
+    void removeIdle(long nowInMs)
+    {
+        for (String type : counters.keySet()) {
+            // pools are only modified while holding their type, as in adjust
+            counters.computeIfPresent(type, (ignored, pools) -> {
+                pools.values().removeIf(counter -> counter.instances == 0 && counter.rateAt(nowInMs) < IDLE_RATE);
+                return pools.isEmpty() ? null : pools;
+            });
+        }
+    }
+
+    @Override
+    public double getChangeRate(String type, @Nullable String pool)
+    {
+        Map<String, Counter> pools = counters.get(type);
+        if (pools == null) {
+            return 0;
+        }
+        long now = now();
+        if (pool != null) {
+            Counter counter = pools.get(pool);
+            return counter == null ? 0 : counter.rateAt(now) * 1000;
+        }
+        return sumRates(pools, now);
+    }
+
+    @Override
+    public double getChangeRate()
+    {
+        long now = now();
+        double rate = 0;
+        for (Map<String, Counter> pools : counters.values()) {
+            rate += sumRates(pools, now);
+        }
+        return rate;
+    }
+
+    private long now()
+    {
+        return timeSupplier.get().toEpochMilli();
+    }
+
+    private static double sumRates(Map<String, Counter> pools, long now)
+    {
+        double rate = 0;
+        for (Counter counter : pools.values()) {
+            rate += counter.rateAt(now);
+        }
+        return rate * 1000;
+    }
+
+    @Override
+    public List<TypeSummary> getTypeSummaries()
+    {
+        ImmutableList.Builder<TypeSummary> types = ImmutableList.builder();
+        for (Map.Entry<String, ConcurrentMap<String, Counter>> type : new TreeMap<>(counters).entrySet()) {
+            ImmutableList.Builder<PoolSummary> pools = ImmutableList.builder();
+            for (Map.Entry<String, Counter> pool : new TreeMap<>(type.getValue()).entrySet()) {
+                Counter counter = pool.getValue();
+                if (counter.instances == 0) {
+                    continue;
+                }
+                pools.add(poolSummary(pool.getKey(), counter.instances, counter.lastChanged, counter.version));
+            }
+            List<PoolSummary> poolSummaries = pools.build();
+            if (!poolSummaries.isEmpty()) {
+                types.add(typeSummary(type.getKey(), poolSummaries));
+            }
+        }
+        return types.build();
+    }
+
+    private static class Counter
+    {
+        private final int instances;
+        private final long lastChanged;
+        private final long version;
+        // changes per ms as of lastChanged
+        private final double rate;
+
+        Counter(int instances, long lastChanged, long version, double rate)
+        {
+            this.instances = instances;
+            this.lastChanged = lastChanged;
+            this.version = version;
+            this.rate = rate;
+        }
+
+        double rateAt(long now)
+        {
+            return rate * Math.exp(-Math.max(now - lastChanged, 0) / (double) RATE_TIME_CONSTANT_IN_MS);
+        }
+    }
+}
@@ -27,10 +27,13 @@ public class StoreConfig
 {
     private Duration tombstoneMaxAge = new Duration(1, TimeUnit.DAYS);
     private Duration garbageCollectionInterval = new Duration(1, TimeUnit.HOURS);
+    private Duration expirationInterval = new Duration(1, TimeUnit.SECONDS);
     private int maxBatchSize = 1000;
     private int queueSize = 1000;
     private Duration remoteUpdateInterval = new Duration(5, TimeUnit.SECONDS);
     private Duration replicationInterval = new Duration(1, TimeUnit.MINUTES);
+    private int updateListenerMaxBatchSize = 1000;
+    private int updateListenerQueueSize = 10_000;
 
     @NotNull
     public Duration getTombstoneMaxAge()
@@ -58,6 +61,20 @@ public class StoreConfig
         return this;
     }
 
+    @NotNull
+    @MinDuration("1ms")
+    public Duration getExpirationInterval()
+    {
+        return expirationInterval;
+    }
+
+    @Config("store.expiration-interval")
+    public StoreConfig setExpirationInterval(Duration expirationInterval)
+    {
+        this.expirationInterval = expirationInterval;
+        return this;
+    }
+
     @Min(1)
     public int getMaxBatchSize()
     {
@@ -110,4 +127,30 @@ public class StoreConfig
         this.replicationInterval = replicationInterval;
         return this;
     }
+
+    @Min(1)
+    public int getUpdateListenerMaxBatchSize()
+    {
+        return updateListenerMaxBatchSize;
+    }
+
+    @Config("store.update-listener.max-batch-size")
+    public StoreConfig setUpdateListenerMaxBatchSize(int updateListenerMaxBatchSize)
+    {
+        this.updateListenerMaxBatchSize = updateListenerMaxBatchSize;
+        return this;
+    }
+
+    @Min(1)
+    public int getUpdateListenerQueueSize()
+    {
+        return updateListenerQueueSize;
+    }
+
+    @Config("store.update-listener.queue-size")
+    public StoreConfig setUpdateListenerQueueSize(int updateListenerQueueSize)
+    {
+        this.updateListenerQueueSize = updateListenerQueueSize;
+        return this;
+    }
 }
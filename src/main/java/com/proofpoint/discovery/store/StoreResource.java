@@ -17,6 +17,8 @@ package com.proofpoint.discovery.store;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.proofpoint.discovery.ExecutionLane;
+import com.proofpoint.discovery.ExecutionLanes;
 import com.proofpoint.units.Duration;
 
 import javax.inject.Inject;
@@ -26,27 +28,40 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import static com.proofpoint.discovery.CapacityExceededException.INSUFFICIENT_STORAGE;
+import static java.lang.String.format;
+
 @Path("/v1/store/{store}")
 public class StoreResource
 {
     private final Map<String, InMemoryStore> localStores;
     private final Map<String, Duration> tombstoneMaxAges;
+    private final ExecutionLane lane;
 
     @Inject
-    public StoreResource(Map<String, InMemoryStore> localStores, Map<String, StoreConfig> configs)
+    public StoreResource(Map<String, InMemoryStore> localStores, Map<String, StoreConfig> configs, ExecutionLanes lanes)
     {
         this.localStores = ImmutableMap.copyOf(localStores);
         this.tombstoneMaxAges = ImmutableMap.copyOf(Maps.transformValues(configs, StoreConfig::getTombstoneMaxAge));
+        lane = lanes.getReplication();
     }
 
     @POST
     @Consumes({"application/x-jackson-smile", "application/json"})
-    public Response setMultipleEntries(@PathParam("store") String storeName, List<Entry> entries)
+    public void setMultipleEntries(@PathParam("store") String storeName, List<Entry> entries, @Suspended AsyncResponse asyncResponse)
+    {
+        lane.execute(asyncResponse, () -> merge(storeName, entries));
+    }
+
+    private Response merge(String storeName, List<Entry> entries)
     {
         InMemoryStore store = localStores.get(storeName);
         Duration tombstoneMaxAge = tombstoneMaxAges.get(storeName);
@@ -54,11 +69,44 @@ public class StoreResource
             return Response.status(Status.NOT_FOUND).build();
         }
 
+        List<Entry> unexpired = new ArrayList<>(entries.size());
         for (Entry entry : entries) {
             if (!isExpired(tombstoneMaxAge, entry)) {
-                store.put(entry);
+                unexpired.add(entry);
+            }
+        }
+        MergeResult result = store.putAll(unexpired);
+        if (result.getRejected() > 0) {
+            return Response.status(INSUFFICIENT_STORAGE)
+                    .entity(format("Store %s is full: rejected %s new entries", storeName, result.getRejected()))
+                    .build();
+        }
+        return Response.noContent().build();
+    }
+
+    @POST
+    @Path("touch")
+    @Consumes({"application/x-jackson-smile", "application/json"})
+    public void touchEntries(@PathParam("store") String storeName, List<Touch> touches, @Suspended AsyncResponse asyncResponse)
+    {
+        lane.execute(asyncResponse, () -> touch(storeName, touches));
+    }
+
+    private Response touch(String storeName, List<Touch> touches)
+    {
+        InMemoryStore store = localStores.get(storeName);
+        if (store == null) {
+            return Response.status(Status.NOT_FOUND).build();
+        }
+
+        long now = System.currentTimeMillis();
+        List<Touch> unexpired = new ArrayList<>(touches.size());
+        for (Touch touch : touches) {
+            if (touch.getMaxAgeInMs() == null || now - touch.getTimestamp() <= touch.getMaxAgeInMs()) {
+                unexpired.add(touch);
             }
         }
+        store.touchAll(unexpired);
         return Response.noContent().build();
     }
 
@@ -70,7 +118,9 @@ public class StoreResource
         if (store == null) {
             return Response.status(Status.NOT_FOUND).build();
         }
-        return Response.ok(store.getAll()).build();
+        List<Entry> entries = new ArrayList<>(store.getAll());
+        entries.addAll(store.getTombstones());
+        return Response.ok(entries).build();
     }
 
     private static boolean isExpired(Duration tombstoneMaxAge, Entry entry)
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Extends the timestamp of an existing entry without resending its value.
+ * A touch only applies to an entry whose value has the same content hash.
+ */
+@AutoValue
+public abstract class Touch
+{
+    @JsonCreator
+    public static Touch touch(@JsonProperty("key") byte[] key,
+            @JsonProperty("timestamp") long timestamp,
+            @Nullable @JsonProperty("maxAgeInMs") Long maxAgeInMs,
+            @JsonProperty("contentHash") long contentHash)
+    {
+        checkArgument(maxAgeInMs == null || maxAgeInMs > 0, "maxAgeInMs must be greater than 0");
+        return new AutoValue_Touch(key, timestamp, maxAgeInMs, contentHash);
+    }
+
+    @JsonProperty
+    @SuppressWarnings("mutable")
+    public abstract byte[] getKey();
+
+    @JsonProperty
+    public abstract long getTimestamp();
+
+    @Nullable
+    @JsonProperty
+    public abstract Long getMaxAgeInMs();
+
+    @JsonProperty
+    public abstract long getContentHash();
+}
@@ -15,7 +15,31 @@
  */
 package com.proofpoint.discovery.store;
 
+import java.util.Collection;
+
+/**
+ * Notified of updates to the entries of a store, for statistics and other
+ * best-effort uses. Updates are dispatched asynchronously and may be
+ * missed: when listeners fall behind, the oldest queued updates are
+ * dropped. Nothing that has to stay consistent with the store should be
+ * derived from them; read the store's change log instead.
+ */
 interface UpdateListener
 {
     void notifyUpdate(Entry oldEntry, Entry newEntry);
+
+    default void notifyUpdates(Collection<EntryUpdate> updates)
+    {
+        for (EntryUpdate update : updates) {
+            notifyUpdate(update.getOldEntry(), update.getNewEntry());
+        }
+    }
+
+    /**
+     * Called periodically with the store's time, so that a listener can drop
+     * what it keeps for types and pools that are no longer updated.
+     */
+    default void removeIdle(long nowInMs)
+    {
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.proofpoint.discovery;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.proofpoint.units.Duration;
 
@@ -63,6 +64,23 @@ public class InMemoryDynamicStore
         descriptors.put(nodeId, new Entry(expiration, services));
     }
 
+    @Override
+    public synchronized boolean renew(Id<Node> nodeId, long contentHash)
+    {
+        requireNonNull(nodeId, "nodeId is null");
+
+        removeExpired();
+
+        Entry entry = descriptors.get(nodeId);
+        if (entry == null || Service.contentHash(ImmutableList.copyOf(entry.getServices())) != contentHash) {
+            return false;
+        }
+
+        Instant expiration = currentTime.get().plusMillis((int) maxAge.toMillis());
+        descriptors.put(nodeId, new Entry(expiration, entry.getServices()));
+        return true;
+    }
+
     @Override
     public synchronized void delete(Id<Node> nodeId)
     {
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.proofpoint.discovery.DiscoveryConfig.StringSet;
+import com.proofpoint.units.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class TestCacheMaxAgePolicy
+{
+    private ServiceCounts serviceCounts;
+    private CacheMaxAgePolicy policy;
+
+    @BeforeMethod
+    public void setup()
+    {
+        serviceCounts = mock(ServiceCounts.class);
+        policy = new CacheMaxAgePolicy(serviceCounts, new DiscoveryConfig()
+                .setMinCacheMaxAge(new Duration(2, SECONDS))
+                .setMaxCacheMaxAge(new Duration(60, SECONDS)));
+    }
+
+    @Test
+    public void testStableTypeGetsUpperBound()
+    {
+        assertEquals(policy.forType("storage", null).getMaxAge(), 60);
+        assertEquals(policy.forAllTypes().getMaxAge(), 60);
+    }
+
+    @Test
+    public void testMaxAgeFollowsChangeRate()
+    {
+        when(serviceCounts.getChangeRate("storage", "alpha")).thenReturn(0.01);
+        when(serviceCounts.getChangeRate()).thenReturn(0.004);
+
+        assertEquals(policy.forType("storage", "alpha").getMaxAge(), 10);
+        assertEquals(policy.forAllTypes().getMaxAge(), 25);
+    }
+
+    @Test
+    public void testVolatileTypeGetsLowerBound()
+    {
+        when(serviceCounts.getChangeRate("storage", null)).thenReturn(5.0);
+
+        assertEquals(policy.forType("storage", null).getMaxAge(), 2);
+    }
+
+    @Test
+    public void testProxiedTypesGetLowerBound()
+    {
+        policy = new CacheMaxAgePolicy(serviceCounts, new DiscoveryConfig()
+                .setProxyProxiedTypes(StringSet.of("storage"))
+                .setProxyEnvironment("upstream")
+                .setMinCacheMaxAge(new Duration(2, SECONDS)));
+
+        assertEquals(policy.forType("storage", null).getMaxAge(), 2);
+        assertEquals(policy.forType("web", null).getMaxAge(), 30);
+        assertEquals(policy.forAllTypes().getMaxAge(), 2);
+    }
+}
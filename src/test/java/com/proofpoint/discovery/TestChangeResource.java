@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import static com.proofpoint.discovery.ServiceChange.Kind.ADDED;
+import static com.proofpoint.discovery.ServiceChange.serviceChange;
+import static com.proofpoint.discovery.ServiceChanges.serviceChanges;
+import static javax.ws.rs.core.Response.Status.GONE;
+import static javax.ws.rs.core.Response.Status.OK;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestChangeResource
+{
+    private static final Service SERVICE = new Service(Id.random(), Id.random(), "storage", "alpha", "/a/b", ImmutableMap.of("http", "http://localhost:1111"));
+
+    private ChangeFeed changeFeed;
+    private InitializationTracker initializationTracker;
+    private ChangeResource resource;
+
+    @BeforeMethod
+    public void setup()
+    {
+        changeFeed = mock(ChangeFeed.class);
+        initializationTracker = new InitializationTracker();
+        resource = new ChangeResource(changeFeed, new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig()), initializationTracker);
+    }
+
+    @Test
+    public void testChangesSince()
+    {
+        ServiceChanges changes = serviceChanges(12, ImmutableList.of(serviceChange(12, ADDED, SERVICE)));
+        when(changeFeed.getChangesSince(10)).thenReturn(changes);
+
+        Response response = resource.getChanges(10L);
+
+        assertEquals(response.getStatus(), OK.getStatusCode());
+        assertEquals(response.getEntity(), changes);
+    }
+
+    @Test
+    public void testWithoutSince()
+    {
+        when(changeFeed.getLastSequence()).thenReturn(10L);
+
+        Response response = resource.getChanges(null);
+
+        assertEquals(response.getStatus(), OK.getStatusCode());
+        assertEquals(response.getEntity(), serviceChanges(10, ImmutableList.of()));
+    }
+
+    @Test
+    public void testResyncRequired()
+    {
+        Response response = resource.getChanges(10L);
+
+        assertEquals(response.getStatus(), GONE.getStatusCode());
+    }
+
+    @Test
+    public void testInitializing()
+    {
+        initializationTracker.createTask();
+        try {
+            resource.getChanges(10L);
+            fail("expected WebApplicationException");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(e.getResponse().getStatus(), 503);
+        }
+    }
+}
@@ -18,16 +18,19 @@ package com.proofpoint.discovery;
 import com.google.common.collect.ImmutableMap;
 import com.proofpoint.configuration.testing.ConfigAssertions;
 import com.proofpoint.discovery.DiscoveryConfig.StringSet;
+import com.proofpoint.units.DataSize;
 import com.proofpoint.units.Duration;
 import org.testng.annotations.Test;
 
 import javax.validation.constraints.AssertTrue;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.net.URI;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.proofpoint.configuration.testing.ConfigAssertions.assertLegacyEquivalence;
+import static com.proofpoint.units.DataSize.Unit.MEGABYTE;
 import static com.proofpoint.testing.ValidationAssertions.assertFailsValidation;
 
 public class TestDiscoveryConfig
@@ -39,7 +42,16 @@ public class TestDiscoveryConfig
                 .setMaxAge(new Duration(90, TimeUnit.SECONDS))
                 .setProxyProxiedTypes(DiscoveryConfig.StringSet.of())
                 .setProxyEnvironment(null)
-                .setProxyUris(DiscoveryConfig.UriSet.of()));
+                .setProxyUris(DiscoveryConfig.UriSet.of())
+                .setMaxEntries(null)
+                .setMaxSize(null)
+                .setMaxEntriesPerPool(null)
+                .setChangeLogSize(10_000)
+                .setIndexedProperties(StringSet.of())
+                .setEncodingParallelism(Runtime.getRuntime().availableProcessors())
+                .setResponseCacheMaxSize(new DataSize(64, MEGABYTE))
+                .setMinCacheMaxAge(new Duration(1, TimeUnit.SECONDS))
+                .setMaxCacheMaxAge(new Duration(30, TimeUnit.SECONDS)));
     }
 
     @Test
@@ -50,13 +62,31 @@ public class TestDiscoveryConfig
                 .put("discovery.proxy.proxied-types", "foo  ,  bar")
                 .put("discovery.proxy.environment", "pre-release")
                 .put("discovery.proxy.uri", "http://10.20.30.40:4111,http://50.60.70.80:9125")
+                .put("discovery.store.max-entries", "1000")
+                .put("discovery.store.max-size", "10MB")
+                .put("discovery.store.max-entries-per-pool", "100")
+                .put("discovery.store.change-log-size", "500")
+                .put("discovery.store.indexed-properties", "zone, version")
+                .put("discovery.encoding-parallelism", "3")
+                .put("discovery.response-cache.max-size", "1MB")
+                .put("discovery.cache-max-age.min", "5s")
+                .put("discovery.cache-max-age.max", "2m")
                 .build();
 
         DiscoveryConfig expected = new DiscoveryConfig()
                 .setMaxAge(new Duration(1, TimeUnit.MINUTES))
                 .setProxyProxiedTypes(DiscoveryConfig.StringSet.of("foo", "bar"))
                 .setProxyEnvironment("pre-release")
-                .setProxyUris(DiscoveryConfig.UriSet.of(URI.create("http://10.20.30.40:4111"), URI.create("http://50.60.70.80:9125")));
+                .setProxyUris(DiscoveryConfig.UriSet.of(URI.create("http://10.20.30.40:4111"), URI.create("http://50.60.70.80:9125")))
+                .setMaxEntries(1000)
+                .setMaxSize(new DataSize(10, MEGABYTE))
+                .setMaxEntriesPerPool(100)
+                .setChangeLogSize(500)
+                .setIndexedProperties(StringSet.of("zone", "version"))
+                .setEncodingParallelism(3)
+                .setResponseCacheMaxSize(new DataSize(1, MEGABYTE))
+                .setMinCacheMaxAge(new Duration(5, TimeUnit.SECONDS))
+                .setMaxCacheMaxAge(new Duration(2, TimeUnit.MINUTES));
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -76,6 +106,40 @@ public class TestDiscoveryConfig
         assertFailsValidation(config, "maxAge", "may not be null", NotNull.class);
     }
 
+    @Test
+    public void testValidatesNotNullResponseCacheMaxSize()
+    {
+        DiscoveryConfig config = new DiscoveryConfig().setResponseCacheMaxSize(null);
+
+        assertFailsValidation(config, "responseCacheMaxSize", "may not be null", NotNull.class);
+    }
+
+    @Test
+    public void testValidatesNotNullCacheMaxAge()
+    {
+        assertFailsValidation(new DiscoveryConfig().setMinCacheMaxAge(null), "minCacheMaxAge", "may not be null", NotNull.class);
+        assertFailsValidation(new DiscoveryConfig().setMaxCacheMaxAge(null), "maxCacheMaxAge", "may not be null", NotNull.class);
+    }
+
+    @Test
+    public void testValidatesCacheMaxAgeRange()
+    {
+        DiscoveryConfig config = new DiscoveryConfig()
+                .setMinCacheMaxAge(new Duration(1, TimeUnit.MINUTES))
+                .setMaxCacheMaxAge(new Duration(10, TimeUnit.SECONDS));
+        assertFailsValidation(config, "cacheMaxAgeRangeValid", "discovery.cache-max-age.min must not exceed discovery.cache-max-age.max",
+                AssertTrue.class);
+    }
+
+    @Test
+    public void testValidatesMinMaxEntries()
+    {
+        assertFailsValidation(new DiscoveryConfig().setMaxEntries(0), "maxEntries", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new DiscoveryConfig().setMaxEntriesPerPool(0), "maxEntriesPerPool", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new DiscoveryConfig().setChangeLogSize(0), "changeLogSize", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new DiscoveryConfig().setEncodingParallelism(0), "encodingParallelism", "must be greater than or equal to 1", Min.class);
+    }
+
     @Test
     public void testProxyMissingEnvironment()
     {
@@ -15,6 +15,10 @@
  */
 package com.proofpoint.discovery;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.Resources;
@@ -27,6 +31,10 @@ import com.proofpoint.discovery.client.ServiceSelector;
 import com.proofpoint.discovery.client.announce.DiscoveryAnnouncementClient;
 import com.proofpoint.discovery.client.announce.ServiceAnnouncement;
 import com.proofpoint.http.client.HttpClient;
+import com.proofpoint.http.client.Request;
+import com.proofpoint.http.client.Response;
+import com.proofpoint.http.client.ResponseHandler;
+import com.proofpoint.http.client.StatusResponseHandler.StatusResponse;
 import com.proofpoint.http.client.jetty.JettyHttpClient;
 import com.proofpoint.http.server.testing.TestingHttpServer;
 import com.proofpoint.http.server.testing.TestingHttpServerModule;
@@ -51,13 +59,20 @@ import java.util.Set;
 import static com.proofpoint.bootstrap.Bootstrap.bootstrapTest;
 import static com.proofpoint.discovery.client.DiscoveryBinder.discoveryBinder;
 import static com.proofpoint.discovery.client.ServiceTypes.serviceType;
+import static com.proofpoint.http.client.Request.Builder.prepareGet;
+import static com.proofpoint.http.client.Request.Builder.preparePut;
+import static com.proofpoint.http.client.SmileBodyGenerator.smileBodyGenerator;
+import static com.proofpoint.http.client.StatusResponseHandler.createStatusResponseHandler;
 import static com.proofpoint.jaxrs.JaxrsModule.explicitJaxrsModule;
+import static com.proofpoint.json.JsonCodec.mapJsonCodec;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 public class TestDiscoveryServer
 {
+    private static final String SMILE = "application/x-jackson-smile";
+
     private final HttpClient client = new JettyHttpClient();
 
     private TestingHttpServer server;
@@ -151,6 +166,39 @@ public class TestDiscoveryServer
         assertTrue(selectorFor("apple", "red").selectAllServices().isEmpty());
     }
 
+    @Test
+    public void testSmileAnnouncementAndServices()
+            throws Exception
+    {
+        Id<Node> nodeId = Id.random();
+        Map<String, Object> announcement = ImmutableMap.of(
+                "environment", "testing",
+                "pool", "red",
+                "location", "/a/b/c",
+                "services", ImmutableList.of(ImmutableMap.of(
+                        "id", Id.random().toString(),
+                        "type", "apple",
+                        "properties", ImmutableMap.of("key", "value"))));
+
+        StatusResponse putResponse = client.execute(preparePut()
+                        .setUri(uriFor("/v1/announcement/" + nodeId))
+                        .setHeader("Content-Type", SMILE)
+                        .setBodySource(smileBodyGenerator(mapJsonCodec(String.class, Object.class), announcement))
+                        .build(),
+                createStatusResponseHandler());
+        assertEquals(putResponse.getStatusCode(), 202);
+
+        JsonNode services = client.execute(prepareGet()
+                        .setUri(uriFor("/v1/service/apple/red"))
+                        .setHeader("Accept", SMILE)
+                        .build(),
+                new SmileResponseHandler());
+        assertEquals(services.get("environment").asText(), "testing");
+        assertEquals(services.get("services").size(), 1);
+        assertEquals(services.get("services").get(0).get("nodeId").asText(), nodeId.toString());
+        assertEquals(services.get("services").get(0).get("properties").get("key").asText(), "value");
+    }
+
     private ServiceSelector selectorFor(final String type, String pool)
             throws Exception
     {
@@ -180,4 +228,26 @@ public class TestDiscoveryServer
     {
         return server.getBaseUrl().resolve(path);
     }
+
+    private static class SmileResponseHandler
+            implements ResponseHandler<JsonNode, Exception>
+    {
+        private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+        @Override
+        public JsonNode handleException(Request request, Exception exception)
+                throws Exception
+        {
+            throw exception;
+        }
+
+        @Override
+        public JsonNode handle(Request request, Response response)
+                throws Exception
+        {
+            assertEquals(response.getStatusCode(), 200);
+            assertEquals(response.getHeader("Content-Type"), SMILE);
+            return SMILE_MAPPER.readTree(response.getInputStream());
+        }
+    }
 }
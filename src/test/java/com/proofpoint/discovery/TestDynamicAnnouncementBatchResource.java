@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.proofpoint.discovery.DiscoveryConfig.StringSet;
+import com.proofpoint.discovery.store.RealTimeSupplier;
+import com.proofpoint.node.NodeInfo;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import java.util.Arrays;
+
+import static com.proofpoint.discovery.CapacityExceededException.INSUFFICIENT_STORAGE;
+import static com.proofpoint.discovery.NodeAnnouncement.nodeAnnouncement;
+import static com.proofpoint.discovery.TestingAsyncResponses.respond;
+import static java.lang.String.format;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+
+public class TestDynamicAnnouncementBatchResource
+{
+    private final ExecutionLanes lanes = new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig());
+    private InMemoryDynamicStore store;
+    private DynamicAnnouncementBatchResource resource;
+
+    @BeforeMethod
+    public void setup()
+    {
+        store = new InMemoryDynamicStore(new DiscoveryConfig(), new RealTimeSupplier());
+        resource = new DynamicAnnouncementBatchResource(store, new NodeInfo("testing"), new DiscoveryConfig(), lanes);
+    }
+
+    @Test
+    public void testPutAll()
+    {
+        Id<Node> blueNodeId = Id.random();
+        Id<Node> redNodeId = Id.random();
+
+        Response response = respond(asyncResponse -> resource.putAll(ImmutableList.of(
+                nodeAnnouncement(blueNodeId, announcement("testing", "storage")),
+                nodeAnnouncement(redNodeId, announcement("testing", "web"))), asyncResponse));
+
+        assertEquals(response.getStatus(), Status.ACCEPTED.getStatusCode());
+        assertEquals(store.getAll().count(), 2);
+        assertEquals(store.get("storage").iterator().next().getNodeId(), blueNodeId);
+        assertEquals(store.get("web").iterator().next().getNodeId(), redNodeId);
+    }
+
+    @Test
+    public void testMakesUpLocation()
+    {
+        Id<Node> nodeId = Id.random();
+        DynamicAnnouncement announcement = new DynamicAnnouncement("testing", "alpha", null, ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111"))));
+
+        Response response = respond(asyncResponse -> resource.putAll(ImmutableList.of(nodeAnnouncement(nodeId, announcement)), asyncResponse));
+
+        assertEquals(response.getStatus(), Status.ACCEPTED.getStatusCode());
+        assertNotNull(store.getAll().iterator().next().getLocation());
+    }
+
+    @Test
+    public void testEnvironmentConflictRejectsBatch()
+    {
+        Response response = respond(asyncResponse -> resource.putAll(ImmutableList.of(
+                nodeAnnouncement(Id.random(), announcement("testing", "storage")),
+                nodeAnnouncement(Id.random(), announcement("production", "web"))), asyncResponse));
+
+        assertEquals(response.getStatus(), Status.BAD_REQUEST.getStatusCode());
+        assertEquals(store.getAll().count(), 0);
+    }
+
+    @Test
+    public void testProxiedTypeRejectsBatch()
+    {
+        resource = new DynamicAnnouncementBatchResource(store, new NodeInfo("testing"),
+                new DiscoveryConfig().setProxyProxiedTypes(StringSet.of("web")), lanes);
+
+        Response response = respond(asyncResponse -> resource.putAll(ImmutableList.of(
+                nodeAnnouncement(Id.random(), announcement("testing", "storage")),
+                nodeAnnouncement(Id.random(), announcement("testing", "web"))), asyncResponse));
+
+        assertEquals(response.getStatus(), Status.FORBIDDEN.getStatusCode());
+        assertEquals(store.getAll().count(), 0);
+    }
+
+    @Test
+    public void testDuplicateNodeRejectsBatch()
+    {
+        Id<Node> nodeId = Id.random();
+
+        Response response = respond(asyncResponse -> resource.putAll(ImmutableList.of(
+                nodeAnnouncement(nodeId, announcement("testing", "storage")),
+                nodeAnnouncement(nodeId, announcement("testing", "web"))), asyncResponse));
+
+        assertEquals(response.getStatus(), Status.BAD_REQUEST.getStatusCode());
+        assertEquals(store.getAll().count(), 0);
+    }
+
+    @Test
+    public void testNullAnnouncementRejectsBatch()
+    {
+        Response response = respond(asyncResponse -> resource.putAll(Arrays.asList(
+                nodeAnnouncement(Id.random(), announcement("testing", "storage")),
+                null), asyncResponse));
+        assertEquals(response.getStatus(), Status.BAD_REQUEST.getStatusCode());
+
+        response = respond(asyncResponse -> resource.putAll(ImmutableList.of(
+                nodeAnnouncement(Id.random(), announcement("testing", "storage")),
+                nodeAnnouncement(Id.random(), null)), asyncResponse));
+        assertEquals(response.getStatus(), Status.BAD_REQUEST.getStatusCode());
+
+        response = respond(asyncResponse -> resource.putAll(null, asyncResponse));
+        assertEquals(response.getStatus(), Status.BAD_REQUEST.getStatusCode());
+        assertEquals(store.getAll().count(), 0);
+    }
+
+    @Test
+    public void testInvalidServiceAnnouncementRejectsBatch()
+    {
+        DynamicAnnouncement invalid = new DynamicAnnouncement("testing", "alpha", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), null, ImmutableMap.of("http", "http://localhost:1111"))));
+        Id<Node> nodeId = Id.random();
+
+        Response response = respond(asyncResponse -> resource.putAll(ImmutableList.of(
+                nodeAnnouncement(Id.random(), announcement("testing", "storage")),
+                nodeAnnouncement(nodeId, invalid)), asyncResponse));
+
+        assertEquals(response.getStatus(), Status.BAD_REQUEST.getStatusCode());
+        assertEquals(response.getEntity(), format("Invalid announcement for node %s: announcement.serviceAnnouncements[].type may not be null", nodeId));
+        assertEquals(store.getAll().count(), 0);
+    }
+
+    @Test
+    public void testOverCapacity()
+    {
+        Id<Node> nodeId = Id.random();
+        DynamicStore fullStore = mock(DynamicStore.class);
+        when(fullStore.putAll(any())).thenReturn(ImmutableSet.of(nodeId));
+        resource = new DynamicAnnouncementBatchResource(fullStore, new NodeInfo("testing"), new DiscoveryConfig(), lanes);
+
+        Response response = respond(asyncResponse -> resource.putAll(ImmutableList.of(
+                nodeAnnouncement(Id.random(), announcement("testing", "storage")),
+                nodeAnnouncement(nodeId, announcement("testing", "web"))), asyncResponse));
+
+        assertEquals(response.getStatus(), INSUFFICIENT_STORAGE);
+        assertEquals(response.getEntity(), ImmutableMap.of("rejectedNodeIds", ImmutableList.of(nodeId.toString())));
+    }
+
+    private static DynamicAnnouncement announcement(String environment, String type)
+    {
+        return new DynamicAnnouncement(environment, "alpha", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), type, ImmutableMap.of("http", "http://localhost:1111"))));
+    }
+}
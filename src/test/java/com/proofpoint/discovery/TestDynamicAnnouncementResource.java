@@ -23,14 +23,26 @@ import com.proofpoint.node.NodeInfo;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
-
+import java.util.stream.Collectors;
+
+import static com.proofpoint.discovery.CapacityExceededException.INSUFFICIENT_STORAGE;
+import static com.proofpoint.discovery.Service.contentHash;
+import static com.proofpoint.discovery.TestingAsyncResponses.respond;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 
 public class TestDynamicAnnouncementResource
 {
+    private final ExecutionLanes lanes = new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig());
     private InMemoryDynamicStore store;
     private DynamicAnnouncementResource resource;
 
@@ -38,7 +50,7 @@ public class TestDynamicAnnouncementResource
     public void setup()
     {
         store = new InMemoryDynamicStore(new DiscoveryConfig(), new RealTimeSupplier());
-        resource = new DynamicAnnouncementResource(store, new NodeInfo("testing"), new DiscoveryConfig());
+        resource = new DynamicAnnouncementResource(store, new NodeInfo("testing"), new DiscoveryConfig(), lanes);
     }
 
     @Test
@@ -50,7 +62,7 @@ public class TestDynamicAnnouncementResource
         );
 
         Id<Node> nodeId = Id.random();
-        Response response = resource.put(nodeId, announcement);
+        Response response = respond(asyncResponse -> resource.put(nodeId, announcement, asyncResponse));
 
         assertNotNull(response);
         assertEquals(response.getStatus(), Response.Status.ACCEPTED.getStatusCode());
@@ -81,7 +93,7 @@ public class TestDynamicAnnouncementResource
                 serviceAnnouncement)
         );
 
-        Response response = resource.put(nodeId, announcement);
+        Response response = respond(asyncResponse -> resource.put(nodeId, announcement, asyncResponse));
 
         assertNotNull(response);
         assertEquals(response.getStatus(), Response.Status.ACCEPTED.getStatusCode());
@@ -105,7 +117,7 @@ public class TestDynamicAnnouncementResource
         );
 
         Id<Node> nodeId = Id.random();
-        Response response = resource.put(nodeId, announcement);
+        Response response = respond(asyncResponse -> resource.put(nodeId, announcement, asyncResponse));
 
         assertNotNull(response);
         assertEquals(response.getStatus(), Response.Status.BAD_REQUEST.getStatusCode());
@@ -117,14 +129,14 @@ public class TestDynamicAnnouncementResource
     public void testPutProxied()
     {
         resource = new DynamicAnnouncementResource(store, new NodeInfo("testing"),
-                new DiscoveryConfig().setProxyProxiedTypes(StringSet.of("storage")));
+                new DiscoveryConfig().setProxyProxiedTypes(StringSet.of("storage")), lanes);
 
         DynamicAnnouncement announcement = new DynamicAnnouncement("testing", "alpha", "/a/b/c", ImmutableSet.of(
                 new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111")))
         );
 
         Id<Node> nodeId = Id.random();
-        Response response = resource.put(nodeId, announcement);
+        Response response = respond(asyncResponse -> resource.put(nodeId, announcement, asyncResponse));
 
         assertNotNull(response);
         assertEquals(response.getStatus(), Status.FORBIDDEN.getStatusCode());
@@ -132,6 +144,73 @@ public class TestDynamicAnnouncementResource
         assertEquals(store.getAll().count(), 0);
     }
 
+    @Test
+    public void testPutOverCapacity()
+    {
+        DynamicStore fullStore = mock(DynamicStore.class);
+        doThrow(new CapacityExceededException("Store has reached its limit of 1 entries"))
+                .when(fullStore).put(any(), any());
+        resource = new DynamicAnnouncementResource(fullStore, new NodeInfo("testing"), new DiscoveryConfig(), lanes);
+
+        DynamicAnnouncement announcement = new DynamicAnnouncement("testing", "alpha", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111")))
+        );
+
+        Response response = respond(asyncResponse -> resource.put(Id.random(), announcement, asyncResponse));
+
+        assertNotNull(response);
+        assertEquals(response.getStatus(), INSUFFICIENT_STORAGE);
+        assertEquals(response.getEntity(), "Store has reached its limit of 1 entries");
+    }
+
+    @Test
+    public void testPutReturnsLeaseTag()
+    {
+        Id<Node> nodeId = Id.random();
+        DynamicAnnouncement announcement = new DynamicAnnouncement("testing", "alpha", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111")))
+        );
+
+        Response response = respond(asyncResponse -> resource.put(nodeId, announcement, asyncResponse));
+
+        long contentHash = contentHash(store.getAll().collect(Collectors.toList()));
+        assertEquals(response.getEntityTag(), new EntityTag(Long.toHexString(contentHash)));
+    }
+
+    @Test
+    public void testHeartbeat()
+    {
+        DynamicStore leaseStore = mock(DynamicStore.class);
+        when(leaseStore.renew(any(), anyLong())).thenReturn(true);
+        resource = new DynamicAnnouncementResource(leaseStore, new NodeInfo("testing"), new DiscoveryConfig(), lanes);
+        Id<Node> nodeId = Id.random();
+
+        Response response = respond(asyncResponse -> resource.heartbeat(nodeId, "\"ff\"", asyncResponse));
+
+        assertEquals(response.getStatus(), Status.ACCEPTED.getStatusCode());
+        assertEquals(response.getEntityTag(), new EntityTag("ff"));
+        verify(leaseStore).renew(nodeId, 0xff);
+    }
+
+    @Test
+    public void testHeartbeatUnknownLease()
+    {
+        DynamicStore leaseStore = mock(DynamicStore.class);
+        when(leaseStore.renew(any(), anyLong())).thenReturn(false);
+        resource = new DynamicAnnouncementResource(leaseStore, new NodeInfo("testing"), new DiscoveryConfig(), lanes);
+
+        Response response = respond(asyncResponse -> resource.heartbeat(Id.random(), "\"ffffffffffffffff\"", asyncResponse));
+
+        assertEquals(response.getStatus(), Status.PRECONDITION_FAILED.getStatusCode());
+    }
+
+    @Test
+    public void testHeartbeatInvalidTag()
+    {
+        assertEquals(respond(asyncResponse -> resource.heartbeat(Id.random(), null, asyncResponse)).getStatus(), Status.BAD_REQUEST.getStatusCode());
+        assertEquals(respond(asyncResponse -> resource.heartbeat(Id.random(), "\"not-hex\"", asyncResponse)).getStatus(), Status.BAD_REQUEST.getStatusCode());
+    }
+
     @Test
     public void testDeleteExisting()
     {
@@ -149,7 +228,7 @@ public class TestDynamicAnnouncementResource
         store.put(redNodeId, red);
         store.put(blueNodeId, blue);
 
-        resource.delete(blueNodeId);
+        respond(asyncResponse -> resource.delete(blueNodeId, asyncResponse));
 
         assertEquals(store.getAll().count(), 1);
         Service service = store.getAll().iterator().next();
@@ -165,7 +244,7 @@ public class TestDynamicAnnouncementResource
     @Test
     public void testDeleteMissing()
     {
-        resource.delete(Id.random());
+        respond(asyncResponse -> resource.delete(Id.random(), asyncResponse));
 
         assertEquals(store.getAll().count(), 0);
     }
@@ -178,7 +257,7 @@ public class TestDynamicAnnouncementResource
         );
 
         Id<Node> nodeId = Id.random();
-        Response response = resource.put(nodeId, announcement);
+        Response response = respond(asyncResponse -> resource.put(nodeId, announcement, asyncResponse));
 
         assertNotNull(response);
         assertEquals(response.getStatus(), Response.Status.ACCEPTED.getStatusCode());
@@ -17,20 +17,27 @@ package com.proofpoint.discovery;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.proofpoint.discovery.DiscoveryConfig.StringSet;
 import com.proofpoint.units.Duration;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.time.Instant;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.proofpoint.discovery.DynamicServiceAnnouncement.toServiceWith;
+import static com.proofpoint.discovery.PropertyFilter.propertyFilter;
+import static com.proofpoint.discovery.Service.contentHash;
 import static com.proofpoint.testing.Assertions.assertEqualsIgnoreOrder;
 import static java.util.stream.Stream.concat;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
 
 public abstract class TestDynamicStore
 {
@@ -45,7 +52,9 @@ public abstract class TestDynamicStore
     public void setup()
     {
         currentTime = new TestingTimeSupplier();
-        DiscoveryConfig config = new DiscoveryConfig().setMaxAge(new Duration(1, TimeUnit.MINUTES));
+        DiscoveryConfig config = new DiscoveryConfig()
+                .setMaxAge(new Duration(1, TimeUnit.MINUTES))
+                .setIndexedProperties(StringSet.of("zone"));
         store = initializeStore(config, currentTime);
     }
 
@@ -70,6 +79,26 @@ public abstract class TestDynamicStore
                 .collect(Collectors.toList()));
     }
 
+    @Test
+    public void testPutAll()
+    {
+        Id<Node> blueNodeId = Id.random();
+        DynamicAnnouncement blue = new DynamicAnnouncement("testing", "poolA", "/US/West/SC4/rack1/host1/vm1/slot1", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111"))
+        ));
+        Id<Node> redNodeId = Id.random();
+        DynamicAnnouncement red = new DynamicAnnouncement("testing", "poolB", "/US/West/SC4/rack1/host1/vm1/slot2", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "web", ImmutableMap.of("http", "http://localhost:2222"))
+        ));
+
+        store.putAll(ImmutableMap.of(blueNodeId, blue, redNodeId, red));
+
+        assertEqualsIgnoreOrder(store.getAll().collect(Collectors.toList()), concat(
+                blue.getServiceAnnouncements().stream().map(toServiceWith(blueNodeId, blue.getLocation(), blue.getPool())),
+                red.getServiceAnnouncements().stream().map(toServiceWith(redNodeId, red.getLocation(), red.getPool())))
+                .collect(Collectors.toList()));
+    }
+
     @Test
     public void testExpires()
     {
@@ -83,6 +112,61 @@ public abstract class TestDynamicStore
         assertEqualsIgnoreOrder(store.getAll().collect(Collectors.toList()), Collections.<Service>emptySet());
     }
 
+    @Test
+    public void testRenew()
+    {
+        Id<Node> nodeId = Id.random();
+        DynamicAnnouncement blue = new DynamicAnnouncement("testing", "poolA", "/US/West/SC4/rack1/host1/vm1/slot1", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111"))
+        ));
+        List<Service> services = blue.getServiceAnnouncements().stream()
+                .map(toServiceWith(nodeId, blue.getLocation(), blue.getPool()))
+                .collect(Collectors.toList());
+
+        store.put(nodeId, blue);
+        currentTime.add(new Duration(MAX_AGE.toMillis() * 3 / 4, TimeUnit.MILLISECONDS));
+        assertTrue(store.renew(nodeId, contentHash(services)));
+        currentTime.add(new Duration(MAX_AGE.toMillis() * 3 / 4, TimeUnit.MILLISECONDS));
+
+        assertEqualsIgnoreOrder(store.getAll().collect(Collectors.toList()), services);
+    }
+
+    @Test
+    public void testRenewChangedContent()
+    {
+        Id<Node> nodeId = Id.random();
+        DynamicAnnouncement blue = new DynamicAnnouncement("testing", "poolA", "/US/West/SC4/rack1/host1/vm1/slot1", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111"))
+        ));
+        List<Service> services = blue.getServiceAnnouncements().stream()
+                .map(toServiceWith(nodeId, blue.getLocation(), blue.getPool()))
+                .collect(Collectors.toList());
+
+        store.put(nodeId, blue);
+        currentTime.increment();
+
+        assertFalse(store.renew(nodeId, contentHash(services) + 1));
+        assertFalse(store.renew(Id.random(), contentHash(services)));
+    }
+
+    @Test
+    public void testRenewExpired()
+    {
+        Id<Node> nodeId = Id.random();
+        DynamicAnnouncement blue = new DynamicAnnouncement("testing", "poolA", "/US/West/SC4/rack1/host1/vm1/slot1", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111"))
+        ));
+        List<Service> services = blue.getServiceAnnouncements().stream()
+                .map(toServiceWith(nodeId, blue.getLocation(), blue.getPool()))
+                .collect(Collectors.toList());
+
+        store.put(nodeId, blue);
+        advanceTimeBeyondMaxAge();
+
+        assertFalse(store.renew(nodeId, contentHash(services)));
+        assertEquals(store.getAll().count(), 0);
+    }
+
     @Test
     public void testPutMultipleForSameNode()
     {
@@ -253,6 +337,44 @@ public abstract class TestDynamicStore
                         .collect(Collectors.toList()));
     }
 
+    @Test
+    public void testGetWithPropertyFilter()
+    {
+        Id<Node> blueNodeId = Id.random();
+        DynamicAnnouncement blue = new DynamicAnnouncement("testing", "poolA", "/US/West/SC4/rack1/host1/vm1/slot1", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111", "zone", "us-west-1a")),
+                new DynamicServiceAnnouncement(Id.random(), "web", ImmutableMap.of("http", "http://localhost:2222", "zone", "us-west-1a"))
+        ));
+
+        Id<Node> redNodeId = Id.random();
+        DynamicAnnouncement red = new DynamicAnnouncement("testing", "poolB", "/US/West/SC4/rack1/host1/vm1/slot2", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("https", "https://localhost:3333", "zone", "us-west-1b"))
+        ));
+
+        store.put(blueNodeId, blue);
+        store.put(redNodeId, red);
+
+        List<Service> blueServices = blue.getServiceAnnouncements().stream()
+                .map(toServiceWith(blueNodeId, blue.getLocation(), blue.getPool()))
+                .collect(Collectors.toList());
+        List<Service> redServices = red.getServiceAnnouncements().stream()
+                .map(toServiceWith(redNodeId, red.getLocation(), red.getPool()))
+                .collect(Collectors.toList());
+
+        assertEqualsIgnoreOrder(store.get("storage", null, propertyFilter(ImmutableMap.of("zone", "us-west-1a"), ImmutableMap.of())).collect(Collectors.toList()),
+                blueServices.stream().filter(service -> service.getType().equals("storage")).collect(Collectors.toList()));
+        assertEqualsIgnoreOrder(store.get("storage", null, propertyFilter(ImmutableMap.of(), ImmutableMap.of("zone", "us-west-"))).collect(Collectors.toList()),
+                concat(blueServices.stream().filter(service -> service.getType().equals("storage")), redServices.stream()).collect(Collectors.toList()));
+        assertEqualsIgnoreOrder(store.get("storage", "poolB", propertyFilter(ImmutableMap.of(), ImmutableMap.of("https", "https:"))).collect(Collectors.toList()),
+                redServices);
+        assertEqualsIgnoreOrder(store.getAll(propertyFilter(ImmutableMap.of("zone", "us-west-1a"), ImmutableMap.of())).collect(Collectors.toList()),
+                blueServices);
+        assertEquals(store.get("storage", "poolA", propertyFilter(ImmutableMap.of("zone", "us-west-1b"), ImmutableMap.of())).count(), 0);
+
+        advanceTimeBeyondMaxAge();
+        assertEquals(store.getAll(propertyFilter(ImmutableMap.of("zone", "us-west-1a"), ImmutableMap.of())).count(), 0);
+    }
+
     @Test
     public void testDelete()
     {
@@ -336,6 +458,28 @@ public abstract class TestDynamicStore
     }
 
 
+    @Test
+    public void testGetNode()
+    {
+        Id<Node> nodeId = Id.random();
+        DynamicAnnouncement blue = new DynamicAnnouncement("testing", "poolA", "/US/West/SC4/rack1/host1/vm1/slot1", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111")),
+                new DynamicServiceAnnouncement(Id.random(), "web", ImmutableMap.of("http", "http://localhost:2222"))
+        ));
+
+        store.put(nodeId, blue);
+
+        NodeServices nodeServices = store.getNode(nodeId);
+        assertEquals(nodeServices.getNodeId(), nodeId);
+        assertEqualsIgnoreOrder(nodeServices.getServices(), blue.getServiceAnnouncements().stream()
+                .map(toServiceWith(nodeId, blue.getLocation(), blue.getPool()))
+                .collect(Collectors.toList()));
+        assertNull(store.getNode(Id.random()));
+
+        advanceTimeBeyondMaxAge();
+        assertNull(store.getNode(nodeId));
+    }
+
     private void advanceTimeBeyondMaxAge()
     {
         currentTime.add(new Duration(MAX_AGE.toMillis() * 2, TimeUnit.MILLISECONDS));
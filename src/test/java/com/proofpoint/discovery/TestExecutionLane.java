@@ -0,0 +1,249 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.proofpoint.units.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static com.proofpoint.discovery.TestingAsyncResponses.respond;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestExecutionLane
+{
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setup()
+    {
+        executor = newCachedThreadPool();
+    }
+
+    @AfterMethod
+    public void teardown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testExecutesRequest()
+    {
+        ExecutionLane lane = new ExecutionLane("test", new ExecutionLaneConfig());
+
+        assertEquals(lane.execute(() -> Response.noContent().build()).getStatus(), 204);
+        assertEquals(lane.getActive(), 0);
+    }
+
+    @Test
+    public void testReleasesOnFailure()
+    {
+        ExecutionLane lane = new ExecutionLane("test", new ExecutionLaneConfig().setMaxConcurrency(1));
+
+        try {
+            lane.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+        }
+        catch (IllegalStateException ignored) {
+        }
+
+        assertEquals(lane.getActive(), 0);
+        assertEquals(lane.execute(() -> Response.noContent().build()).getStatus(), 204);
+    }
+
+    @Test
+    public void testUnlimited()
+            throws Exception
+    {
+        ExecutionLane lane = new ExecutionLane("test", new ExecutionLaneConfig());
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<Response>> running = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            running.add(executor.submit(() -> lane.execute(() -> {
+                started.countDown();
+                awaitUninterruptibly(release);
+                return Response.noContent().build();
+            })));
+        }
+        started.await();
+        assertEquals(lane.getActive(), 2);
+
+        release.countDown();
+        for (Future<Response> future : running) {
+            assertEquals(future.get().getStatus(), 204);
+        }
+        assertEquals(lane.getActive(), 0);
+    }
+
+    @Test
+    public void testAsyncRunsOnLaneThread()
+    {
+        ExecutionLane lane = new ExecutionLane("test", new ExecutionLaneConfig());
+        try {
+            AtomicReference<String> threadName = new AtomicReference<>();
+            Response response = respond(asyncResponse -> lane.execute(asyncResponse, () -> {
+                threadName.set(Thread.currentThread().getName());
+                return Response.noContent().build();
+            }));
+
+            assertEquals(response.getStatus(), 204);
+            assertTrue(threadName.get().startsWith("test-lane-"), threadName.get());
+        }
+        finally {
+            lane.shutdown();
+        }
+    }
+
+    @Test(timeOut = 10_000)
+    public void testAsyncRejected()
+            throws Exception
+    {
+        ExecutionLane lane = new ExecutionLane("test", new ExecutionLaneConfig()
+                .setMaxConcurrency(1)
+                .setMaxQueued(0));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<Response> running = executor.submit(() -> lane.execute(() -> {
+                started.countDown();
+                awaitUninterruptibly(release);
+                return Response.noContent().build();
+            }));
+            started.await();
+
+            AsyncResponse asyncResponse = mock(AsyncResponse.class);
+            lane.execute(asyncResponse, () -> Response.noContent().build());
+            verify(asyncResponse, timeout(10_000)).resume(any(WebApplicationException.class));
+            assertEquals(lane.getRejected().getTotalCount(), 1);
+
+            release.countDown();
+            assertEquals(running.get().getStatus(), 204);
+        }
+        finally {
+            lane.shutdown();
+        }
+    }
+
+    @Test
+    public void testHeldUntilClosed()
+            throws Exception
+    {
+        ExecutionLane lane = new ExecutionLane("test", new ExecutionLaneConfig());
+        List<Closeable> closeables = new ArrayList<>();
+
+        assertEquals(lane.execute(() -> Response.noContent().build(), closeables::add).getStatus(), 204);
+        assertEquals(lane.getActive(), 1);
+
+        closeables.get(0).close();
+        assertEquals(lane.getActive(), 0);
+
+        lane.execute(() -> Response.noContent().build(), closeable -> false);
+        assertEquals(lane.getActive(), 0, "released at once if the request is already closed");
+    }
+
+    @Test(timeOut = 10_000)
+    public void testRejectsBeyondQueue()
+            throws Exception
+    {
+        ExecutionLane lane = new ExecutionLane("test", new ExecutionLaneConfig()
+                .setMaxConcurrency(1)
+                .setMaxQueued(1)
+                .setQueueTimeout(new Duration(30, SECONDS)));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Response> running = executor.submit(() -> lane.execute(() -> {
+            started.countDown();
+            awaitUninterruptibly(release);
+            return Response.noContent().build();
+        }));
+        started.await();
+        Future<Response> queued = executor.submit(() -> lane.execute(() -> Response.noContent().build()));
+        while (lane.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+
+        try {
+            lane.execute(() -> Response.noContent().build());
+            fail("expected WebApplicationException");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(e.getResponse().getStatus(), 503);
+            assertEquals(e.getResponse().getHeaderString("Retry-After"), "1");
+        }
+        assertEquals(lane.getRejected().getTotalCount(), 1);
+
+        release.countDown();
+        assertEquals(running.get().getStatus(), 204);
+        assertEquals(queued.get().getStatus(), 204);
+        assertEquals(lane.getQueueDepth(), 0);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testTimesOutInQueue()
+            throws Exception
+    {
+        ExecutionLane lane = new ExecutionLane("test", new ExecutionLaneConfig()
+                .setMaxConcurrency(1)
+                .setQueueTimeout(new Duration(10, MILLISECONDS)));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<Response> running = executor.submit(() -> lane.execute(() -> {
+            started.countDown();
+            awaitUninterruptibly(release);
+            return Response.noContent().build();
+        }));
+        started.await();
+
+        try {
+            lane.execute(() -> Response.noContent().build());
+            fail("expected WebApplicationException");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(e.getResponse().getStatus(), 503);
+        }
+        assertEquals(lane.getTimedOut().getTotalCount(), 1);
+        assertEquals(lane.getQueueDepth(), 0);
+
+        release.countDown();
+        assertEquals(running.get().getStatus(), 204);
+    }
+}
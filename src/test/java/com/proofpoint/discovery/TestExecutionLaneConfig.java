@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.units.Duration;
+import org.testng.annotations.Test;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.Map;
+
+import static com.proofpoint.configuration.testing.ConfigAssertions.assertFullMapping;
+import static com.proofpoint.configuration.testing.ConfigAssertions.assertLegacyEquivalence;
+import static com.proofpoint.configuration.testing.ConfigAssertions.assertRecordedDefaults;
+import static com.proofpoint.configuration.testing.ConfigAssertions.recordDefaults;
+import static com.proofpoint.testing.ValidationAssertions.assertFailsValidation;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class TestExecutionLaneConfig
+{
+    @Test
+    public void testDefaults()
+    {
+        assertRecordedDefaults(recordDefaults(ExecutionLaneConfig.class)
+                .setMaxConcurrency(null)
+                .setMaxQueued(20)
+                .setQueueTimeout(new Duration(1, SECONDS)));
+    }
+
+    @Test
+    public void testExplicitPropertyMappings()
+    {
+        Map<String, String> properties = ImmutableMap.<String, String>builder()
+                .put("max-concurrency", "8")
+                .put("max-queued", "0")
+                .put("queue-timeout", "250ms")
+                .build();
+
+        ExecutionLaneConfig expected = new ExecutionLaneConfig()
+                .setMaxConcurrency(8)
+                .setMaxQueued(0)
+                .setQueueTimeout(new Duration(250, MILLISECONDS));
+
+        assertFullMapping(properties, expected);
+    }
+
+    @Test
+    public void testLegacyProperties()
+    {
+        assertLegacyEquivalence(ExecutionLaneConfig.class,
+                ImmutableMap.of());
+    }
+
+    @Test
+    public void testValidation()
+    {
+        assertFailsValidation(new ExecutionLaneConfig().setMaxConcurrency(0), "maxConcurrency", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new ExecutionLaneConfig().setMaxQueued(-1), "maxQueued", "must be greater than or equal to 0", Min.class);
+        assertFailsValidation(new ExecutionLaneConfig().setQueueTimeout(null), "queueTimeout", "may not be null", NotNull.class);
+    }
+}
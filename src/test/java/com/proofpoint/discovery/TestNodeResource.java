@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.proofpoint.node.NodeInfo;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.WebApplicationException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestNodeResource
+{
+    private final Id<Node> nodeId = Id.random();
+    private InitializationTracker initializationTracker;
+    private NodeResource resource;
+
+    @BeforeMethod
+    public void setup()
+    {
+        InMemoryDynamicStore dynamicStore = new InMemoryDynamicStore(new DiscoveryConfig(), new TestingTimeSupplier());
+        dynamicStore.put(nodeId, new DynamicAnnouncement("testing", "alpha", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111")))));
+        initializationTracker = new InitializationTracker();
+        resource = new NodeResource(dynamicStore, new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig()), new NodeInfo("testing"), initializationTracker);
+    }
+
+    @Test
+    public void testGetNode()
+    {
+        NodeServices nodeServices = resource.getNode(nodeId.toString());
+
+        assertEquals(nodeServices.getNodeId(), nodeId);
+        assertEquals(nodeServices.getServices().size(), 1);
+        assertEquals(nodeServices.getServices().get(0).getType(), "storage");
+    }
+
+    @Test
+    public void testGetNodes()
+    {
+        Id<Node> missingId = Id.random();
+
+        NodeBatch batch = resource.getNodes(ImmutableList.of(nodeId.toString(), missingId.toString(), nodeId.toString()));
+
+        assertEquals(batch.getEnvironment(), "testing");
+        assertEquals(batch.getNodes().size(), 1);
+        assertEquals(batch.getNodes().get(0).getNodeId(), nodeId);
+        assertEquals(batch.getMissing(), ImmutableList.of(missingId));
+    }
+
+    @Test
+    public void testErrors()
+    {
+        assertStatus(() -> resource.getNode(Id.random().toString()), 404);
+        assertStatus(() -> resource.getNode("not-a-uuid"), 400);
+        assertStatus(() -> resource.getNodes(ImmutableList.of("not-a-uuid")), 400);
+
+        initializationTracker.createTask();
+        assertStatus(() -> resource.getNode(nodeId.toString()), 503);
+    }
+
+    private static void assertStatus(Runnable request, int status)
+    {
+        try {
+            request.run();
+            fail("expected WebApplicationException");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(e.getResponse().getStatus(), status);
+        }
+    }
+}
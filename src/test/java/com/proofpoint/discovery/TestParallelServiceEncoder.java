@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.json.JsonCodec;
+import com.proofpoint.json.ObjectMapperProvider;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.proofpoint.discovery.ServiceProjection.allFields;
+import static com.proofpoint.discovery.ServiceProjection.parseServiceProjection;
+import static com.proofpoint.discovery.Services.services;
+import static com.proofpoint.json.JsonCodec.jsonCodec;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+public class TestParallelServiceEncoder
+{
+    private static final JsonCodec<Object> OBJECT_CODEC = jsonCodec(Object.class);
+
+    private ParallelServiceEncoder encoder;
+
+    @BeforeMethod
+    public void setup()
+    {
+        encoder = new ParallelServiceEncoder(new ObjectMapperProvider().get(), new DiscoveryConfig().setEncodingParallelism(3));
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown()
+    {
+        encoder.shutdown();
+    }
+
+    @Test
+    public void testMatchesServices()
+            throws IOException
+    {
+        List<Service> services = IntStream.range(0, 2_500)
+                .mapToObj(i -> new Service(Id.random(), Id.random(), "type" + (i % 7), "pool", "/location/" + i, ImmutableMap.of("http", "http://host" + i)))
+                .collect(Collectors.toList());
+
+        String expected = jsonCodec(Services.class).toJson(services("testing", services));
+
+        assertEquals(OBJECT_CODEC.fromJson(encode(services, allFields())), OBJECT_CODEC.fromJson(expected));
+    }
+
+    @Test
+    public void testProjection()
+            throws IOException
+    {
+        Service service = new Service(Id.random(), Id.random(), "storage", "pool", "/location", ImmutableMap.of("http", "http://localhost"));
+
+        assertEquals(OBJECT_CODEC.fromJson(encode(ImmutableList.of(service), parseServiceProjection("id,type"))), ImmutableMap.of(
+                "environment", "testing",
+                "services", ImmutableList.of(ImmutableMap.of("id", service.getId().toString(), "type", "storage"))));
+    }
+
+    @Test
+    public void testEmpty()
+            throws IOException
+    {
+        assertEquals(encode(ImmutableList.of(), allFields()), "{\"environment\":\"testing\",\"services\":[]}");
+    }
+
+    private String encode(List<Service> services, ServiceProjection projection)
+            throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        encoder.encode("testing", services.stream(), projection).write(output);
+        return new String(output.toByteArray(), UTF_8);
+    }
+}
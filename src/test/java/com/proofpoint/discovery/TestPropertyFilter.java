@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import static com.proofpoint.discovery.PropertyFilter.anyProperties;
+import static com.proofpoint.discovery.PropertyFilter.parsePropertyFilter;
+import static com.proofpoint.discovery.PropertyFilter.propertyFilter;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestPropertyFilter
+{
+    private static final Service SERVICE = new Service(Id.random(), Id.random(), "storage", "pool", "/location",
+            ImmutableMap.of("http", "http://localhost:1111", "zone", "us-west-1a"));
+
+    @Test
+    public void testParse()
+    {
+        assertEquals(parsePropertyFilter(ImmutableList.of("zone=us-west-1a", "url=http://host/?a=b"), ImmutableList.of("http=http:")),
+                propertyFilter(ImmutableMap.of("zone", "us-west-1a", "url", "http://host/?a=b"), ImmutableMap.of("http", "http:")));
+        assertEquals(parsePropertyFilter(ImmutableList.of("zone="), ImmutableList.of()), propertyFilter(ImmutableMap.of("zone", ""), ImmutableMap.of()));
+        assertSame(parsePropertyFilter(ImmutableList.of(), ImmutableList.of()), anyProperties());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Property filter is not of the form key=value: zone")
+    public void testParseMissingValue()
+    {
+        parsePropertyFilter(ImmutableList.of("zone"), ImmutableList.of());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testParseDuplicateKey()
+    {
+        parsePropertyFilter(ImmutableList.of("zone=a", "zone=b"), ImmutableList.of());
+    }
+
+    @Test
+    public void testMatches()
+    {
+        assertTrue(anyProperties().test(SERVICE));
+        assertTrue(propertyFilter(ImmutableMap.of("zone", "us-west-1a"), ImmutableMap.of()).test(SERVICE));
+        assertTrue(propertyFilter(ImmutableMap.of("zone", "us-west-1a"), ImmutableMap.of("http", "http://")).test(SERVICE));
+        assertFalse(propertyFilter(ImmutableMap.of("zone", "us-west-1b"), ImmutableMap.of()).test(SERVICE));
+        assertFalse(propertyFilter(ImmutableMap.of(), ImmutableMap.of("http", "https://")).test(SERVICE));
+        assertFalse(propertyFilter(ImmutableMap.of("version", "1"), ImmutableMap.of()).test(SERVICE));
+        assertFalse(propertyFilter(ImmutableMap.of(), ImmutableMap.of("version", "")).test(SERVICE));
+    }
+}
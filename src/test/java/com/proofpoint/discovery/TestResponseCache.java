@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.proofpoint.discovery.DiscoveryConfig.StringSet;
+import com.proofpoint.discovery.ResponseCache.CachedResponse;
+import com.proofpoint.json.ObjectMapperProvider;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import static com.proofpoint.discovery.ResponseCache.acceptsGzip;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestResponseCache
+{
+    private final ResponseCache cache = new ResponseCache(new ObjectMapperProvider().get(), new DiscoveryConfig());
+
+    @Test
+    public void testEncodedOncePerVersion()
+    {
+        AtomicInteger encodings = new AtomicInteger();
+        ImmutableList<String> query = ImmutableList.of("storage");
+
+        CachedResponse first = cache.get(query, () -> 1, () -> ImmutableMap.of("count", encodings.incrementAndGet()));
+        CachedResponse second = cache.get(query, () -> 1, () -> ImmutableMap.of("count", encodings.incrementAndGet()));
+        CachedResponse third = cache.get(query, () -> 2, () -> ImmutableMap.of("count", encodings.incrementAndGet()));
+
+        assertSame(second, first);
+        assertNotSame(third, first);
+        assertEquals(encodings.get(), 2);
+        assertNotSame(cache.get(ImmutableList.of("web"), () -> 1, () -> ImmutableMap.of("count", encodings.incrementAndGet())), first);
+    }
+
+    @Test
+    public void testNotKeptIfVersionChanged()
+    {
+        AtomicLong version = new AtomicLong(1);
+        ImmutableList<String> query = ImmutableList.of("storage");
+
+        CachedResponse first = cache.get(query, version::get, () -> {
+            version.incrementAndGet();
+            return ImmutableMap.of("key", "value");
+        });
+        version.set(1);
+        CachedResponse second = cache.get(query, version::get, () -> ImmutableMap.of("key", "value"));
+
+        assertNotSame(second, first);
+    }
+
+    @Test
+    public void testGzippedCopy()
+            throws IOException
+    {
+        CachedResponse response = cache.get(ImmutableList.of("storage"), () -> 1, () -> ImmutableMap.of("key", "value"));
+
+        assertEquals(new String(response.getBytes(), "UTF-8"), "{\"key\":\"value\"}");
+        assertEquals(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(response.getGzippedBytes()))), response.getBytes());
+    }
+
+    @Test
+    public void testAcceptsGzip()
+    {
+        assertTrue(acceptsGzip(ImmutableList.of("gzip")));
+        assertTrue(acceptsGzip(ImmutableList.of("deflate, GZIP;q=0.5")));
+        assertTrue(acceptsGzip(ImmutableList.of("deflate", "gzip ; q=1.0")));
+        assertTrue(acceptsGzip(ImmutableList.of("x-gzip")));
+        assertTrue(acceptsGzip(ImmutableList.of("*")));
+        assertTrue(acceptsGzip(ImmutableList.of("gzip;q=0.5, identity;q=0.5")));
+        assertTrue(acceptsGzip(ImmutableList.of("identity;q=0, *;q=0.1")));
+
+        assertFalse(acceptsGzip(null));
+        assertFalse(acceptsGzip(ImmutableList.of()));
+        assertFalse(acceptsGzip(ImmutableList.of("deflate")));
+        assertFalse(acceptsGzip(ImmutableList.of("identity")));
+        assertFalse(acceptsGzip(ImmutableList.of("gzip;q=0")));
+        assertFalse(acceptsGzip(ImmutableList.of("gzip;q=0.0")));
+        assertFalse(acceptsGzip(ImmutableList.of("gzip; q=0.000")));
+        assertFalse(acceptsGzip(ImmutableList.of("gzip;q=0, *")));
+        assertFalse(acceptsGzip(ImmutableList.of("*;q=0")));
+        assertFalse(acceptsGzip(ImmutableList.of("gzip;q=0.5, identity")));
+        assertFalse(acceptsGzip(ImmutableList.of("gzip;q=NaN")));
+        assertFalse(acceptsGzip(ImmutableList.of("gzip;q=2")));
+    }
+
+    @Test
+    public void testProxiedTypesNotCacheable()
+    {
+        ResponseCache proxyingCache = new ResponseCache(new ObjectMapperProvider().get(), new DiscoveryConfig()
+                .setProxyProxiedTypes(StringSet.of("storage"))
+                .setProxyEnvironment("upstream"));
+
+        assertTrue(cache.isCacheable("storage"));
+        assertTrue(cache.isCacheableForAllTypes());
+        assertFalse(proxyingCache.isCacheable("storage"));
+        assertTrue(proxyingCache.isCacheable("web"));
+        assertFalse(proxyingCache.isCacheableForAllTypes());
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.proofpoint.discovery;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Resources;
 import com.proofpoint.json.JsonCodec;
@@ -22,12 +23,17 @@ import org.testng.annotations.Test;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.proofpoint.testing.Assertions.assertNotEquals;
 import static com.proofpoint.testing.EquivalenceTester.equivalenceTester;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
 
 public class TestService
 {
@@ -136,4 +142,30 @@ public class TestService
     {
         new Service(Id.random(), Id.random(), "type", "type", "/location", null);
     }
+
+    @Test
+    public void testIsUnderLocation()
+    {
+        assertTrue(Service.isUnderLocation("/a/b/c", "/a/b"));
+        assertTrue(Service.isUnderLocation("/a/b/c", "/a/b/"));
+        assertTrue(Service.isUnderLocation("/a/b", "/a/b"));
+        assertTrue(Service.isUnderLocation("/a/b", "/"));
+        assertFalse(Service.isUnderLocation("/a/bc", "/a/b"));
+        assertFalse(Service.isUnderLocation("/a", "/a/b"));
+    }
+
+    @Test
+    public void testByProximityTo()
+    {
+        Service sameZone = new Service(Id.random(), Id.random(), "type", "pool", "/us/west/1a/rack1", ImmutableMap.of());
+        Service sameRegion = new Service(Id.random(), Id.random(), "type", "pool", "/us/west/1b", ImmutableMap.of());
+        Service prefixOnly = new Service(Id.random(), Id.random(), "type", "pool", "/us/westish", ImmutableMap.of());
+        Service elsewhere = new Service(Id.random(), Id.random(), "type", "pool", "/eu/central", ImmutableMap.of());
+
+        List<Service> sorted = Stream.of(elsewhere, prefixOnly, sameRegion, sameZone)
+                .sorted(Service.byProximityTo("/us/west/1a"))
+                .collect(Collectors.toList());
+
+        assertEquals(sorted, ImmutableList.of(sameZone, sameRegion, prefixOnly, elsewhere));
+    }
 }
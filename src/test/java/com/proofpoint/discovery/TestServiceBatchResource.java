@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.json.ObjectMapperProvider;
+import com.proofpoint.node.NodeInfo;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.ImmutableSet.of;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+public class TestServiceBatchResource
+{
+    private static final HttpHeaders SMILE_HEADERS = headersAccepting(new MediaType("application", "x-jackson-smile"));
+
+    private final ObjectMapper objectMapper = new ObjectMapperProvider().get();
+    private InitializationTracker initializationTracker;
+    private ChangeFeed changeFeed;
+    private ServiceBatchResource resource;
+
+    @BeforeMethod
+    public void setup()
+    {
+        InMemoryDynamicStore dynamicStore = new InMemoryDynamicStore(new DiscoveryConfig(), new TestingTimeSupplier());
+        dynamicStore.put(Id.random(), new DynamicAnnouncement("testing", "alpha", "/a/b/c", of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("key", "1")),
+                new DynamicServiceAnnouncement(Id.random(), "web", ImmutableMap.of("key", "2")))));
+        dynamicStore.put(Id.random(), new DynamicAnnouncement("testing", "beta", "/x/y/z", of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("key", "3")))));
+
+        ProxyStore proxyStore = mock(ProxyStore.class);
+        when(proxyStore.get(anyString())).thenReturn(null);
+        when(proxyStore.get(anyString(), anyString())).thenReturn(null);
+        ConfigStore configStore = mock(ConfigStore.class);
+        when(configStore.get(anyString())).thenAnswer(invocation -> Stream.of());
+        when(configStore.get(anyString(), anyString())).thenAnswer(invocation -> Stream.of());
+
+        initializationTracker = new InitializationTracker();
+        changeFeed = mock(ChangeFeed.class);
+        resource = new ServiceBatchResource(dynamicStore, configStore, proxyStore, changeFeed,
+                new ResponseCache(new ObjectMapperProvider().get(), new DiscoveryConfig()),
+                new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig()), new NodeInfo("testing"), initializationTracker);
+    }
+
+    @Test
+    public void testSections()
+    {
+        ServiceBatch batch = getServices(ImmutableList.of("storage", "web/alpha", "storage/gamma", "storage"), ImmutableList.of());
+
+        assertEquals(batch.getEnvironment(), "testing");
+        assertEquals(batch.getSections().size(), 3);
+        assertSection(batch.getSections().get(0), "storage", null, 2);
+        assertSection(batch.getSections().get(1), "web", "alpha", 1);
+        assertSection(batch.getSections().get(2), "storage", "gamma", 0);
+    }
+
+    @Test
+    public void testIfNoneMatch()
+    {
+        ServiceBatch batch = getServices(ImmutableList.of("storage", "web"), ImmutableList.of());
+        String storageEtag = batch.getSections().get(0).getEtag();
+
+        batch = getServices(ImmutableList.of("storage", "web"), ImmutableList.of(storageEtag));
+
+        assertEquals(batch.getSections().get(0).getEtag(), storageEtag);
+        assertNull(batch.getSections().get(0).getServices());
+        assertEquals(batch.getSections().get(1).getServices().size(), 1);
+    }
+
+    @Test
+    public void testSectionsCachedPerVersion()
+    {
+        when(changeFeed.getLastSequence()).thenReturn(5L);
+        ServiceSection storage = getServices(ImmutableList.of("storage", "web"), ImmutableList.of()).getSections().get(0);
+
+        assertSame(getServices(ImmutableList.of("web", "storage"), ImmutableList.of()).getSections().get(1), storage);
+        ServiceSection unmodified = getServices(ImmutableList.of("storage"), ImmutableList.of(storage.getEtag())).getSections().get(0);
+        assertEquals(unmodified.getEtag(), storage.getEtag());
+        assertNull(unmodified.getServices());
+
+        when(changeFeed.getLastSequence()).thenReturn(6L);
+        ServiceSection next = getServices(ImmutableList.of("storage"), ImmutableList.of()).getSections().get(0);
+        assertNotSame(next, storage);
+        assertEquals(next.getEtag(), storage.getEtag());
+    }
+
+    @Test
+    public void testInvalidType()
+    {
+        for (String type : ImmutableList.of("", "/alpha", "storage/")) {
+            try {
+                getServices(ImmutableList.of(type), ImmutableList.of());
+                fail("expected WebApplicationException");
+            }
+            catch (WebApplicationException e) {
+                assertEquals(e.getResponse().getStatus(), 400, type);
+            }
+        }
+    }
+
+    @Test
+    public void testInitializing()
+    {
+        initializationTracker.createTask();
+        try {
+            getServices(ImmutableList.of("storage"), ImmutableList.of());
+            fail("expected WebApplicationException");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(e.getResponse().getStatus(), 503);
+        }
+    }
+
+    @Test
+    public void testCachedJson()
+            throws Exception
+    {
+        when(changeFeed.getLastSequence()).thenReturn(5L);
+        HttpHeaders jsonHeaders = headersAccepting(MediaType.APPLICATION_JSON_TYPE);
+
+        Response response = resource.getServices(ImmutableList.of("storage", "web"), ImmutableList.of(), jsonHeaders);
+        byte[] bytes = (byte[]) response.getEntity();
+        assertSame(resource.getServices(ImmutableList.of("storage", "web", "storage"), ImmutableList.of(), jsonHeaders).getEntity(), bytes);
+        assertSame(resource.getServices(ImmutableList.of("storage", "web"), ImmutableList.of("unknown"), jsonHeaders).getEntity(), bytes);
+
+        JsonNode batch = objectMapper.readTree(bytes);
+        assertEquals(batch.get("environment").asText(), "testing");
+        assertEquals(batch.get("sections").size(), 2);
+        assertEquals(batch.get("sections").get(0).get("type").asText(), "storage");
+        assertEquals(batch.get("sections").get(0).get("services").size(), 2);
+
+        when(changeFeed.getLastSequence()).thenReturn(6L);
+        assertNotSame(resource.getServices(ImmutableList.of("storage", "web"), ImmutableList.of(), jsonHeaders).getEntity(), bytes);
+    }
+
+    private ServiceBatch getServices(List<String> types, List<String> etags)
+    {
+        return (ServiceBatch) resource.getServices(types, etags, SMILE_HEADERS).getEntity();
+    }
+
+    private static HttpHeaders headersAccepting(MediaType mediaType)
+    {
+        HttpHeaders headers = mock(HttpHeaders.class);
+        when(headers.getAcceptableMediaTypes()).thenReturn(ImmutableList.of(mediaType));
+        return headers;
+    }
+
+    private static void assertSection(ServiceSection section, String type, String pool, int size)
+    {
+        assertEquals(section.getType(), type);
+        assertEquals(section.getPool(), pool);
+        assertEquals(section.getServices().size(), size);
+        for (Service service : section.getServices()) {
+            assertEquals(service.getType(), type);
+        }
+    }
+}
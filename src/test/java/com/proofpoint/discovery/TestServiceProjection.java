@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.json.JsonCodec;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.proofpoint.discovery.ProjectedServices.projectedServices;
+import static com.proofpoint.discovery.ServiceProjection.allFields;
+import static com.proofpoint.discovery.ServiceProjection.parseServiceProjection;
+import static com.proofpoint.discovery.Services.services;
+import static com.proofpoint.json.JsonCodec.jsonCodec;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+public class TestServiceProjection
+{
+    private static final JsonCodec<Object> OBJECT_CODEC = jsonCodec(Object.class);
+    private static final Service SERVICE = new Service(Id.random(), Id.random(), "storage", "pool", "/location",
+            ImmutableMap.of("http", "http://localhost:1111", "zone", "us-west-1a"));
+
+    @Test
+    public void testParse()
+    {
+        assertSame(parseServiceProjection("id,nodeId,type,pool,location,properties"), allFields());
+        assertSame(parseServiceProjection("properties.http, properties , location,pool,type,nodeId,id"), allFields());
+        assertFalse(parseServiceProjection("id,nodeId,type,pool,location,properties.http").isAllFields());
+        assertEquals(parseServiceProjection("id,properties.http"), parseServiceProjection("properties.http,id,"));
+        assertNotEquals(parseServiceProjection("id,properties.http"), parseServiceProjection("id,properties.zone"));
+        assertNotEquals(parseServiceProjection("id,properties"), parseServiceProjection("id,properties.zone"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "Unknown service field: url")
+    public void testParseUnknownField()
+    {
+        parseServiceProjection("id,url");
+    }
+
+    @Test
+    public void testParseEmpty()
+    {
+        for (String fields : ImmutableList.of("", ",", " , ")) {
+            try {
+                parseServiceProjection(fields);
+                fail("expected IllegalArgumentException");
+            }
+            catch (IllegalArgumentException e) {
+                assertEquals(e.getMessage(), "No service fields selected");
+            }
+        }
+    }
+
+    @Test
+    public void testAllFieldsMatchesServices()
+    {
+        Service configService = new Service(Id.random(), null, "web", "general", "/location", ImmutableMap.of());
+        List<Service> services = ImmutableList.of(SERVICE, configService);
+
+        String expected = jsonCodec(Services.class).toJson(services("testing", services));
+        String actual = jsonCodec(ProjectedServices.class).toJson(projectedServices("testing", services.stream()::iterator, allFields()));
+        assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testProjection()
+    {
+        String json = jsonCodec(ProjectedServices.class).toJson(projectedServices("testing", ImmutableList.of(SERVICE),
+                parseServiceProjection("id,location,properties.zone")));
+        assertEquals(OBJECT_CODEC.fromJson(json), ImmutableMap.of(
+                "environment", "testing",
+                "services", ImmutableList.of(ImmutableMap.of(
+                        "id", SERVICE.getId().toString(),
+                        "location", "/location",
+                        "properties", ImmutableMap.of("zone", "us-west-1a")))));
+    }
+}
@@ -29,10 +29,12 @@ import com.proofpoint.http.server.testing.TestingHttpServer;
 import com.proofpoint.http.server.testing.TestingHttpServerModule;
 import com.proofpoint.json.JsonCodec;
 import com.proofpoint.json.JsonModule;
+import com.proofpoint.json.ObjectMapperProvider;
 import com.proofpoint.node.NodeInfo;
 import com.proofpoint.node.testing.TestingNodeModule;
 import com.proofpoint.reporting.ReportingModule;
 import com.proofpoint.testing.Closeables;
+import com.proofpoint.units.DataSize;
 import org.mockito.Mock;
 import org.mockito.stubbing.Answer;
 import org.testng.annotations.AfterClass;
@@ -42,11 +44,17 @@ import org.testng.annotations.Test;
 import org.weakref.jmx.testing.TestingMBeanModule;
 
 import java.net.URI;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 import static com.google.common.collect.ImmutableSet.of;
 import static com.proofpoint.bootstrap.Bootstrap.bootstrapApplication;
+import static com.proofpoint.discovery.ServiceChange.Kind.ADDED;
+import static com.proofpoint.discovery.ServiceChange.Kind.REMOVED;
+import static com.proofpoint.discovery.ServiceChange.Kind.UPDATED;
+import static com.proofpoint.discovery.ServiceChange.serviceChange;
+import static com.proofpoint.discovery.ServiceChanges.serviceChanges;
 import static com.proofpoint.http.client.JsonResponseHandler.createJsonResponseHandler;
 import static com.proofpoint.http.client.Request.Builder.prepareGet;
 import static com.proofpoint.http.client.StatusResponseHandler.createStatusResponseHandler;
@@ -54,14 +62,18 @@ import static com.proofpoint.jaxrs.JaxrsBinder.jaxrsBinder;
 import static com.proofpoint.jaxrs.JaxrsModule.explicitJaxrsModule;
 import static com.proofpoint.json.JsonCodec.mapJsonCodec;
 import static com.proofpoint.testing.Assertions.assertEqualsIgnoreOrder;
+import static com.proofpoint.units.DataSize.Unit.BYTE;
 import static javax.ws.rs.core.Response.Status.OK;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 @SuppressWarnings("unchecked")
 public class TestServiceResource
@@ -78,6 +90,10 @@ public class TestServiceResource
     private ProxyStore proxyStore;
     @Mock
     private InitializationTracker initializationTracker;
+    @Mock
+    private ChangeFeed changeFeed;
+    @Mock
+    private ServiceCounts serviceCounts;
     private Map<String, Object> redStorageRepresentation;
     private Map<String, Object> redWebRepresentation;
     private Map<String, Object> greenStorageRepresentation;
@@ -113,7 +129,12 @@ public class TestServiceResource
         greenStorageRepresentation = toServiceRepresentation(greenNodeId, green, greenStorage);
         blueStorageRepresentation = toServiceRepresentation(blueNodeId, blue, blueStorage);
 
-        ServiceResource resource = new ServiceResource(dynamicStore, configStore, proxyStore, new NodeInfo("testing"), initializationTracker);
+        ServiceResource resource = new ServiceResource(dynamicStore, configStore, proxyStore, changeFeed,
+                new ParallelServiceEncoder(new ObjectMapperProvider().get(), new DiscoveryConfig().setEncodingParallelism(2)),
+                new ResponseCache(new ObjectMapperProvider().get(), new DiscoveryConfig().setResponseCacheMaxSize(new DataSize(0, BYTE))),
+                new CacheMaxAgePolicy(serviceCounts, new DiscoveryConfig()),
+                new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig()),
+                new NodeInfo("testing"), initializationTracker);
 
         Bootstrap app = bootstrapApplication("test-application")
                 .doNotInitializeLogging()
@@ -407,6 +428,321 @@ public class TestServiceResource
         ));
     }
 
+    @Test
+    public void testGetByTypeSince()
+    {
+        Service added = new Service(Id.random(), Id.random(), "storage", "alpha", "loc", ImmutableMap.of("key", "5"));
+        Service updated = new Service(Id.random(), Id.random(), "storage", "alpha", "loc", ImmutableMap.of("key", "6"));
+        Service removed = new Service(Id.random(), Id.random(), "storage", "beta", "loc", ImmutableMap.of("key", "7"));
+        Service web = new Service(Id.random(), Id.random(), "web", "alpha", "loc", ImmutableMap.of("key", "8"));
+        when(changeFeed.getChangesSince(5)).thenReturn(serviceChanges(7, ImmutableList.of(
+                serviceChange(6, ADDED, added),
+                serviceChange(6, ADDED, removed),
+                serviceChange(6, ADDED, web),
+                serviceChange(7, UPDATED, updated),
+                serviceChange(7, REMOVED, removed))));
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?since=5")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual, ImmutableMap.of(
+                "environment", "testing",
+                "version", 7,
+                "full", false,
+                "services", ImmutableList.of(
+                        toServiceRepresentation(added),
+                        toServiceRepresentation(updated)),
+                "removed", ImmutableList.of(removed.getId().toString())));
+    }
+
+    @Test
+    public void testGetByPoolSinceMovedOut()
+    {
+        Service before = new Service(Id.random(), Id.random(), "storage", "alpha", "loc", ImmutableMap.of("key", "5"));
+        Service after = new Service(before.getId(), before.getNodeId(), "storage", "beta", "loc", ImmutableMap.of("key", "5"));
+        when(changeFeed.getChangesSince(5)).thenReturn(serviceChanges(6, ImmutableList.of(
+                serviceChange(6, UPDATED, after, before))));
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage/alpha?since=5")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual.get("services"), ImmutableList.of());
+        assertEquals(actual.get("removed"), ImmutableList.of(before.getId().toString()));
+
+        actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage/beta?since=5")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual.get("services"), ImmutableList.of(toServiceRepresentation(after)));
+        assertEquals(actual.get("removed"), ImmutableList.of());
+    }
+
+    @Test
+    public void testGetByTypeSinceTooOld()
+    {
+        when(proxyStore.get(any(String.class))).thenReturn(null);
+        when(configStore.get(any(String.class))).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+        when(changeFeed.getLastSequence()).thenReturn(9L);
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?since=0")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual.get("version"), 9);
+        assertEquals(actual.get("full"), true);
+        assertEquals(actual.get("removed"), ImmutableList.of());
+        assertEqualsIgnoreOrder((Iterable<?>) actual.get("services"), ImmutableSet.of(
+                redStorageRepresentation,
+                greenStorageRepresentation,
+                blueStorageRepresentation
+        ));
+    }
+
+    @Test
+    public void testProxyGetByTypeSince()
+    {
+        Service proxyStorageService = new Service(Id.random(), Id.random(), "storage", "general", "loc", ImmutableMap.of("key", "5"));
+        when(proxyStore.isProxied("storage")).thenReturn(true);
+        when(proxyStore.get("storage")).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of(proxyStorageService));
+        when(changeFeed.getLastSequence()).thenReturn(9L);
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?since=5")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual, ImmutableMap.of(
+                "environment", "testing",
+                "version", 9,
+                "full", true,
+                "services", ImmutableList.of(
+                        toServiceRepresentation(proxyStorageService)),
+                "removed", ImmutableList.of()));
+        verify(changeFeed, never()).getChangesSince(anyLong());
+    }
+
+    @Test
+    public void testGetByTypeAndPoolSubset()
+    {
+        when(proxyStore.get(any(String.class), any(String.class))).thenReturn(null);
+        when(configStore.get(any(String.class), any(String.class))).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage/alpha?clientId=client&subsetSize=1")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        List<Object> services = (List<Object>) actual.get("services");
+        assertEquals(services.size(), 1);
+        assertTrue(ImmutableSet.of(redStorageRepresentation, greenStorageRepresentation).contains(services.get(0)));
+
+        Map<String, Object> again = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage/alpha?clientId=client&subsetSize=1")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(again, actual);
+
+        actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage/alpha?clientId=client&subsetSize=5")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEqualsIgnoreOrder((Iterable<?>) actual.get("services"), ImmutableSet.of(
+                redStorageRepresentation,
+                greenStorageRepresentation
+        ));
+    }
+
+    @Test
+    public void testGetByTypeWithPropertyFilter()
+    {
+        when(proxyStore.get(any(String.class))).thenReturn(null);
+        when(configStore.get(any(String.class))).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?property=key=3")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual, ImmutableMap.of(
+                "environment", "testing",
+                "services", ImmutableList.of(
+                        greenStorageRepresentation
+                )));
+
+        actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage/alpha?propertyPrefix=key=1")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual, ImmutableMap.of(
+                "environment", "testing",
+                "services", ImmutableList.of(
+                        redStorageRepresentation
+                )));
+
+        StatusResponse response = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?property=key")).build(),
+                createStatusResponseHandler());
+        assertEquals(response.getStatusCode(), 400);
+    }
+
+    @Test
+    public void testGetAllWithPropertyFilter()
+    {
+        when(proxyStore.filterAndGetAll(any(Iterable.class))).thenAnswer(invocationOnMock -> invocationOnMock.getArguments()[0]);
+        when(configStore.getAll()).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service?property=key=2")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual, ImmutableMap.of(
+                "environment", "testing",
+                "services", ImmutableList.of(
+                        redWebRepresentation
+                )));
+    }
+
+    @Test
+    public void testGetByTypeWithFields()
+    {
+        when(proxyStore.get(any(String.class))).thenReturn(null);
+        when(configStore.get(any(String.class))).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?property=key=3&fields=id,properties.key")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual, ImmutableMap.of(
+                "environment", "testing",
+                "services", ImmutableList.of(ImmutableMap.of(
+                        "id", greenStorageRepresentation.get("id"),
+                        "properties", ImmutableMap.of("key", "3")
+                ))));
+
+        for (String query : ImmutableList.of("fields=id,url", "fields=id&since=5", "fields=", "fields=,")) {
+            StatusResponse response = client.execute(
+                    prepareGet().setUri(uriFor("/v1/service/storage?" + query)).build(),
+                    createStatusResponseHandler());
+            assertEquals(response.getStatusCode(), 400, query);
+        }
+    }
+
+    @Test
+    public void testCacheControlFollowsChangeRate()
+    {
+        when(proxyStore.get(any(String.class))).thenReturn(null);
+        when(configStore.get(any(String.class))).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+        when(proxyStore.get(any(String.class), any(String.class))).thenReturn(null);
+        when(configStore.get(any(String.class), any(String.class))).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+        when(serviceCounts.getChangeRate("storage", null)).thenReturn(1.0);
+        when(serviceCounts.getChangeRate("web", null)).thenReturn(0.01);
+
+        StatusResponse response = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage")).build(),
+                createStatusResponseHandler());
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getHeader("Cache-Control"), "max-age=1");
+
+        response = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/web")).build(),
+                createStatusResponseHandler());
+        assertEquals(response.getHeader("Cache-Control"), "max-age=10");
+
+        response = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage/alpha")).build(),
+                createStatusResponseHandler());
+        assertEquals(response.getHeader("Cache-Control"), "max-age=30");
+    }
+
+    @Test
+    public void testVary()
+    {
+        when(proxyStore.get(any(String.class))).thenReturn(null);
+        when(configStore.get(any(String.class))).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+        when(proxyStore.filterAndGetAll(any(Iterable.class))).thenAnswer(invocationOnMock -> invocationOnMock.getArguments()[0]);
+        when(configStore.getAll()).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+
+        for (String path : ImmutableList.of("/v1/service/storage", "/v1/service/storage?since=0", "/v1/service?parallel=true")) {
+            StatusResponse response = client.execute(
+                    prepareGet().setUri(uriFor(path)).build(),
+                    createStatusResponseHandler());
+            assertEquals(response.getStatusCode(), 200, path);
+            assertEquals(response.getHeader("Vary"), "Accept, Accept-Encoding", path);
+        }
+    }
+
+    @Test
+    public void testGetByTypeUnderLocation()
+    {
+        when(proxyStore.get(any(String.class))).thenReturn(null);
+        when(configStore.get(any(String.class))).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?locationPrefix=/a/b")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEqualsIgnoreOrder((Iterable<?>) actual.get("services"), ImmutableSet.of(
+                redStorageRepresentation,
+                blueStorageRepresentation
+        ));
+
+        actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?near=/x/y")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(((List<?>) actual.get("services")).get(0), greenStorageRepresentation);
+
+        StatusResponse response = client.execute(
+                prepareGet().setUri(uriFor("/v1/service/storage?near=/x/y&since=5")).build(),
+                createStatusResponseHandler());
+        assertEquals(response.getStatusCode(), 400);
+    }
+
+    @Test
+    public void testGetAllByTypePattern()
+    {
+        when(proxyStore.filterAndGetAll(any(Iterable.class))).thenAnswer(invocationOnMock -> invocationOnMock.getArguments()[0]);
+        when(configStore.getAll()).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service?typePattern=w*")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual, ImmutableMap.of(
+                "environment", "testing",
+                "services", ImmutableList.of(
+                        redWebRepresentation
+                )));
+
+        actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service?typePattern=*e")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEqualsIgnoreOrder((Iterable<?>) actual.get("services"), ImmutableSet.of(
+                redStorageRepresentation,
+                greenStorageRepresentation,
+                blueStorageRepresentation
+        ));
+    }
+
+    @Test
+    public void testGetAllParallel()
+    {
+        when(proxyStore.filterAndGetAll(any(Iterable.class))).thenAnswer(invocationOnMock -> invocationOnMock.getArguments()[0]);
+        when(configStore.getAll()).thenAnswer((Answer<Stream<Service>>) invocation -> Stream.of());
+
+        Map<String, Object> actual = client.execute(
+                prepareGet().setUri(uriFor("/v1/service?parallel=true")).build(),
+                createJsonResponseHandler(mapCodec, OK.getStatusCode()));
+        assertEquals(actual.keySet(), ImmutableSet.of("environment", "services"));
+        assertEquals(actual.get("environment"), "testing");
+        assertEqualsIgnoreOrder((Iterable<?>) actual.get("services"), ImmutableSet.of(
+                redStorageRepresentation,
+                redWebRepresentation,
+                greenStorageRepresentation,
+                blueStorageRepresentation
+        ));
+
+        StatusResponse response = client.execute(
+                prepareGet().setUri(uriFor("/v1/service?parallel=true&since=5")).build(),
+                createStatusResponseHandler());
+        assertEquals(response.getStatusCode(), 400);
+    }
+
+    @Test
+    public void testInvalidSubset()
+    {
+        for (String query : ImmutableList.of("clientId=client", "subsetSize=1", "clientId=client&subsetSize=0", "clientId=client&subsetSize=1&since=5")) {
+            StatusResponse response = client.execute(
+                    prepareGet().setUri(uriFor("/v1/service/storage?" + query)).build(),
+                    createStatusResponseHandler());
+            assertEquals(response.getStatusCode(), 400, query);
+        }
+    }
+
     @Test
     public void testGetByTypeInitializationPending()
     {
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.proofpoint.discovery.store.RealTimeSupplier;
+import com.proofpoint.node.NodeInfo;
+import org.glassfish.jersey.server.CloseableService;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.proofpoint.discovery.ServiceChange.Kind.ADDED;
+import static com.proofpoint.discovery.ServiceChange.Kind.REMOVED;
+import static com.proofpoint.discovery.ServiceChange.Kind.UPDATED;
+import static com.proofpoint.discovery.ServiceChange.serviceChange;
+import static com.proofpoint.discovery.ServiceChanges.serviceChanges;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestServiceStreamResource
+{
+    private static final Service STORAGE_SERVICE = new Service(Id.random(), Id.random(), "storage", "alpha", "/a/b", ImmutableMap.of("http", "http://localhost:1111"));
+    private static final Service WEB_SERVICE = new Service(Id.random(), Id.random(), "web", "alpha", "/a/c", ImmutableMap.of("http", "http://localhost:2222"));
+
+    // a request that has already completed, so the stream's place in the lane is released at once
+    private static final CloseableService CLOSED = closeable -> false;
+
+    private InMemoryDynamicStore dynamicStore;
+    private ChangeFeed changeFeed;
+    private ProxyStore proxyStore;
+    private ServiceStreamResource resource;
+
+    @BeforeMethod
+    public void setup()
+    {
+        dynamicStore = new InMemoryDynamicStore(new DiscoveryConfig(), new RealTimeSupplier());
+        changeFeed = mock(ChangeFeed.class);
+        proxyStore = mock(ProxyStore.class);
+        resource = new ServiceStreamResource(dynamicStore,
+                new ConfigStore(new ConfigStoreConfig()),
+                proxyStore,
+                changeFeed,
+                new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig()
+                        .setMaxConcurrency(1)
+                        .setMaxQueued(0)),
+                new NodeInfo("testing"),
+                new InitializationTracker());
+    }
+
+    @Test
+    public void testSnapshotThenChanges()
+            throws Exception
+    {
+        dynamicStore.put(Id.random(), new DynamicAnnouncement("testing", "alpha", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:3333")))));
+        when(changeFeed.getLastSequence()).thenReturn(10L);
+        when(changeFeed.getChangesSince(10)).thenReturn(serviceChanges(12, ImmutableList.of(
+                serviceChange(11, ADDED, STORAGE_SERVICE),
+                serviceChange(12, ADDED, WEB_SERVICE))));
+
+        String events = write(resource.streamTypeServices("storage", null, CLOSED));
+
+        assertTrue(events.startsWith("event: snapshot\nid: 10\ndata: "), events);
+        assertTrue(events.contains("http://localhost:3333"), events);
+        assertTrue(events.contains("event: added\nid: 12\ndata: "), events);
+        assertTrue(events.contains(STORAGE_SERVICE.getId().toString()), events);
+        assertFalse(events.contains(WEB_SERVICE.getId().toString()), events);
+        assertTrue(events.endsWith("event: resync\ndata: {}\n\n"), events);
+    }
+
+    @Test
+    public void testResume()
+            throws Exception
+    {
+        when(changeFeed.getChangesSince(11)).thenReturn(serviceChanges(12, ImmutableList.of(
+                serviceChange(12, REMOVED, STORAGE_SERVICE))));
+
+        String events = write(resource.streamAllServices("11", CLOSED));
+
+        assertTrue(events.startsWith("event: removed\nid: 12\ndata: "), events);
+        assertFalse(events.contains("event: snapshot"), events);
+    }
+
+    @Test
+    public void testMovedOutIsRemoved()
+            throws Exception
+    {
+        Service moved = new Service(STORAGE_SERVICE.getId(), STORAGE_SERVICE.getNodeId(), "storage", "beta", "/a/b", STORAGE_SERVICE.getProperties());
+        when(changeFeed.getChangesSince(11)).thenReturn(serviceChanges(12, ImmutableList.of(
+                serviceChange(12, UPDATED, moved, STORAGE_SERVICE))));
+
+        String events = write(resource.streamServices("storage", "alpha", "11", CLOSED));
+
+        assertTrue(events.startsWith("event: removed\nid: 12\ndata: "), events);
+        assertFalse(events.contains("beta"), events);
+    }
+
+    @Test
+    public void testResumeAgedOut()
+            throws Exception
+    {
+        when(changeFeed.getLastSequence()).thenReturn(20L);
+
+        String events = write(resource.streamServices("storage", "alpha", "11", CLOSED));
+
+        assertTrue(events.startsWith("event: snapshot\nid: 20\n"), events);
+    }
+
+    @Test
+    public void testKeepAlive()
+            throws Exception
+    {
+        when(changeFeed.getLastSequence()).thenReturn(10L);
+        when(changeFeed.getChangesSince(10)).thenReturn(serviceChanges(10, ImmutableList.of()), null);
+
+        String events = write(resource.streamTypeServices("storage", null, CLOSED));
+
+        assertTrue(events.contains("\n\n: keep-alive\n\nevent: resync\n"), events);
+    }
+
+    @Test
+    public void testStreamLimit()
+            throws Exception
+    {
+        List<Closeable> closeables = new ArrayList<>();
+        resource.streamTypeServices("storage", null, closeables::add);
+
+        try {
+            resource.streamTypeServices("web", null, closeables::add);
+            fail("expected WebApplicationException");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(e.getResponse().getStatus(), 503);
+        }
+
+        closeables.get(0).close();
+        resource.streamTypeServices("web", null, closeables::add);
+    }
+
+    @Test
+    public void testProxiedTypeRejected()
+    {
+        when(proxyStore.isProxied("storage")).thenReturn(true);
+        when(proxyStore.hasProxiedTypes()).thenReturn(true);
+
+        for (Runnable stream : ImmutableList.<Runnable>of(
+                () -> resource.streamServices("storage", "alpha", null, CLOSED),
+                () -> resource.streamTypeServices("storage", null, CLOSED),
+                () -> resource.streamAllServices(null, CLOSED))) {
+            try {
+                stream.run();
+                fail("expected WebApplicationException");
+            }
+            catch (WebApplicationException e) {
+                assertEquals(e.getResponse().getStatus(), 400);
+            }
+        }
+        resource.streamTypeServices("web", null, CLOSED);
+    }
+
+    private static String write(StreamingOutput output)
+            throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        output.write(out);
+        return new String(out.toByteArray(), UTF_8);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.proofpoint.discovery.ServiceSubset.selectSubset;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestServiceSubset
+{
+    private static final List<Service> SERVICES = createServices(100);
+
+    @Test
+    public void testSize()
+    {
+        assertEquals(selectSubset(SERVICES.stream(), "client", 10).size(), 10);
+        assertEquals(selectSubset(SERVICES.subList(0, 5).stream(), "client", 10).size(), 5);
+    }
+
+    @Test
+    public void testStable()
+    {
+        Set<Service> subset = ImmutableSet.copyOf(selectSubset(SERVICES.stream(), "client", 10));
+
+        assertEquals(ImmutableSet.copyOf(selectSubset(ImmutableList.copyOf(SERVICES).reverse().stream(), "client", 10)), subset);
+    }
+
+    @Test
+    public void testMinimalChange()
+    {
+        for (int i = 0; i < 50; i++) {
+            String clientId = "client-" + i;
+            Set<Service> before = ImmutableSet.copyOf(selectSubset(SERVICES.stream(), clientId, 10));
+
+            List<Service> withNewService = new ArrayList<>(SERVICES);
+            withNewService.addAll(createServices(1));
+            Set<Service> after = ImmutableSet.copyOf(selectSubset(withNewService.stream(), clientId, 10));
+            assertTrue(Sets.difference(before, after).size() <= 1);
+
+            List<Service> withoutService = new ArrayList<>(SERVICES);
+            Service removed = before.iterator().next();
+            withoutService.remove(removed);
+            after = ImmutableSet.copyOf(selectSubset(withoutService.stream(), clientId, 10));
+            assertEquals(Sets.difference(before, after), ImmutableSet.of(removed));
+        }
+    }
+
+    @Test
+    public void testEvenlyDistributed()
+    {
+        Map<Service, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            for (Service service : selectSubset(SERVICES.stream(), "client-" + i, 10)) {
+                counts.merge(service, 1, Integer::sum);
+            }
+        }
+
+        // each service is expected in 100 of the 1000 subsets
+        assertEquals(counts.size(), SERVICES.size());
+        for (int count : counts.values()) {
+            assertTrue(count > 50 && count < 150, "count " + count);
+        }
+    }
+
+    private static List<Service> createServices(int count)
+    {
+        ImmutableList.Builder<Service> builder = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            builder.add(new Service(Id.random(), Id.random(), "storage", "alpha", "/location", ImmutableMap.of("http", "http://127.0.0." + i)));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import com.google.common.collect.ImmutableList;
+import com.proofpoint.node.NodeInfo;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.WebApplicationException;
+
+import static com.proofpoint.discovery.PoolSummary.poolSummary;
+import static com.proofpoint.discovery.ServiceSummary.serviceSummary;
+import static com.proofpoint.discovery.TypeSummary.typeSummary;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestServiceSummaryResource
+{
+    private ServiceCounts serviceCounts;
+    private InitializationTracker initializationTracker;
+    private ServiceSummaryResource resource;
+
+    @BeforeMethod
+    public void setup()
+    {
+        serviceCounts = mock(ServiceCounts.class);
+        initializationTracker = new InitializationTracker();
+        resource = new ServiceSummaryResource(serviceCounts, new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig(), new ExecutionLaneConfig()), new NodeInfo("testing"), initializationTracker);
+    }
+
+    @Test
+    public void testSummary()
+    {
+        TypeSummary storage = typeSummary("storage", ImmutableList.of(
+                poolSummary("alpha", 2, 1_000, 10),
+                poolSummary("beta", 3, 2_000, 8)));
+        when(serviceCounts.getTypeSummaries()).thenReturn(ImmutableList.of(storage));
+
+        assertEquals(resource.getSummary(), serviceSummary("testing", ImmutableList.of(storage)));
+        assertEquals(storage.getInstances(), 5);
+        assertEquals(storage.getLastChanged(), 2_000);
+        assertEquals(storage.getVersion(), 10);
+    }
+
+    @Test
+    public void testInitializing()
+    {
+        initializationTracker.createTask();
+        try {
+            resource.getSummary();
+            fail("expected WebApplicationException");
+        }
+        catch (WebApplicationException e) {
+            assertEquals(e.getResponse().getStatus(), 503);
+        }
+    }
+}
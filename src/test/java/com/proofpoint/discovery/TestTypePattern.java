@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import org.testng.annotations.Test;
+
+import static com.proofpoint.discovery.TypePattern.typePattern;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestTypePattern
+{
+    @Test
+    public void testMatches()
+    {
+        assertTrue(typePattern("payments-*").matches("payments-api"));
+        assertTrue(typePattern("payments-*").matches("payments-"));
+        assertFalse(typePattern("payments-*").matches("payments"));
+        assertTrue(typePattern("*-api").matches("payments-api"));
+        assertFalse(typePattern("*-api").matches("payments-worker"));
+        assertTrue(typePattern("pay*-w*r").matches("payments-worker"));
+        assertTrue(typePattern("*").matches("anything"));
+        assertTrue(typePattern("payments.api").matches("payments.api"));
+        assertFalse(typePattern("payments.api").matches("payments-api"));
+    }
+
+    @Test
+    public void testPrefix()
+    {
+        assertEquals(typePattern("payments-*").getPrefix(), "payments-");
+        assertEquals(typePattern("pay*-w*r").getPrefix(), "pay");
+        assertEquals(typePattern("*-api").getPrefix(), "");
+        assertEquals(typePattern("payments").getPrefix(), "payments");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testEmpty()
+    {
+        typePattern("");
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery;
+
+import org.mockito.ArgumentCaptor;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.function.Consumer;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public final class TestingAsyncResponses
+{
+    private TestingAsyncResponses()
+    {
+    }
+
+    /**
+     * Calls an asynchronous resource method and waits for the response it
+     * resumes with.
+     */
+    public static Response respond(Consumer<AsyncResponse> request)
+    {
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        request.accept(asyncResponse);
+        ArgumentCaptor<Object> response = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse, timeout(10_000)).resume(response.capture());
+        return (Response) response.getValue();
+    }
+}
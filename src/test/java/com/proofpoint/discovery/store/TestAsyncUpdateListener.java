@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.discovery.Id;
+import com.proofpoint.discovery.Node;
+import com.proofpoint.discovery.Service;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.proofpoint.discovery.store.Entry.entry;
+import static com.proofpoint.discovery.store.EntryUpdate.entryUpdate;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+public class TestAsyncUpdateListener
+{
+    private static final Id<Node> NODE_ID = Id.random();
+    private static final Service TESTING_SERVICE = new Service(Id.random(), NODE_ID, "type1", "test-pool", "/test-location", ImmutableMap.of("http", "http://127.0.0.1"));
+    private static final Entry OLD_ENTRY = entry(NODE_ID.getBytes(), ImmutableList.of(TESTING_SERVICE), 1, 60_000L);
+    private static final Entry NEW_ENTRY = entry(NODE_ID.getBytes(), ImmutableList.of(TESTING_SERVICE), 2, 60_000L);
+
+    private UpdateListener listener1;
+    private UpdateListener listener2;
+    private AsyncUpdateListener asyncUpdateListener;
+
+    @BeforeMethod
+    public void setup()
+    {
+        listener1 = mock(UpdateListener.class);
+        listener2 = mock(UpdateListener.class);
+        asyncUpdateListener = new AsyncUpdateListener("test", ImmutableList.of(listener1, listener2), 100, 100);
+        asyncUpdateListener.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown()
+    {
+        asyncUpdateListener.stop();
+    }
+
+    @Test
+    public void testDispatchesToAllListeners()
+    {
+        asyncUpdateListener.notifyUpdate(OLD_ENTRY, NEW_ENTRY);
+
+        List<EntryUpdate> expected = ImmutableList.of(entryUpdate(OLD_ENTRY, NEW_ENTRY));
+        verify(listener1, timeout(1000)).notifyUpdates(expected);
+        verify(listener2, timeout(1000)).notifyUpdates(expected);
+    }
+
+    @Test
+    public void testListenerFailureDoesNotAffectOthers()
+    {
+        doThrow(new RuntimeException("testing")).when(listener1).notifyUpdates(any());
+
+        asyncUpdateListener.notifyUpdates(ImmutableList.of(entryUpdate(OLD_ENTRY, NEW_ENTRY)));
+
+        verify(listener2, timeout(1000)).notifyUpdates(ImmutableList.of(entryUpdate(OLD_ENTRY, NEW_ENTRY)));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.discovery.Id;
+import com.proofpoint.discovery.Node;
+import com.proofpoint.discovery.Service;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.proofpoint.discovery.ServiceChange.Kind.ADDED;
+import static com.proofpoint.discovery.ServiceChange.Kind.REMOVED;
+import static com.proofpoint.discovery.ServiceChange.Kind.UPDATED;
+import static com.proofpoint.discovery.ServiceChange.serviceChange;
+import static com.proofpoint.discovery.ServiceChanges.serviceChanges;
+import static com.proofpoint.discovery.store.Entry.entry;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestChangeLog
+{
+    private static final Id<Node> NODE_ID = Id.random();
+    private static final Service SERVICE_1 = new Service(Id.random(), NODE_ID, "type1", "pool", "/location", ImmutableMap.of("http", "http://127.0.0.1"));
+    private static final Service SERVICE_2 = new Service(Id.random(), NODE_ID, "type2", "pool", "/location", ImmutableMap.of("http", "http://127.0.0.1"));
+    private static final Service SERVICE_2_UPDATED = new Service(SERVICE_2.getId(), NODE_ID, "type2", "pool", "/location", ImmutableMap.of("http", "http://127.0.0.2"));
+
+    @Test
+    public void testServiceChanges()
+    {
+        ChangeLog changeLog = new ChangeLog(10, 100);
+
+        changeLog.append(null, entryOf(SERVICE_1, SERVICE_2));
+        changeLog.append(entryOf(SERVICE_1, SERVICE_2), entryOf(SERVICE_2_UPDATED));
+        changeLog.append(entryOf(SERVICE_2_UPDATED), null);
+
+        assertEquals(changeLog.getLastSequence(), 103);
+        assertEquals(changeLog.getChangesSince(100), serviceChanges(103, ImmutableList.of(
+                serviceChange(101, ADDED, SERVICE_1),
+                serviceChange(101, ADDED, SERVICE_2),
+                serviceChange(102, UPDATED, SERVICE_2_UPDATED, SERVICE_2),
+                serviceChange(102, REMOVED, SERVICE_1),
+                serviceChange(103, REMOVED, SERVICE_2_UPDATED))));
+        assertEquals(changeLog.getChangesSince(102), serviceChanges(103, ImmutableList.of(
+                serviceChange(103, REMOVED, SERVICE_2_UPDATED))));
+        assertEquals(changeLog.getChangesSince(103), serviceChanges(103, ImmutableList.of()));
+    }
+
+    @Test
+    public void testSkipsUnchangedContent()
+    {
+        ChangeLog changeLog = new ChangeLog(10, 100);
+
+        changeLog.append(entryOf(SERVICE_1), entryOf(SERVICE_1));
+        changeLog.append(null, null);
+
+        assertEquals(changeLog.getLastSequence(), 100);
+    }
+
+    @Test
+    public void testPublishedInOrder()
+    {
+        ChangeLog changeLog = new ChangeLog(10, 100);
+
+        ChangeLog.EntryChange first = changeLog.prepare(null, entryOf(SERVICE_1));
+        ChangeLog.EntryChange second = changeLog.prepare(null, entryOf(SERVICE_2));
+        assertNull(changeLog.prepare(entryOf(SERVICE_1), entryOf(SERVICE_1)));
+
+        changeLog.publish(second);
+        assertEquals(changeLog.getLastSequence(), 100);
+        assertEquals(changeLog.getChangesSince(100), serviceChanges(100, ImmutableList.of()));
+
+        changeLog.publish(first);
+        assertEquals(changeLog.getLastSequence(), 102);
+        assertEquals(changeLog.getChangesSince(100), serviceChanges(102, ImmutableList.of(
+                serviceChange(101, ADDED, SERVICE_1),
+                serviceChange(102, ADDED, SERVICE_2))));
+    }
+
+    @Test
+    public void testAborted()
+    {
+        ChangeLog changeLog = new ChangeLog(10, 100);
+
+        ChangeLog.EntryChange aborted = changeLog.prepare(null, entryOf(SERVICE_1));
+        changeLog.append(null, entryOf(SERVICE_2));
+        assertEquals(changeLog.getLastSequence(), 100);
+
+        changeLog.abort(aborted);
+        assertEquals(changeLog.getLastSequence(), 102);
+        assertEquals(changeLog.getChangesSince(100), serviceChanges(102, ImmutableList.of(
+                serviceChange(102, ADDED, SERVICE_2))));
+    }
+
+    @Test(timeOut = 10_000)
+    public void testSkipsStalledWriter()
+    {
+        ChangeLog changeLog = new ChangeLog(2, 100);
+
+        ChangeLog.EntryChange stalled = changeLog.prepare(null, entryOf(SERVICE_1));
+        changeLog.append(null, entryOf(SERVICE_2));
+        changeLog.append(entryOf(SERVICE_2), null);
+
+        assertEquals(changeLog.getLastSequence(), 103);
+        assertNull(changeLog.getChangesSince(100));
+        assertEquals(changeLog.getChangesSince(101), serviceChanges(103, ImmutableList.of(
+                serviceChange(102, ADDED, SERVICE_2),
+                serviceChange(103, REMOVED, SERVICE_2))));
+
+        // published too late, so it must not replace the later change in its slot
+        changeLog.publish(stalled);
+        assertEquals(changeLog.getLastSequence(), 103);
+        assertEquals(changeLog.getChangesSince(101), serviceChanges(103, ImmutableList.of(
+                serviceChange(102, ADDED, SERVICE_2),
+                serviceChange(103, REMOVED, SERVICE_2))));
+    }
+
+    @Test
+    public void testAgedOut()
+    {
+        ChangeLog changeLog = new ChangeLog(2, 100);
+        changeLog.append(null, entryOf(SERVICE_1));
+        changeLog.append(entryOf(SERVICE_1), null);
+        changeLog.append(null, entryOf(SERVICE_2));
+
+        assertNull(changeLog.getChangesSince(100));
+        assertEquals(changeLog.getChangesSince(101), serviceChanges(103, ImmutableList.of(
+                serviceChange(102, REMOVED, SERVICE_1),
+                serviceChange(103, ADDED, SERVICE_2))));
+    }
+
+    @Test
+    public void testUnknownSequence()
+    {
+        ChangeLog changeLog = new ChangeLog(10, 100);
+        changeLog.append(null, entryOf(SERVICE_1));
+
+        assertNull(changeLog.getChangesSince(99));
+        assertNull(changeLog.getChangesSince(102));
+    }
+
+    @Test
+    public void testOtherEpoch()
+    {
+        ChangeLog changeLog = new ChangeLog(10, 6L << 32);
+        changeLog.append(null, entryOf(SERVICE_1));
+        ChangeLog previous = new ChangeLog(10, 5L << 32);
+        previous.append(null, entryOf(SERVICE_1));
+        ChangeLog next = new ChangeLog(10, 7L << 32);
+        next.append(null, entryOf(SERVICE_1));
+
+        assertNull(changeLog.getChangesSince(previous.getLastSequence()));
+        assertNull(changeLog.getChangesSince(next.getLastSequence()));
+    }
+
+    @Test
+    public void testRandomEpoch()
+    {
+        long first = new ChangeLog(10).getLastSequence();
+
+        assertEquals(first & 0xFFFF_FFFFL, 0);
+        assertTrue(first > 0);
+        assertTrue(first < 1L << 53);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testAwaitChanges()
+            throws Exception
+    {
+        ChangeLog changeLog = new ChangeLog(10, 100);
+        changeLog.awaitChangesAfter(100, 10, MILLISECONDS);
+
+        Thread appender = new Thread(() -> changeLog.append(null, entryOf(SERVICE_1)));
+        appender.start();
+        changeLog.awaitChangesAfter(100, 1, MINUTES);
+        appender.join();
+
+        assertEquals(changeLog.getLastSequence(), 101);
+    }
+
+    private static Entry entryOf(Service... services)
+    {
+        List<Service> value = ImmutableList.copyOf(services);
+        return entry(NODE_ID.getBytes(), value, 1, 60_000L);
+    }
+}
@@ -15,13 +15,32 @@
  */
 package com.proofpoint.discovery.store;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.proofpoint.discovery.DiscoveryConfig;
+import com.proofpoint.discovery.DynamicAnnouncement;
+import com.proofpoint.discovery.DynamicServiceAnnouncement;
 import com.proofpoint.discovery.DynamicStore;
+import com.proofpoint.discovery.Id;
+import com.proofpoint.discovery.Node;
+import com.proofpoint.discovery.NodeServices;
+import com.proofpoint.discovery.Service;
 import com.proofpoint.discovery.TestDynamicStore;
+import org.testng.annotations.Test;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
+import static com.proofpoint.discovery.store.Touch.touch;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
 public class TestDistributedStore
     extends TestDynamicStore
 {
@@ -30,6 +49,122 @@ public class TestDistributedStore
     {
         RemoteStore dummy = entry -> { };
 
-        return new DistributedStore("dynamic", new InMemoryStore(config), dummy, new StoreConfig(), config, timeSupplier);
+        return new DistributedStore("dynamic", new InMemoryStore(config, timeSupplier), dummy, new StoreConfig(), config, timeSupplier);
+    }
+
+    @Test
+    public void testUnchangedAnnouncementSendsTouch()
+    {
+        List<Object> sent = new ArrayList<>();
+        AtomicLong now = new AtomicLong(1_000_000);
+        DiscoveryConfig config = new DiscoveryConfig();
+        InMemoryStore localStore = new InMemoryStore(config, () -> Instant.ofEpochMilli(now.get()));
+        DistributedStore distributedStore = new DistributedStore("dynamic", localStore, new RecordingRemoteStore(sent), new StoreConfig(), config,
+                () -> Instant.ofEpochMilli(now.get()));
+
+        Id<Node> nodeId = Id.random();
+        DynamicAnnouncement announcement = new DynamicAnnouncement("testing", "poolA", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111"))));
+
+        distributedStore.put(nodeId, announcement);
+        Entry first = localStore.get(nodeId.getBytes());
+        now.addAndGet(1000);
+        distributedStore.put(nodeId, announcement);
+        Entry second = localStore.get(nodeId.getBytes());
+
+        assertEquals(second.getTimestamp(), 1_001_000);
+        assertSame(second.getValue(), first.getValue());
+        assertEquals(sent, ImmutableList.of(first, touch(nodeId.getBytes(), 1_001_000, 90_000L, first.getContentHash())));
+    }
+
+    @Test
+    public void testGetNodeRemainingTtl()
+    {
+        AtomicLong now = new AtomicLong(1_000_000);
+        DiscoveryConfig config = new DiscoveryConfig();
+        InMemoryStore localStore = new InMemoryStore(config, () -> Instant.ofEpochMilli(now.get()));
+        DistributedStore distributedStore = new DistributedStore("dynamic", localStore, new RecordingRemoteStore(new ArrayList<>()), new StoreConfig(), config,
+                () -> Instant.ofEpochMilli(now.get()));
+
+        Id<Node> nodeId = Id.random();
+        distributedStore.put(nodeId, new DynamicAnnouncement("testing", "poolA", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111")))));
+        now.addAndGet(1000);
+
+        NodeServices nodeServices = distributedStore.getNode(nodeId);
+        assertEquals(nodeServices.getTimestamp(), Long.valueOf(1_000_000));
+        assertEquals(nodeServices.getRemainingTtlInMs(), Long.valueOf(config.getMaxAge().toMillis() - 1000));
+    }
+
+    @Test
+    public void testChangedAnnouncementSendsEntry()
+    {
+        List<Object> sent = new ArrayList<>();
+        AtomicLong now = new AtomicLong(1_000_000);
+        DiscoveryConfig config = new DiscoveryConfig();
+        InMemoryStore localStore = new InMemoryStore(config, () -> Instant.ofEpochMilli(now.get()));
+        DistributedStore distributedStore = new DistributedStore("dynamic", localStore, new RecordingRemoteStore(sent), new StoreConfig(), config,
+                () -> Instant.ofEpochMilli(now.get()));
+
+        Id<Node> nodeId = Id.random();
+        Id<Service> serviceId = Id.random();
+        distributedStore.put(nodeId, new DynamicAnnouncement("testing", "poolA", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(serviceId, "storage", ImmutableMap.of("http", "http://localhost:1111")))));
+        Entry first = localStore.get(nodeId.getBytes());
+        now.addAndGet(1000);
+        distributedStore.put(nodeId, new DynamicAnnouncement("testing", "poolA", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(serviceId, "storage", ImmutableMap.of("http", "http://localhost:2222")))));
+        Entry second = localStore.get(nodeId.getBytes());
+
+        assertNotSame(second.getValue(), first.getValue());
+        assertEquals(sent, ImmutableList.of(first, second));
+    }
+
+    @Test
+    public void testPutAllReturnsRejectedNodes()
+    {
+        List<Object> sent = new ArrayList<>();
+        DiscoveryConfig config = new DiscoveryConfig().setMaxEntries(1);
+        InMemoryStore localStore = new InMemoryStore(config, () -> Instant.ofEpochMilli(1_000_000));
+        DistributedStore distributedStore = new DistributedStore("dynamic", localStore, new RecordingRemoteStore(sent), new StoreConfig(), config,
+                () -> Instant.ofEpochMilli(1_000_000));
+
+        Id<Node> storedNodeId = Id.random();
+        Id<Node> rejectedNodeId = Id.random();
+        DynamicAnnouncement announcement = new DynamicAnnouncement("testing", "poolA", "/a/b/c", ImmutableSet.of(
+                new DynamicServiceAnnouncement(Id.random(), "storage", ImmutableMap.of("http", "http://localhost:1111"))));
+        distributedStore.put(storedNodeId, announcement);
+        sent.clear();
+
+        Set<Id<Node>> rejected = distributedStore.putAll(ImmutableMap.of(
+                storedNodeId, new DynamicAnnouncement("testing", "poolA", "/a/b/c", ImmutableSet.of(
+                        new DynamicServiceAnnouncement(Id.random(), "web", ImmutableMap.of("http", "http://localhost:2222")))),
+                rejectedNodeId, announcement));
+
+        assertEquals(rejected, ImmutableSet.of(rejectedNodeId));
+        assertEquals(sent, ImmutableList.of(localStore.get(storedNodeId.getBytes())));
+    }
+
+    private static class RecordingRemoteStore
+            implements RemoteStore
+    {
+        private final List<Object> sent;
+
+        RecordingRemoteStore(List<Object> sent)
+        {
+            this.sent = sent;
+        }
+
+        @Override
+        public void put(Entry entry)
+        {
+            sent.add(entry);
+        }
+
+        @Override
+        public void touch(Touch touch)
+        {
+            sent.add(touch);
+        }
     }
 }
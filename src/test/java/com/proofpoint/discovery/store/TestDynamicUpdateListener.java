@@ -21,25 +21,20 @@ import com.proofpoint.discovery.Id;
 import com.proofpoint.discovery.Node;
 import com.proofpoint.discovery.Service;
 import com.proofpoint.reporting.testing.TestingReportCollectionFactory;
-import org.mockito.Mock;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
-import java.time.Instant;
 import java.util.List;
-import java.util.function.Supplier;
 
 import static com.proofpoint.discovery.store.Entry.entry;
+import static com.proofpoint.discovery.store.EntryUpdate.entryUpdate;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
-import static org.mockito.Mockito.when;
-import static org.mockito.MockitoAnnotations.initMocks;
 
 public class TestDynamicUpdateListener
 {
-    @Mock
-    private Supplier<Instant> instantSupplier;
     private DynamicRenewals argumentVerifier;
     private DynamicRenewals reportCollection;
     private DynamicUpdateListener listener;
@@ -48,12 +43,11 @@ public class TestDynamicUpdateListener
     @BeforeMethod
     public void setup()
     {
-        initMocks(this);
         TestingReportCollectionFactory reportCollectionFactory = new TestingReportCollectionFactory();
         DynamicRenewals dynamicRenewals = reportCollectionFactory.createReportCollection(DynamicRenewals.class);
         argumentVerifier = reportCollectionFactory.getArgumentVerifier(dynamicRenewals);
         reportCollection = reportCollectionFactory.getReportCollection(dynamicRenewals);
-        listener = new DynamicUpdateListener(instantSupplier, dynamicRenewals);
+        listener = new DynamicUpdateListener(dynamicRenewals);
     }
 
     @Test
@@ -79,15 +73,72 @@ public class TestDynamicUpdateListener
         Service service2 = new Service(Id.random(), nodeId, "type2", "pool", "location", ImmutableMap.of());
         Service service3 = new Service(Id.random(), nodeId, "type3", "pool", "location", ImmutableMap.of());
         Service service4 = new Service(Id.random(), nodeId, "type4", "pool", "location", ImmutableMap.of());
-        when(instantSupplier.get()).thenReturn(Instant.ofEpochMilli(9));
         listener.notifyUpdate(entry(nodeId.getBytes(), ImmutableList.of(service1, service2, service3), 5, 5L), entry(nodeId.getBytes(), ImmutableList.of(service2, service3, service4), 8, 5L));
         verify(argumentVerifier).renewedAfter("type2");
         verify(argumentVerifier).renewedAfter("type3");
+        verify(argumentVerifier).renewals("type2");
+        verify(argumentVerifier).renewals("type3");
         verifyNoMoreInteractions(argumentVerifier);
-        verify(reportCollection.renewedAfter("type2")).add(4, MILLISECONDS);
+        verify(reportCollection.renewedAfter("type2")).add(3, MILLISECONDS);
         verifyNoMoreInteractions(reportCollection.renewedAfter("type2"));
-        verify(reportCollection.renewedAfter("type3")).add(4, MILLISECONDS);
+        verify(reportCollection.renewedAfter("type3")).add(3, MILLISECONDS);
         verifyNoMoreInteractions(reportCollection.renewedAfter("type3"));
+        verify(reportCollection.renewals("type2")).add(1);
+        verifyNoMoreInteractions(reportCollection.renewals("type2"));
+        verify(reportCollection.renewals("type3")).add(1);
+        verifyNoMoreInteractions(reportCollection.renewals("type3"));
+    }
+
+    @Test
+    public void testDuplicateTypes()
+    {
+        Service service1 = new Service(Id.random(), nodeId, "type1", "pool", "location", ImmutableMap.of());
+        Service service2 = new Service(Id.random(), nodeId, "type1", "pool", "location", ImmutableMap.of());
+        listener.notifyUpdate(entry(nodeId.getBytes(), ImmutableList.of(service1, service2), 5, 5L), entry(nodeId.getBytes(), ImmutableList.of(service2, service1), 8, 5L));
+        verify(argumentVerifier).renewedAfter("type1");
+        verify(argumentVerifier).renewals("type1");
+        verifyNoMoreInteractions(argumentVerifier);
+        verify(reportCollection.renewedAfter("type1")).add(3, MILLISECONDS);
+        verifyNoMoreInteractions(reportCollection.renewedAfter("type1"));
+        verify(reportCollection.renewals("type1")).add(1);
+        verifyNoMoreInteractions(reportCollection.renewals("type1"));
+    }
+
+    @Test
+    public void testBatch()
+    {
+        Service service = new Service(Id.random(), nodeId, "type1", "pool", "location", ImmutableMap.of());
+        Entry oldEntry = entry(nodeId.getBytes(), ImmutableList.of(service), 5, 5L);
+        Entry newEntry = entry(nodeId.getBytes(), ImmutableList.of(service), 8, 5L);
+        listener.notifyUpdates(ImmutableList.of(entryUpdate(oldEntry, newEntry), entryUpdate(oldEntry, newEntry)));
+        verify(argumentVerifier).renewedAfter("type1");
+        verify(argumentVerifier).renewals("type1");
+        verifyNoMoreInteractions(argumentVerifier);
+        verify(reportCollection.renewedAfter("type1"), times(2)).add(3, MILLISECONDS);
+        verify(reportCollection.renewals("type1"), times(2)).add(1);
+    }
+
+    @Test
+    public void testRemoveIdle()
+    {
+        Service service = new Service(Id.random(), nodeId, "type1", "pool", "location", ImmutableMap.of());
+        Entry oldEntry = entry(nodeId.getBytes(), ImmutableList.of(service), 5, 5L);
+        Entry newEntry = entry(nodeId.getBytes(), ImmutableList.of(service), 8, 5L);
+
+        listener.notifyUpdate(oldEntry, newEntry);
+        listener.removeIdle(8 + DynamicUpdateListener.IDLE_TIME_IN_MS);
+        listener.notifyUpdate(oldEntry, newEntry);
+        verify(argumentVerifier).renewedAfter("type1");
+        verify(argumentVerifier).renewals("type1");
+        verifyNoMoreInteractions(argumentVerifier);
+
+        listener.removeIdle(9 + DynamicUpdateListener.IDLE_TIME_IN_MS);
+        listener.notifyUpdate(oldEntry, newEntry);
+        verify(argumentVerifier, times(2)).renewedAfter("type1");
+        verify(argumentVerifier, times(2)).renewals("type1");
+        verifyNoMoreInteractions(argumentVerifier);
+        verify(reportCollection.renewedAfter("type1"), times(3)).add(3, MILLISECONDS);
+        verify(reportCollection.renewals("type1"), times(3)).add(1);
     }
 
     @Test
@@ -97,10 +148,11 @@ public class TestDynamicUpdateListener
         Service service2 = new Service(Id.random(), nodeId, "type2", "pool", "location", ImmutableMap.of());
         Service service3 = new Service(Id.random(), nodeId, "type3", "pool", "location", ImmutableMap.of());
         Service service4 = new Service(Id.random(), nodeId, "type4", "pool", "location", ImmutableMap.of());
-        when(instantSupplier.get()).thenReturn(Instant.ofEpochMilli(11));
-        listener.notifyUpdate(entry(nodeId.getBytes(), ImmutableList.of(service1, service2, service3), 5, 5L), entry(nodeId.getBytes(), ImmutableList.of(service2, service3, service4), 8, 5L));
+        listener.notifyUpdate(entry(nodeId.getBytes(), ImmutableList.of(service1, service2, service3), 5, 5L), entry(nodeId.getBytes(), ImmutableList.of(service2, service3, service4), 11, 5L));
         verify(argumentVerifier).expiredFor("type2");
         verify(argumentVerifier).expiredFor("type3");
+        verify(argumentVerifier).renewals("type2");
+        verify(argumentVerifier).renewals("type3");
         verifyNoMoreInteractions(argumentVerifier);
         verify(reportCollection.expiredFor("type2")).add(1, MILLISECONDS);
         verifyNoMoreInteractions(reportCollection.renewedAfter("type2"));
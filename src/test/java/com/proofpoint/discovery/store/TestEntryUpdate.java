@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.discovery.Id;
+import com.proofpoint.discovery.Node;
+import com.proofpoint.discovery.Service;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.proofpoint.discovery.store.Entry.entry;
+import static com.proofpoint.discovery.store.EntryUpdate.entryUpdate;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestEntryUpdate
+{
+    private static final Id<Node> NODE_ID = Id.random();
+    private static final Id<Service> SERVICE_ID = Id.random();
+
+    @Test
+    public void testSameValue()
+    {
+        Entry entry = entryOf("http://127.0.0.1", 1);
+
+        assertFalse(entryUpdate(entry, entry.withTimestamp(2, 60_000L)).isContentChanged());
+    }
+
+    @Test
+    public void testEqualContent()
+    {
+        assertFalse(entryUpdate(entryOf("http://127.0.0.1", 1), entryOf("http://127.0.0.1", 2)).isContentChanged());
+    }
+
+    @Test
+    public void testChangedProperty()
+    {
+        // services with the same id are equal, but their properties differ
+        assertTrue(entryUpdate(entryOf("http://127.0.0.1", 1), entryOf("http://127.0.0.2", 2)).isContentChanged());
+    }
+
+    @Test
+    public void testTombstone()
+    {
+        Entry tombstone = entry(NODE_ID.getBytes(), (List<Service>) null, 2, null);
+
+        assertTrue(entryUpdate(entryOf("http://127.0.0.1", 1), tombstone).isContentChanged());
+    }
+
+    private static Entry entryOf(String uri, long timestamp)
+    {
+        Service service = new Service(SERVICE_ID, NODE_ID, "type", "pool", "/location", ImmutableMap.of("http", uri));
+        return entry(NODE_ID.getBytes(), ImmutableList.of(service), timestamp, 60_000L);
+    }
+}
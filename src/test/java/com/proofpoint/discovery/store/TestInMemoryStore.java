@@ -15,28 +15,54 @@
  */
 package com.proofpoint.discovery.store;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.proofpoint.discovery.CapacityExceededException;
 import com.proofpoint.discovery.DiscoveryConfig;
+import com.proofpoint.discovery.DiscoveryConfig.StringSet;
 import com.proofpoint.discovery.Id;
 import com.proofpoint.discovery.Node;
 import com.proofpoint.discovery.Service;
+import com.proofpoint.discovery.TypeSummary;
+import com.proofpoint.units.DataSize;
 import com.proofpoint.units.Duration;
+import org.mockito.ArgumentCaptor;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.proofpoint.discovery.PropertyFilter.anyProperties;
+import static com.proofpoint.discovery.PropertyFilter.propertyFilter;
+import static com.proofpoint.discovery.ServiceChange.Kind.ADDED;
+import static com.proofpoint.discovery.ServiceChange.Kind.REMOVED;
+import static com.proofpoint.discovery.ServiceChange.serviceChange;
+import static com.proofpoint.discovery.ServiceChanges.serviceChanges;
+import static com.proofpoint.discovery.TypePattern.typePattern;
 import static com.proofpoint.discovery.store.Entry.entry;
+import static com.proofpoint.discovery.store.EntryUpdate.entryUpdate;
+import static com.proofpoint.discovery.store.MergeResult.mergeResult;
+import static com.proofpoint.discovery.store.Touch.touch;
+import static com.proofpoint.testing.Assertions.assertEqualsIgnoreOrder;
+import static com.proofpoint.units.DataSize.Unit.KILOBYTE;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
+@SuppressWarnings("unchecked")
 public class TestInMemoryStore
 {
     private static final Id<Node> NODE_ID = Id.random();
@@ -45,14 +71,17 @@ public class TestInMemoryStore
     private static final ImmutableList<Service> SERVICE_LIST_1 = ImmutableList.of(TESTING_SERVICE_1, TESTING_SERVICE_2);
     private static final ImmutableList<Service> SERVICE_LIST_2 = ImmutableList.of(TESTING_SERVICE_2);
 
+    private final AtomicLong now = new AtomicLong();
+    private final Supplier<Instant> timeSupplier = () -> Instant.ofEpochMilli(now.get());
     private InMemoryStore store;
     private UpdateListener updateListener;
 
     @BeforeMethod
     protected void setUp()
     {
+        now.set(1_000_000);
         DiscoveryConfig config = new DiscoveryConfig().setMaxAge(new Duration(1, TimeUnit.MINUTES));
-        store = new InMemoryStore(config);
+        store = new InMemoryStore(config, timeSupplier);
         updateListener = mock(UpdateListener.class);
         store.setUpdateListener(updateListener);
     }
@@ -129,10 +158,29 @@ public class TestInMemoryStore
         verifyNoMoreInteractions(updateListener);
     }
 
+    @Test
+    public void testUpdateSameContentKeepsValue()
+    {
+        Entry entry1 = entryOf(SERVICE_LIST_1, 1);
+        assertTrue(store.put(entry1));
+
+        Entry entry2 = entryOf(ImmutableList.of(TESTING_SERVICE_1, TESTING_SERVICE_2), 2);
+        assertTrue(store.put(entry2));
+
+        Entry stored = store.get(NODE_ID.getBytes());
+        assertEquals(stored, entry2);
+        assertSame(stored.getValue(), entry1.getValue());
+
+        ArgumentCaptor<Entry> captor = ArgumentCaptor.forClass(Entry.class);
+        verify(updateListener).notifyUpdate(eq(entry1), captor.capture());
+        assertFalse(entryUpdate(entry1, captor.getValue()).isContentChanged());
+        verifyNoMoreInteractions(updateListener);
+    }
+
     @Test
     public void testUpdateNoListener()
     {
-        store = new InMemoryStore(new DiscoveryConfig().setMaxAge(new Duration(1, TimeUnit.MINUTES)));
+        store = new InMemoryStore(new DiscoveryConfig().setMaxAge(new Duration(1, TimeUnit.MINUTES)), timeSupplier);
         Entry entry1 = entryOf(SERVICE_LIST_2, 1);
         assertTrue(store.put(entry1));
 
@@ -178,8 +226,521 @@ public class TestInMemoryStore
         verifyNoMoreInteractions(updateListener);
     }
 
+    @Test
+    public void testTombstone()
+    {
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        store.put(entry);
+
+        Entry tombstone = tombstoneOf(2);
+        assertTrue(store.put(tombstone));
+
+        assertNull(store.get(NODE_ID.getBytes()));
+        assertEquals(store.getAll(), ImmutableList.of());
+        assertEquals(store.getTombstones(), ImmutableList.of(entry(NODE_ID.getBytes(), (List<Service>) null, 2, null)));
+        assertEquals(store.getTombstoneCount(), 1);
+        verify(updateListener).notifyUpdate(entry, entry(NODE_ID.getBytes(), (List<Service>) null, 2, 60_000L));
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testTombstoneResolvesConflict()
+    {
+        Entry entry = entryOf(SERVICE_LIST_1, 2);
+        store.put(entry);
+
+        assertFalse(store.put(tombstoneOf(1)));
+        assertFalse(store.put(tombstoneOf(2)));
+
+        assertEquals(store.get(NODE_ID.getBytes()), entry);
+        assertEquals(store.getTombstoneCount(), 0);
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testTombstoneHidesOlderEntries()
+    {
+        assertTrue(store.put(tombstoneOf(2)));
+        assertFalse(store.put(tombstoneOf(1)));
+        assertFalse(store.put(entryOf(SERVICE_LIST_1, 1)));
+        assertFalse(store.put(entryOf(SERVICE_LIST_1, 2)));
+
+        assertNull(store.get(NODE_ID.getBytes()));
+        assertEquals(store.getTombstones(), ImmutableList.of(entry(NODE_ID.getBytes(), (List<Service>) null, 2, null)));
+
+        Entry entry = entryOf(SERVICE_LIST_1, 3);
+        assertTrue(store.put(entry));
+
+        assertEquals(store.get(NODE_ID.getBytes()), entry);
+        assertEquals(store.getTombstoneCount(), 0);
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testRemoveExpiredTombstones()
+    {
+        Id<Node> otherNodeId = Id.random();
+        store.put(tombstoneOf(1_000));
+        store.put(entry(otherNodeId.getBytes(), (List<Service>) null, 5_000, null));
+
+        assertEquals(store.removeExpiredTombstones(4_000, 3_000), 0);
+        assertEquals(store.removeExpiredTombstones(5_000, 3_000), 1);
+        assertEquals(store.getTombstones(), ImmutableList.of(entry(otherNodeId.getBytes(), (List<Service>) null, 5_000, null)));
+
+        assertTrue(store.put(entryOf(SERVICE_LIST_1, 1)));
+        assertEquals(store.removeExpiredTombstones(1_000_000, 3_000), 1);
+        assertEquals(store.getTombstoneCount(), 0);
+    }
+
+    @Test
+    public void testRemoveExpiredTombstonesOutOfOrder()
+    {
+        Id<Node> otherNodeId = Id.random();
+        store.put(entry(otherNodeId.getBytes(), (List<Service>) null, 5_000, null));
+        store.put(tombstoneOf(1_000));
+
+        assertEquals(store.removeExpiredTombstones(5_000, 3_000), 1);
+        assertEquals(store.getTombstones(), ImmutableList.of(entry(otherNodeId.getBytes(), (List<Service>) null, 5_000, null)));
+    }
+
+    @Test
+    public void testTombstonesBoundedByMaxAge()
+    {
+        store.put(tombstoneOf(1_000));
+
+        assertEquals(store.removeExpiredTombstones(61_000, 1_000_000), 0);
+        assertEquals(store.removeExpiredTombstones(61_001, 1_000_000), 1);
+    }
+
+    @Test
+    public void testRejectsOverEntryLimit()
+    {
+        store = new InMemoryStore(new DiscoveryConfig().setMaxEntries(1), timeSupplier);
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        assertTrue(store.put(entry));
+        assertEquals(store.getEntryUtilization(), 1.0);
+
+        try {
+            store.put(entry(Id.random().getBytes(), SERVICE_LIST_1, 1, 60_000L));
+            fail("expected CapacityExceededException");
+        }
+        catch (CapacityExceededException ignored) {
+        }
+
+        Entry replacement = entryOf(SERVICE_LIST_2, 2);
+        assertTrue(store.put(replacement));
+        assertEquals(store.get(NODE_ID.getBytes()), replacement);
+    }
+
+    @Test
+    public void testRejectsOverPoolLimit()
+    {
+        store = new InMemoryStore(new DiscoveryConfig().setMaxEntriesPerPool(1), timeSupplier);
+        assertTrue(store.put(entryOf(SERVICE_LIST_1, 1)));
+        assertEquals(store.getPoolUtilization(), 1.0);
+
+        Service otherPoolService = new Service(Id.random(), NODE_ID, "type1", "other-pool", "/test-location", ImmutableMap.of());
+        assertTrue(store.put(entry(Id.random().getBytes(), ImmutableList.of(otherPoolService), 1, 60_000L)));
+
+        try {
+            store.put(entry(Id.random().getBytes(), SERVICE_LIST_2, 1, 60_000L));
+            fail("expected CapacityExceededException");
+        }
+        catch (CapacityExceededException ignored) {
+        }
+
+        assertTrue(store.put(tombstoneOf(2)));
+        assertEquals(store.getPoolUtilization(), 1.0);
+        assertTrue(store.put(entry(Id.random().getBytes(), SERVICE_LIST_2, 1, 60_000L)));
+    }
+
+    @Test
+    public void testRejectsOverSizeLimit()
+    {
+        store = new InMemoryStore(new DiscoveryConfig().setMaxSize(new DataSize(2, KILOBYTE)), timeSupplier);
+        assertTrue(store.put(entryOf(SERVICE_LIST_1, 1)));
+        assertTrue(store.getSizeUtilization() > 0);
+
+        try {
+            store.put(entry(Id.random().getBytes(), SERVICE_LIST_1, 1, 60_000L));
+            fail("expected CapacityExceededException");
+        }
+        catch (CapacityExceededException ignored) {
+        }
+
+        assertTrue(store.delete(NODE_ID.getBytes(), 1));
+        assertEquals(store.getSizeUtilization(), 0.0);
+    }
+
+    @Test
+    public void testRejectsReplacementOverSizeLimit()
+    {
+        store = new InMemoryStore(new DiscoveryConfig().setMaxSize(new DataSize(2, KILOBYTE)), timeSupplier);
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        assertTrue(store.put(entry));
+
+        Service largeService = new Service(Id.random(), NODE_ID, "type1", "test-pool", "/test-location", ImmutableMap.of("http", Strings.repeat("x", 1000)));
+        try {
+            store.put(entryOf(ImmutableList.of(largeService), 2));
+            fail("expected CapacityExceededException");
+        }
+        catch (CapacityExceededException ignored) {
+        }
+        assertEquals(store.get(NODE_ID.getBytes()), entry);
+
+        Entry smaller = entryOf(SERVICE_LIST_2, 3);
+        assertTrue(store.put(smaller));
+        assertEquals(store.get(NODE_ID.getBytes()), smaller);
+    }
+
+    @Test
+    public void testRejectsReplacementIntoFullPool()
+    {
+        store = new InMemoryStore(new DiscoveryConfig().setMaxEntriesPerPool(1), timeSupplier);
+        Service otherPoolService = new Service(Id.random(), NODE_ID, "type1", "other-pool", "/test-location", ImmutableMap.of());
+        Entry entry = entryOf(ImmutableList.of(otherPoolService), 1);
+        assertTrue(store.put(entry));
+        assertTrue(store.put(entry(Id.random().getBytes(), SERVICE_LIST_1, 1, 60_000L)));
+
+        try {
+            store.put(entryOf(ImmutableList.of(otherPoolService, TESTING_SERVICE_1), 2));
+            fail("expected CapacityExceededException");
+        }
+        catch (CapacityExceededException ignored) {
+        }
+        assertEquals(store.get(NODE_ID.getBytes()), entry);
+    }
+
+    @Test
+    public void testPutAllCountsRejected()
+    {
+        store = new InMemoryStore(new DiscoveryConfig().setMaxEntries(1), timeSupplier);
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        Entry otherEntry = entry(Id.random().getBytes(), SERVICE_LIST_2, 1, 60_000L);
+
+        MergeResult result = store.putAll(ImmutableList.of(entry, otherEntry));
+
+        assertEquals(result.getWinners(), 1);
+        assertEquals(result.getRejected(), 1);
+        assertEquals(store.getAll().size(), 1);
+    }
+
+    @Test
+    public void testTouch()
+    {
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        store.put(entry);
+
+        assertTrue(store.touch(touch(NODE_ID.getBytes(), 2, 60_000L, entry.getContentHash())));
+
+        Entry touched = store.get(NODE_ID.getBytes());
+        assertEquals(touched, entryOf(SERVICE_LIST_1, 2));
+        assertSame(touched.getValue(), entry.getValue());
+        verify(updateListener).notifyUpdate(entry, touched);
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testTouchContentChanged()
+    {
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        store.put(entry);
+
+        assertFalse(store.touch(touch(NODE_ID.getBytes(), 2, 60_000L, entryOf(SERVICE_LIST_2, 1).getContentHash())));
+
+        assertEquals(store.get(NODE_ID.getBytes()), entry);
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testTouchOlder()
+    {
+        Entry entry = entryOf(SERVICE_LIST_1, 5);
+        store.put(entry);
+
+        assertFalse(store.touch(touch(NODE_ID.getBytes(), 5, 60_000L, entry.getContentHash())));
+        assertFalse(store.touch(touch(NODE_ID.getBytes(), 4, 60_000L, entry.getContentHash())));
+
+        assertEquals(store.get(NODE_ID.getBytes()), entry);
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testTouchExpiredOrMissing()
+    {
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        store.put(entry);
+
+        assertFalse(store.touch(touch(NODE_ID.getBytes(), 60_002, 60_000L, entry.getContentHash())));
+        assertFalse(store.touch(touch(Id.random().getBytes(), 2, 60_000L, entry.getContentHash())));
+
+        assertEquals(store.get(NODE_ID.getBytes()), entry);
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testTouchAll()
+    {
+        Id<Node> otherNodeId = Id.random();
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        Entry otherEntry = entry(otherNodeId.getBytes(), SERVICE_LIST_2, 1, 60_000L);
+        store.putAll(ImmutableList.of(entry, otherEntry));
+
+        assertEquals(store.touchAll(ImmutableList.of(
+                touch(NODE_ID.getBytes(), 2, null, entry.getContentHash()),
+                touch(otherNodeId.getBytes(), 2, 60_000L, entry.getContentHash()))), 1);
+
+        assertEquals(store.get(NODE_ID.getBytes()), entryOf(SERVICE_LIST_1, 2));
+        assertEquals(store.get(otherNodeId.getBytes()), otherEntry);
+        verify(updateListener).notifyUpdates(ImmutableList.of(entryUpdate(entry, entryOf(SERVICE_LIST_1, 2))));
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testPutAll()
+    {
+        Id<Node> otherNodeId = Id.random();
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        Entry otherEntry = entry(otherNodeId.getBytes(), SERVICE_LIST_2, 1, 60_000L);
+
+        assertEquals(store.putAll(ImmutableList.of(entry, otherEntry)), mergeResult(2, 0));
+
+        assertEquals(store.get(NODE_ID.getBytes()), entry);
+        assertEquals(store.get(otherNodeId.getBytes()), otherEntry);
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testPutAllResolvesConflicts()
+    {
+        Entry entry1 = entryOf(SERVICE_LIST_2, 1);
+        Entry entry2 = entryOf(SERVICE_LIST_1, 2);
+        Entry entry3 = entryOf(SERVICE_LIST_2, 3);
+        assertTrue(store.put(entry2));
+
+        assertEquals(store.putAll(ImmutableList.of(entry1)), mergeResult(0, 1));
+        assertEquals(store.get(NODE_ID.getBytes()), entry2);
+
+        assertEquals(store.putAll(ImmutableList.of(entry3, entry1)), mergeResult(1, 1));
+        assertEquals(store.get(NODE_ID.getBytes()), entry3);
+    }
+
+    @Test
+    public void testPutAllNotifiesBatch()
+    {
+        Id<Node> otherNodeId = Id.random();
+        Entry entry1 = entryOf(SERVICE_LIST_2, 1);
+        Entry otherEntry1 = entry(otherNodeId.getBytes(), SERVICE_LIST_2, 1, 60_000L);
+        store.putAll(ImmutableList.of(entry1, otherEntry1));
+
+        Entry entry2 = entryOf(SERVICE_LIST_1, 2);
+        Entry otherEntry2 = entry(otherNodeId.getBytes(), SERVICE_LIST_1, 2, 60_000L);
+        assertEquals(store.putAll(ImmutableList.of(entry2, otherEntry2)), mergeResult(2, 0));
+
+        ArgumentCaptor<Collection<EntryUpdate>> captor = ArgumentCaptor.forClass(Collection.class);
+        verify(updateListener).notifyUpdates(captor.capture());
+        assertEqualsIgnoreOrder(captor.getValue(), ImmutableList.of(entryUpdate(entry1, entry2), entryUpdate(otherEntry1, otherEntry2)));
+        verifyNoMoreInteractions(updateListener);
+    }
+
+    @Test
+    public void testGetByTypeAndPool()
+    {
+        Id<Node> otherNodeId = Id.random();
+        Service otherService = new Service(Id.random(), otherNodeId, "type1", "other-pool", "/test-location", ImmutableMap.of());
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        Entry otherEntry = entry(otherNodeId.getBytes(), ImmutableList.of(otherService), 1, 60_000L);
+        store.put(entry);
+        store.put(otherEntry);
+
+        assertEqualsIgnoreOrder(store.getByType("type1"), ImmutableList.of(entry, otherEntry));
+        assertEquals(store.getByType("type2"), ImmutableList.of(entry));
+        assertEquals(store.getByType("unknown"), ImmutableList.of());
+        assertEquals(store.getByTypeAndPool("type1", "other-pool"), ImmutableList.of(otherEntry));
+        assertEquals(store.getByTypeAndPool("type1", "unknown"), ImmutableList.of());
+
+        Entry replacement = entryOf(SERVICE_LIST_2, 2);
+        store.put(replacement);
+        assertEquals(store.getByType("type1"), ImmutableList.of(otherEntry));
+        assertEquals(store.getByTypeAndPool("type2", "test-pool"), ImmutableList.of(replacement));
+
+        store.delete(otherNodeId.getBytes(), 2);
+        assertEquals(store.getByType("type1"), ImmutableList.of());
+    }
+
+    @Test
+    public void testQueryByIndexedProperty()
+    {
+        store = new InMemoryStore(new DiscoveryConfig().setIndexedProperties(StringSet.of("http", "https")), timeSupplier);
+        Id<Node> otherNodeId = Id.random();
+        Service otherService = new Service(Id.random(), otherNodeId, "type1", "test-pool", "/test-location", ImmutableMap.of("http", "http://127.0.0.2"));
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        Entry otherEntry = entry(otherNodeId.getBytes(), ImmutableList.of(otherService), 1, 60_000L);
+        store.put(entry);
+        store.put(otherEntry);
+
+        assertEquals(store.query(null, null, propertyFilter(ImmutableMap.of("http", "http://127.0.0.2"), ImmutableMap.of())), ImmutableList.of(otherEntry));
+        assertEquals(store.query("type1", null, propertyFilter(ImmutableMap.of("https", "https://127.0.0.1"), ImmutableMap.of())), ImmutableList.of(entry));
+        assertEqualsIgnoreOrder(store.query(null, null, propertyFilter(ImmutableMap.of(), ImmutableMap.of("http", "http://127.0.0."))), ImmutableList.of(entry, otherEntry));
+        assertEquals(store.query(null, null, propertyFilter(ImmutableMap.of(), ImmutableMap.of("http", "https"))), ImmutableList.of());
+
+        store.delete(otherNodeId.getBytes(), 1);
+        assertEquals(store.query(null, null, propertyFilter(ImmutableMap.of("http", "http://127.0.0.2"), ImmutableMap.of())), ImmutableList.of());
+    }
+
+    @Test
+    public void testQueryByLocation()
+    {
+        Id<Node> otherNodeId = Id.random();
+        Service otherService = new Service(Id.random(), otherNodeId, "type1", "test-pool", "/test-location/rack1", ImmutableMap.of());
+        Service distantService = new Service(Id.random(), otherNodeId, "type1", "test-pool", "/test-locationx", ImmutableMap.of());
+        Entry entry = entryOf(SERVICE_LIST_1, 1);
+        Entry otherEntry = entry(otherNodeId.getBytes(), ImmutableList.of(otherService, distantService), 1, 60_000L);
+        store.put(entry);
+        store.put(otherEntry);
+
+        assertEqualsIgnoreOrder(store.query(null, null, "/test-location", anyProperties()), ImmutableList.of(entry, otherEntry));
+        assertEquals(store.query("type1", null, "/test-location/rack1", anyProperties()), ImmutableList.of(otherEntry));
+        assertEquals(store.query(null, null, "/other", anyProperties()), ImmutableList.of());
+
+        store.delete(otherNodeId.getBytes(), 1);
+        assertEquals(store.query(null, null, "/test-location/rack1", anyProperties()), ImmutableList.of());
+    }
+
+    @Test
+    public void testGetTypes()
+    {
+        Id<Node> otherNodeId = Id.random();
+        Service otherService = new Service(Id.random(), otherNodeId, "other", "test-pool", "/test-location", ImmutableMap.of());
+        store.put(entryOf(SERVICE_LIST_1, 1));
+        store.put(entry(otherNodeId.getBytes(), ImmutableList.of(otherService), 1, 60_000L));
+
+        assertEquals(store.getTypes(typePattern("type*")), ImmutableList.of("type1", "type2"));
+        assertEquals(store.getTypes(typePattern("*2")), ImmutableList.of("type2"));
+        assertEquals(store.getTypes(typePattern("*")), ImmutableList.of("other", "type1", "type2"));
+
+        store.put(entryOf(SERVICE_LIST_2, 2));
+        assertEquals(store.getTypes(typePattern("type*")), ImmutableList.of("type2"));
+    }
+
+    @Test
+    public void testChangeLog()
+    {
+        ChangeLog changeLog = store.getChangeLog();
+        long start = changeLog.getLastSequence();
+
+        store.put(entryOf(SERVICE_LIST_2, 1));
+        store.put(entryOf(SERVICE_LIST_2, 2));
+        store.put(entryOf(SERVICE_LIST_1, 3));
+        store.delete(NODE_ID.getBytes(), 3);
+
+        assertEquals(changeLog.getChangesSince(start), serviceChanges(start + 3, ImmutableList.of(
+                serviceChange(start + 1, ADDED, TESTING_SERVICE_2),
+                serviceChange(start + 2, ADDED, TESTING_SERVICE_1),
+                serviceChange(start + 3, REMOVED, TESTING_SERVICE_1),
+                serviceChange(start + 3, REMOVED, TESTING_SERVICE_2))));
+    }
+
+    @Test
+    public void testChangeLogReaddsExpired()
+    {
+        ChangeLog changeLog = store.getChangeLog();
+        store.put(entryOf(SERVICE_LIST_2, 1));
+        long start = changeLog.getLastSequence();
+
+        store.put(entryOf(SERVICE_LIST_2, 60_002));
+
+        assertEquals(changeLog.getChangesSince(start), serviceChanges(start + 1, ImmutableList.of(
+                serviceChange(start + 1, ADDED, TESTING_SERVICE_2))));
+    }
+
+    @Test
+    public void testServiceCounters()
+    {
+        ServiceCounters counters = store.getServiceCounters();
+        store.put(entryOf(SERVICE_LIST_1, 1));
+
+        List<TypeSummary> summaries = counters.getTypeSummaries();
+        assertEquals(summaries.size(), 2);
+        assertEquals(summaries.get(0).getType(), "type1");
+        assertEquals(summaries.get(0).getInstances(), 1);
+        assertEquals(summaries.get(0).getPools().get(0).getPool(), "test-pool");
+        assertEquals(summaries.get(1).getType(), "type2");
+        assertEquals(summaries.get(1).getInstances(), 1);
+        long version = summaries.get(1).getVersion();
+
+        store.put(entryOf(SERVICE_LIST_2, 2));
+
+        summaries = counters.getTypeSummaries();
+        assertEquals(summaries.size(), 1);
+        assertEquals(summaries.get(0).getType(), "type2");
+        assertEquals(summaries.get(0).getInstances(), 1);
+        assertEquals(summaries.get(0).getVersion(), version, "unchanged");
+
+        store.delete(NODE_ID.getBytes(), 3);
+
+        assertEquals(counters.getTypeSummaries(), ImmutableList.of());
+    }
+
+    @Test
+    public void testServiceChangeRate()
+    {
+        ServiceCounters counters = store.getServiceCounters();
+        assertEquals(counters.getChangeRate("type1", null), 0.0);
+
+        store.put(entryOf(SERVICE_LIST_1, 1));
+        double rate = counters.getChangeRate("type1", null);
+        assertTrue(rate > 0);
+        assertEquals(counters.getChangeRate("type1", "test-pool"), rate);
+        assertEquals(counters.getChangeRate("type1", "other-pool"), 0.0);
+        assertTrue(counters.getChangeRate() > rate);
+
+        // removing the last instance of a type is itself a change, and keeps the rate
+        store.put(entryOf(SERVICE_LIST_2, 2));
+        assertTrue(counters.getChangeRate("type1", null) > rate);
+        assertTrue(counters.getTypeSummaries().stream().noneMatch(summary -> summary.getType().equals("type1")));
+    }
+
+    @Test
+    public void testChangedServiceCountedOnce()
+    {
+        ServiceCounters counters = store.getServiceCounters();
+        double oneChange = 1000.0 / ServiceCounters.RATE_TIME_CONSTANT_IN_MS;
+        store.put(entryOf(SERVICE_LIST_1, 1));
+        long version = counters.getTypeSummaries().get(1).getVersion();
+
+        Service changed = new Service(TESTING_SERVICE_1.getId(), NODE_ID, "type1", "test-pool", "/test-location", ImmutableMap.of("http", "http://127.0.0.2"));
+        store.put(entryOf(ImmutableList.of(changed, TESTING_SERVICE_2), 2));
+
+        assertEquals(counters.getChangeRate("type1", "test-pool"), 2 * oneChange, 1e-12);
+        assertEquals(counters.getChangeRate("type2", "test-pool"), oneChange, 1e-12);
+        assertEquals(counters.getTypeSummaries().get(0).getInstances(), 1);
+        assertEquals(counters.getTypeSummaries().get(1).getVersion(), version);
+    }
+
+    @Test
+    public void testIdleCountersRemoved()
+    {
+        ServiceCounters counters = store.getServiceCounters();
+        store.put(entryOf(SERVICE_LIST_1, 1));
+        store.put(entryOf(SERVICE_LIST_2, 2));
+
+        counters.removeIdle(now.get());
+        assertTrue(counters.getChangeRate("type1", null) > 0, "recently changed");
+
+        now.addAndGet(100 * ServiceCounters.RATE_TIME_CONSTANT_IN_MS);
+        counters.removeIdle(now.get());
+        assertEquals(counters.getChangeRate("type1", null), 0.0);
+        assertTrue(counters.getChangeRate("type2", null) > 0, "still has instances");
+    }
+
     private static Entry entryOf(List<Service> value, long timestamp)
     {
         return entry(NODE_ID.getBytes(), value, timestamp, 60_000L);
     }
+
+    private static Entry tombstoneOf(long timestamp)
+    {
+        return entry(NODE_ID.getBytes(), (List<Service>) null, timestamp, null);
+    }
 }
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.discovery.store;
+
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.discovery.Id;
+import com.proofpoint.discovery.Node;
+import com.proofpoint.json.JsonCodec;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.proofpoint.discovery.store.Touch.touch;
+import static com.proofpoint.json.JsonCodec.jsonCodec;
+import static com.proofpoint.json.testing.JsonTester.assertJsonEncode;
+import static com.proofpoint.json.testing.JsonTester.decodeJson;
+import static com.proofpoint.testing.ValidationAssertions.assertValidates;
+import static org.testng.Assert.assertEquals;
+
+public class TestTouch
+{
+    private static final JsonCodec<Touch> TOUCH_CODEC = jsonCodec(Touch.class);
+    private static final Id<Node> NODE_ID = Id.valueOf("e8e71280-2325-4498-87a7-7f7d7d48defd");
+    private static final Touch TOUCH = touch(NODE_ID.getBytes(), 6789L, 12345L, -42L);
+
+    private Map<String, Object> jsonStructure;
+
+    @BeforeMethod
+    public void setup()
+    {
+        jsonStructure = new HashMap<>(ImmutableMap.<String, Object>of(
+                "key", "ZThlNzEyODAtMjMyNS00NDk4LTg3YTctN2Y3ZDdkNDhkZWZk",
+                "timestamp", 6789,
+                "maxAgeInMs", 12345,
+                "contentHash", -42
+        ));
+    }
+
+    @Test
+    public void testJsonDecode()
+    {
+        assertEquals(assertValidates(decodeJson(TOUCH_CODEC, jsonStructure)), TOUCH);
+    }
+
+    @Test
+    public void testJsonEncode()
+    {
+        assertJsonEncode(TOUCH, jsonStructure);
+    }
+}
@@ -20,6 +20,8 @@ import com.google.common.collect.ImmutableMap;
 import com.google.inject.Injector;
 import com.google.inject.TypeLiteral;
 import com.proofpoint.bootstrap.LifeCycleManager;
+import com.proofpoint.discovery.ExecutionLaneConfig;
+import com.proofpoint.discovery.ExecutionLanes;
 import com.proofpoint.discovery.client.ServiceDescriptor;
 import com.proofpoint.discovery.client.ServiceSelector;
 import com.proofpoint.discovery.client.ServiceState;
@@ -60,6 +62,8 @@ public class TestingStoreServer
                             new ReportingModule(),
                             binder -> {
                                 binder.bind(StoreConfig.class).toInstance(storeConfig);
+                                binder.bind(ExecutionLanes.class).toInstance(new ExecutionLanes(new ExecutionLaneConfig(), new ExecutionLaneConfig(),
+                                        new ExecutionLaneConfig(), new ExecutionLaneConfig()));
                                 jaxrsBinder(binder).bind(StoreResource.class);
                                 binder.bind(new TypeLiteral<Map<String, InMemoryStore>>() {})
                                         .toInstance(ImmutableMap.of("dynamic", inMemoryStore));